@@ -1,9 +1,12 @@
 package cc.blynk.clickhouse;
 
+import cc.blynk.clickhouse.http.HttpConnectorFactory;
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
@@ -13,6 +16,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -24,7 +28,7 @@ import java.util.regex.Pattern;
  * Furthermore, this class has method { #scheduleActualization(int, TimeUnit) scheduleActualization}
  * which test hosts for availability. By default, this option is turned off.
  */
-public final class BalancedClickhouseDataSource implements DataSource {
+public final class BalancedClickhouseDataSource implements DataSource, Closeable {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(BalancedClickhouseDataSource.class);
     private static final Pattern URL_TEMPLATE =
@@ -43,6 +47,8 @@ public final class BalancedClickhouseDataSource implements DataSource {
 
     private final ClickHouseProperties properties;
     private final ClickHouseDriver driver = new ClickHouseDriver();
+    private final HttpConnectorFactory connectorFactory;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     /**
      * create Datasource for clickhouse JDBC connections
@@ -125,6 +131,7 @@ public final class BalancedClickhouseDataSource implements DataSource {
 
         this.allUrls = Collections.unmodifiableList(allUrls);
         this.enabledUrls = this.allUrls;
+        this.connectorFactory = HttpConnectorFactory.acquire(this.properties);
     }
 
     static List<String> splitUrl(final String url) {
@@ -147,7 +154,7 @@ public final class BalancedClickhouseDataSource implements DataSource {
 
     private boolean ping(final String url) {
         try {
-            driver.connect(url, properties).createStatement().execute("SELECT 1");
+            driver.connect(url, properties, connectorFactory).createStatement().execute("SELECT 1");
             return true;
         } catch (Exception e) {
             return false;
@@ -197,7 +204,7 @@ public final class BalancedClickhouseDataSource implements DataSource {
      */
     @Override
     public ClickHouseConnection getConnection() throws SQLException {
-        return driver.connect(getAnyUrl(), properties);
+        return driver.connect(getAnyUrl(), properties, connectorFactory);
     }
 
     /**
@@ -205,7 +212,7 @@ public final class BalancedClickhouseDataSource implements DataSource {
      */
     @Override
     public ClickHouseConnection getConnection(String username, String password) throws SQLException {
-        return driver.connect(getAnyUrl(), properties.withCredentials(username, password));
+        return driver.connect(getAnyUrl(), properties.withCredentials(username, password), connectorFactory);
     }
 
     /**
@@ -293,6 +300,17 @@ public final class BalancedClickhouseDataSource implements DataSource {
         return properties;
     }
 
+    /**
+     * Releases the connection pool of the datasource, the pool is closed
+     * when no other datasource with the same transport settings uses it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            HttpConnectorFactory.release(connectorFactory);
+        }
+    }
+
     private static ClickHouseProperties getFromUrl(String url) {
         return new ClickHouseProperties(getFromUrlWithoutDefault(url));
     }
@@ -1,5 +1,7 @@
 package cc.blynk.clickhouse;
 
+import cc.blynk.clickhouse.domain.ClickHouseFormat;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.TimeZone;
@@ -15,4 +17,12 @@ public interface ClickHouseConnection extends Connection {
     ClickHouseStatement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException;
 
     String getServerVersion() throws SQLException;
+
+    /**
+     * Opens the insert, which rows are written by the application at its own pace, see {@link ClickHouseInsertStream}.
+     *
+     * @param sql    insert query without the format, like <code>INSERT INTO table</code>
+     * @param format format of the written rows
+     */
+    ClickHouseInsertStream openInsertStream(String sql, ClickHouseFormat format) throws SQLException;
 }
@@ -1,6 +1,7 @@
 package cc.blynk.clickhouse;
 
 import cc.blynk.clickhouse.domain.ClickHouseDataType;
+import cc.blynk.clickhouse.domain.ClickHouseFormat;
 import cc.blynk.clickhouse.http.HttpConnector;
 import cc.blynk.clickhouse.settings.ClickHouseConnectionSettings;
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
@@ -127,6 +128,11 @@ public final class ClickHouseConnectionImpl implements ClickHouseConnection {
         return serverVersion;
     }
 
+    @Override
+    public ClickHouseInsertStream openInsertStream(String sql, ClickHouseFormat format) throws SQLException {
+        return createStatement().openInsertStream(sql, format);
+    }
+
     @Override
     public ClickHouseStatement createStatement(int resultSetType, int resultSetConcurrency,
                                                int resultSetHoldability) throws SQLException {
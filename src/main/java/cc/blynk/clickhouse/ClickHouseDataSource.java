@@ -11,6 +11,7 @@ import java.net.URISyntaxException;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 public final class ClickHouseDataSource implements DataSource, Closeable {
@@ -19,6 +20,8 @@ public final class ClickHouseDataSource implements DataSource, Closeable {
     private PrintWriter printWriter;
     private int loginTimeoutSeconds = 0;
     private ClickHouseProperties properties;
+    private final HttpConnectorFactory connectorFactory;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public ClickHouseDataSource(String url) {
         this(url, new ClickHouseProperties());
@@ -38,16 +41,17 @@ public final class ClickHouseDataSource implements DataSource, Closeable {
         } catch (URISyntaxException e) {
             throw new IllegalArgumentException(e);
         }
+        this.connectorFactory = HttpConnectorFactory.acquire(this.properties);
     }
 
     @Override
     public ClickHouseConnection getConnection() throws SQLException {
-        return ClickHouseDriver.driver.connect(url, properties);
+        return ClickHouseDriver.driver.connect(url, properties, connectorFactory);
     }
 
     @Override
     public ClickHouseConnection getConnection(String username, String password) throws SQLException {
-        return ClickHouseDriver.driver.connect(url, properties.withCredentials(username, password));
+        return ClickHouseDriver.driver.connect(url, properties.withCredentials(username, password), connectorFactory);
     }
 
     public String getHost() {
@@ -107,8 +111,14 @@ public final class ClickHouseDataSource implements DataSource, Closeable {
         return iface.isAssignableFrom(getClass());
     }
 
+    /**
+     * Releases the connection pool of the datasource, the pool is closed
+     * when no other datasource with the same transport settings uses it.
+     */
     @Override
     public void close() throws IOException {
-        HttpConnectorFactory.shutdown();
+        if (closed.compareAndSet(false, true)) {
+            HttpConnectorFactory.release(connectorFactory);
+        }
     }
 }
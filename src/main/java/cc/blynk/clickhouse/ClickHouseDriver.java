@@ -52,6 +52,13 @@ public final class ClickHouseDriver implements Driver {
         return new ClickHouseConnectionImpl(httpConnector, url, properties);
     }
 
+    ClickHouseConnection connect(String url, ClickHouseProperties properties, HttpConnectorFactory connectorFactory) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        return new ClickHouseConnectionImpl(connectorFactory.create(properties), url, properties);
+    }
+
     @Override
     public boolean acceptsURL(String url) {
         return url.startsWith(ClickhouseJdbcUrlParser.JDBC_CLICKHOUSE_PREFIX);
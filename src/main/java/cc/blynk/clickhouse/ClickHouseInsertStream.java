@@ -0,0 +1,106 @@
+package cc.blynk.clickhouse;
+
+import cc.blynk.clickhouse.except.ClickHouseException;
+import cc.blynk.clickhouse.except.ClickHouseExceptionSpecifier;
+import cc.blynk.clickhouse.http.StreamingRequest;
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.TimeZone;
+
+/**
+ * Insert, which rows are written by the application at its own pace while the request stays open.
+ * The rows go right into the request body, without buffering of the whole body and without an extra thread.
+ * {@link #close()} ends the body and waits for the server to complete the insert, {@link #abort()} cancels it.
+ * <p>
+ * The server inserts the rows block by block, so the blocks it has received before the abort may be inserted.
+ * Not thread safe.
+ */
+public final class ClickHouseInsertStream implements AutoCloseable {
+
+    private final StreamingRequest request;
+    private final OutputStream body;
+    private final TimeZone timeZone;
+    private final ClickHouseProperties properties;
+    private ClickHouseRowBinaryStream rowBinaryStream;
+    private boolean closed;
+
+    ClickHouseInsertStream(StreamingRequest request, TimeZone timeZone, ClickHouseProperties properties) {
+        this.request = request;
+        this.body = new BodyStream(request.body());
+        this.timeZone = timeZone;
+        this.properties = properties;
+    }
+
+    /**
+     * @return stream of the request body for the rows in the format of the insert.
+     * Closing it only flushes it, the insert is completed by {@link #close()}
+     */
+    public OutputStream getOutputStream() {
+        return body;
+    }
+
+    /**
+     * @return writer of the rows for RowBinary inserts, it shouldn't be mixed with {@link #getOutputStream()}
+     */
+    public ClickHouseRowBinaryStream getRowBinaryStream() {
+        if (rowBinaryStream == null) {
+            rowBinaryStream = new ClickHouseRowBinaryStream(body, timeZone, properties, true);
+        }
+        return rowBinaryStream;
+    }
+
+    /**
+     * Sends the rest of the rows and completes the insert.
+     *
+     * @throws ClickHouseException when the insert fails
+     */
+    @Override
+    public void close() throws ClickHouseException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (rowBinaryStream != null) {
+            try {
+                rowBinaryStream.flush();
+            } catch (IOException e) {
+                //the rows may be written partially, so the body is not ended
+                request.abort();
+                throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+            }
+        }
+        request.finish();
+    }
+
+    /**
+     * Cancels the insert, does nothing when the stream is closed already.
+     */
+    public void abort() {
+        if (!closed) {
+            closed = true;
+            request.abort();
+        }
+    }
+
+    //closing the request body would end it, that completes the insert and makes abort() useless
+    private static final class BodyStream extends FilterOutputStream {
+
+        BodyStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
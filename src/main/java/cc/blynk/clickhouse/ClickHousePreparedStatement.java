@@ -8,6 +8,8 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface ClickHousePreparedStatement extends PreparedStatement, ClickHouseStatement {
 
@@ -28,5 +30,19 @@ public interface ClickHousePreparedStatement extends PreparedStatement, ClickHou
 
     int[] executeBatch(Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException;
 
+    CompletableFuture<ResultSet> executeQueryAsync();
+
+    CompletableFuture<ResultSet> executeQueryAsync(Map<ClickHouseQueryParam, String> additionalDBParams,
+                                                   Executor executor);
+
+    CompletableFuture<int[]> executeBatchAsync();
+
+    /**
+     * Sends the rows added with {@link #addBatch()} without blocking the caller thread.
+     * The batch is cleared right away, so the statement can be filled with the next one.
+     */
+    CompletableFuture<int[]> executeBatchAsync(Map<ClickHouseQueryParam, String> additionalDBParams,
+                                               Executor executor);
+
     String asSql();
 }
@@ -6,6 +6,7 @@ import cc.blynk.clickhouse.settings.ClickHouseProperties;
 import cc.blynk.clickhouse.settings.ClickHouseQueryParam;
 import cc.blynk.clickhouse.util.ClickHouseArrayUtil;
 import cc.blynk.clickhouse.util.ClickHouseValueFormatter;
+import cc.blynk.clickhouse.util.Utils;
 
 import java.io.InputStream;
 import java.io.Reader;
@@ -36,6 +37,8 @@ import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -143,6 +146,21 @@ public final class ClickHousePreparedStatementImpl extends ClickHouseStatementIm
         return super.executeQuery(buildSql(), additionalDBParams, externalData);
     }
 
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync() {
+        return executeQueryAsync(null, null);
+    }
+
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync(Map<ClickHouseQueryParam, String> additionalDBParams,
+                                                          Executor executor) {
+        try {
+            return super.executeQueryAsync(buildSql(), additionalDBParams, executor);
+        } catch (SQLException e) {
+            return Utils.failedFuture(e);
+        }
+    }
+
     @Override
     public int executeUpdate() throws SQLException {
         return super.executeUpdate(buildSql());
@@ -345,6 +363,42 @@ public final class ClickHousePreparedStatementImpl extends ClickHouseStatementIm
 
     @Override
     public int[] executeBatch(Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException {
+        String insertSql = buildBatchInsertSql();
+        URI uri = buildRequestUri(null, null, additionalDBParams, null, false);
+
+        httpConnector.post(insertSql, batchRows, uri);
+        int[] result = new int[batchRows.size()];
+        Arrays.fill(result, 1);
+        batchRows.clear();
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<int[]> executeBatchAsync() {
+        return executeBatchAsync(null, null);
+    }
+
+    @Override
+    public CompletableFuture<int[]> executeBatchAsync(Map<ClickHouseQueryParam, String> additionalDBParams,
+                                                      Executor executor) {
+        String insertSql;
+        try {
+            insertSql = buildBatchInsertSql();
+        } catch (SQLException e) {
+            return Utils.failedFuture(e);
+        }
+        URI uri = buildRequestUri(null, null, additionalDBParams, null, false);
+
+        List<byte[]> rows = new ArrayList<>(batchRows);
+        batchRows.clear();
+        return httpConnector.postAsync(insertSql, rows, uri, executor).thenApply(ignored -> {
+            int[] result = new int[rows.size()];
+            Arrays.fill(result, 1);
+            return result;
+        });
+    }
+
+    private String buildBatchInsertSql() throws SQLException {
         Matcher matcher = VALUES.matcher(sql);
         if (!matcher.find()) {
             throw new SQLSyntaxErrorException(
@@ -353,16 +407,7 @@ public final class ClickHousePreparedStatementImpl extends ClickHouseStatementIm
             );
         }
         int valuePosition = matcher.start();
-        String insertSql = sql.substring(0, valuePosition);
-
-        URI uri = buildRequestUri(null, null, additionalDBParams, null, false);
-        insertSql = insertSql + " FORMAT " + ClickHouseFormat.TabSeparated;
-
-        httpConnector.post(insertSql, batchRows, uri);
-        int[] result = new int[batchRows.size()];
-        Arrays.fill(result, 1);
-        batchRows.clear();
-        return result;
+        return sql.substring(0, valuePosition) + " FORMAT " + ClickHouseFormat.TabSeparated;
     }
 
     @Override
@@ -1,6 +1,9 @@
 package cc.blynk.clickhouse;
 
+import cc.blynk.clickhouse.domain.ClickHouseFormat;
 import cc.blynk.clickhouse.settings.ClickHouseQueryParam;
+import cc.blynk.clickhouse.util.ClickHouseNativeBlockReader;
+import cc.blynk.clickhouse.util.ClickHouseNativeStreamCallback;
 import cc.blynk.clickhouse.util.ClickHouseRowBinaryInputStream;
 import cc.blynk.clickhouse.util.ClickHouseStreamCallback;
 
@@ -11,6 +14,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface ClickHouseStatement extends Statement {
 
@@ -26,6 +31,17 @@ public interface ClickHouseStatement extends Statement {
             Map<ClickHouseQueryParam, String> additionalDBParams,
             Map<String, String> additionalRequestParams) throws SQLException;
 
+    /**
+     * Runs the query in Native format, <code>FORMAT Native</code> is added when the query has no format.
+     * The result is read block by block, each block is decoded into primitive column vectors.
+     */
+    ClickHouseNativeBlockReader executeQueryNativeBlocks(String sql) throws SQLException;
+
+    ClickHouseNativeBlockReader executeQueryNativeBlocks(
+            String sql,
+            Map<ClickHouseQueryParam, String> additionalDBParams
+    ) throws SQLException;
+
     ResultSet executeQuery(String sql, Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException;
 
     ResultSet executeQuery(String sql,
@@ -56,6 +72,34 @@ public interface ClickHouseStatement extends Statement {
 
     void sendNativeStream(String sql, ClickHouseStreamCallback callback) throws SQLException;
 
+    /**
+     * Inserts the rows written by the callback in Native format. Unlike {@link #sendNativeStream}
+     * the rows are written column by column into blocks by {@link cc.blynk.clickhouse.util.ClickHouseNativeBlockWriter}
+     * and are streamed into the request while the callback runs.
+     */
+    void sendNativeBlocks(String sql,
+                          String[] columnNames,
+                          String[] columnTypes,
+                          Map<ClickHouseQueryParam, String> additionalDBParams,
+                          ClickHouseNativeStreamCallback callback) throws SQLException;
+
+    void sendNativeBlocks(String sql,
+                          String[] columnNames,
+                          String[] columnTypes,
+                          ClickHouseNativeStreamCallback callback) throws SQLException;
+
+    /**
+     * Opens the insert, which rows are written by the application at its own pace, see {@link ClickHouseInsertStream}.
+     *
+     * @param sql    insert query without the format, like <code>INSERT INTO table</code>
+     * @param format format of the written rows
+     */
+    ClickHouseInsertStream openInsertStream(String sql,
+                                            ClickHouseFormat format,
+                                            Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException;
+
+    ClickHouseInsertStream openInsertStream(String sql, ClickHouseFormat format) throws SQLException;
+
     void sendStreamSQL(InputStream content, String sql) throws SQLException;
 
     void sendStreamSQL(InputStream content, String sql,
@@ -65,4 +109,23 @@ public interface ClickHouseStatement extends Statement {
 
     void sendStreamSQL(String sql, OutputStream response,
                        Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException;
+
+    CompletableFuture<ResultSet> executeQueryAsync(String sql);
+
+    /**
+     * Executes the query without blocking the caller thread.
+     * Future fails with {@link java.sql.SQLException} if the query fails.
+     *
+     * @param executor executor the result is completed on. When <code>null</code>, the result is completed on
+     *                 the bounded pool of the connector, never on its IO thread
+     */
+    CompletableFuture<ResultSet> executeQueryAsync(String sql,
+                                                   Map<ClickHouseQueryParam, String> additionalDBParams,
+                                                   Executor executor);
+
+    CompletableFuture<Void> sendStreamSQLAsync(InputStream content, String sql);
+
+    CompletableFuture<Void> sendStreamSQLAsync(InputStream content, String sql,
+                                               Map<ClickHouseQueryParam, String> additionalDBParams,
+                                               Executor executor);
 }
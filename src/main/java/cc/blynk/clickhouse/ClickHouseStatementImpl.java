@@ -4,22 +4,27 @@ import cc.blynk.clickhouse.domain.ClickHouseFormat;
 import cc.blynk.clickhouse.except.ClickHouseException;
 import cc.blynk.clickhouse.except.ClickHouseExceptionSpecifier;
 import cc.blynk.clickhouse.http.HttpConnector;
+import cc.blynk.clickhouse.http.StreamingRequest;
 import cc.blynk.clickhouse.response.AbstractResultSet;
 import cc.blynk.clickhouse.response.ClickHouseJsonResultSet;
+import cc.blynk.clickhouse.response.ClickHouseNativeResultSet;
 import cc.blynk.clickhouse.response.ClickHouseResultSet;
 import cc.blynk.clickhouse.response.ClickHouseScrollableResultSet;
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
 import cc.blynk.clickhouse.settings.ClickHouseQueryParam;
+import cc.blynk.clickhouse.util.ClickHouseNativeBlockReader;
+import cc.blynk.clickhouse.util.ClickHouseNativeBlockWriter;
+import cc.blynk.clickhouse.util.ClickHouseNativeStreamCallback;
+import cc.blynk.clickhouse.util.ClickHouseRowBinaryBlockReader;
 import cc.blynk.clickhouse.util.ClickHouseRowBinaryInputStream;
 import cc.blynk.clickhouse.util.ClickHouseRowBinaryStream;
 import cc.blynk.clickhouse.util.ClickHouseStreamCallback;
+import cc.blynk.clickhouse.util.ClickHouseUnsupportedTypeException;
 import cc.blynk.clickhouse.util.Utils;
 import cc.blynk.clickhouse.util.guava.StreamUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -31,9 +36,13 @@ import java.sql.SQLWarning;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class ClickHouseStatementImpl implements ClickHouseStatement {
 
@@ -49,6 +58,8 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
 
     private ClickHouseRowBinaryInputStream currentRowBinaryResult;
 
+    private ClickHouseNativeBlockReader currentNativeResult;
+
     private int currentUpdateCount = -1;
 
     private int queryTimeout = -1;
@@ -156,24 +167,115 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
                                   Map<ClickHouseQueryParam, String> additionalDBParams,
                                   List<ClickHouseExternalData> externalData,
                                   Map<String, String> additionalRequestParams) throws SQLException {
-        InputStream is = sendRequest(sql, additionalDBParams, externalData, additionalRequestParams);
+        //the external data can't be sent twice, so it is never read in binary that may need the second request
+        boolean binary = properties.isUseBinaryResultSet() && (externalData == null || externalData.isEmpty());
+        InputStream is = sendRequest(sql, additionalDBParams, externalData, additionalRequestParams, binary);
+        try {
+            return toResultSet(is, sql, this.isSelect, this.selectFormat);
+        } catch (ClickHouseException e) {
+            if (!isUnsupportedType(e, this.selectFormat)) {
+                throw e;
+            }
+            log.debug("Requesting \"{}\" as text: {}", sql, e.getMessage());
+            is = sendRequest(sql, withReplaceRunningQuery(additionalDBParams), null, additionalRequestParams, false);
+            return toResultSet(is, sql, this.isSelect, this.selectFormat);
+        }
+    }
+
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync(String sql) {
+        return executeQueryAsync(sql, null, null);
+    }
 
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync(String sql,
+                                                          Map<ClickHouseQueryParam, String> additionalDBParams,
+                                                          Executor executor) {
+        return executeQueryAsync(sql, additionalDBParams, executor, properties.isUseBinaryResultSet())
+                .thenCompose(resultSet -> resultSet != null
+                        ? CompletableFuture.completedFuture(resultSet)
+                        : executeQueryAsync(sql, withReplaceRunningQuery(additionalDBParams), executor, false));
+    }
+
+    /**
+     * @return the future of null when the binary result has a column type that can't be decoded
+     */
+    private CompletableFuture<ResultSet> executeQueryAsync(String sql,
+                                                           Map<ClickHouseQueryParam, String> additionalDBParams,
+                                                           Executor executor,
+                                                           boolean binary) {
+        //the futures may run concurrently, so the query state is kept local, not in the statement fields
+        PreparedSql prepared = prepareSql(sql, binary);
+        String cleanSql = prepared.sql;
+        boolean ignoreDatabase = cleanSql.regionMatches(true, 0, databaseKeyword, 0, databaseKeyword.length());
+        URI uri = buildRequestUri(null, null, withQueryId(additionalDBParams),
+                withNativeFormatSettings(null, prepared.format), ignoreDatabase);
+        log.debug("Executing SQL: \"{}\", url: {}", cleanSql, uri);
+
+        return httpConnector.postAsync(cleanSql, uri, executor).thenApply(is -> {
+            try {
+                return newResultSet(is, sql, prepared.select, prepared.format);
+            } catch (ClickHouseException e) {
+                if (isUnsupportedType(e, prepared.format)) {
+                    log.debug("Requesting \"{}\" as text: {}", sql, e.getMessage());
+                    return null;
+                }
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static boolean isUnsupportedType(ClickHouseException e, ClickHouseFormat format) {
+        return format == ClickHouseFormat.RowBinaryWithNamesAndTypes
+                && e.getCause() instanceof ClickHouseUnsupportedTypeException;
+    }
+
+    /**
+     * The text request may reach the server before it notices that the binary one is gone,
+     * so the query id, if any, is taken over.
+     */
+    private Map<ClickHouseQueryParam, String> withReplaceRunningQuery(Map<ClickHouseQueryParam, String> params) {
+        Map<ClickHouseQueryParam, String> result = new EnumMap<>(ClickHouseQueryParam.class);
+        result.putAll(withQueryId(params));
+        if (result.containsKey(ClickHouseQueryParam.QUERY_ID)) {
+            result.put(ClickHouseQueryParam.REPLACE_RUNNING_QUERY, "1");
+        }
+        return result;
+    }
+
+    private AbstractResultSet toResultSet(InputStream is,
+                                          String sql,
+                                          boolean select,
+                                          ClickHouseFormat format) throws ClickHouseException {
+        AbstractResultSet resultSet = newResultSet(is, sql, select, format);
+        if (select) {
+            currentUpdateCount = -1;
+            currentResult = resultSet;
+        } else {
+            currentUpdateCount = 0;
+        }
+        return resultSet;
+    }
+
+    private AbstractResultSet newResultSet(InputStream is,
+                                           String sql,
+                                           boolean select,
+                                           ClickHouseFormat format) throws ClickHouseException {
         try {
-            if (this.isSelect) {
-                currentUpdateCount = -1;
-                currentResult = createResultSet(is,
+            if (select) {
+                AbstractResultSet resultSet = createResultSet(is,
                         properties.getBufferSize(),
                         extractDBName(sql),
                         extractTableName(sql),
                         extractWithTotals(sql),
                         this,
                         getConnection().getTimeZone(),
-                        properties
+                        properties,
+                        format
                 );
-                currentResult.setMaxRows(maxRows);
-                return currentResult;
+                resultSet.setMaxRows(maxRows);
+                return resultSet;
             } else {
-                currentUpdateCount = 0;
                 StreamUtils.close(is);
                 return null;
             }
@@ -210,6 +312,10 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
         if (currentRowBinaryResult != null) {
             StreamUtils.close(currentRowBinaryResult);
         }
+
+        if (currentNativeResult != null) {
+            StreamUtils.close(currentNativeResult);
+        }
     }
 
     @Override
@@ -458,6 +564,33 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
         }
     }
 
+    @Override
+    public ClickHouseNativeBlockReader executeQueryNativeBlocks(String sql) throws SQLException {
+        return executeQueryNativeBlocks(sql, null);
+    }
+
+    @Override
+    public ClickHouseNativeBlockReader executeQueryNativeBlocks(
+            String sql,
+            Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException {
+        String cleanSql = sql.trim();
+        if (detectQueryType(cleanSql) && ClickHouseFormat.detectFormat(cleanSql) == null) {
+            cleanSql = addFormat(cleanSql, ClickHouseFormat.Native);
+        }
+
+        InputStream is = sendRequest(cleanSql, additionalDBParams, null, null);
+
+        if (this.isSelect) {
+            currentUpdateCount = -1;
+            currentNativeResult = new ClickHouseNativeBlockReader(is, properties.getBufferSize());
+            return currentNativeResult;
+        } else {
+            currentUpdateCount = 0;
+            StreamUtils.close(is);
+            return null;
+        }
+    }
+
     private String extractTableName(String sql) {
         String s = extractDBAndTableName(sql);
         if (s.contains(".")) {
@@ -532,18 +665,50 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
         sendStream(sql, callback, uri);
     }
 
+    @Override
+    public void sendNativeBlocks(String sql, String[] columnNames, String[] columnTypes,
+                                 ClickHouseNativeStreamCallback callback) throws SQLException {
+        sendNativeBlocks(sql, columnNames, columnTypes, null, callback);
+    }
+
+    @Override
+    public void sendNativeBlocks(String sql, String[] columnNames, String[] columnTypes,
+                                 Map<ClickHouseQueryParam, String> additionalDBParams,
+                                 ClickHouseNativeStreamCallback callback) throws SQLException {
+        URI uri = buildRequestUri(null, null, additionalDBParams, null, false);
+        sql = sql + " FORMAT " + ClickHouseFormat.Native;
+        TimeZone timeZone = getConnection().getTimeZone();
+        httpConnector.post(sql, out -> {
+            ClickHouseNativeBlockWriter writer =
+                    new ClickHouseNativeBlockWriter(out, columnNames, columnTypes, timeZone, properties);
+            callback.writeTo(writer);
+            writer.flush();
+        }, uri);
+    }
+
+    //the rows are written right into the request body while the callback produces them
     private void sendStream(String sql, ClickHouseStreamCallback callback, URI uri) throws ClickHouseException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            TimeZone timeZone = getConnection().getTimeZone();
-            ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(out, timeZone, properties);
+        TimeZone timeZone = getConnection().getTimeZone();
+        httpConnector.post(sql, out -> {
+            ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(out, timeZone, properties, true);
             callback.writeTo(stream);
+            stream.flush();
+        }, uri);
+    }
 
-            InputStream in = new ByteArrayInputStream(out.toByteArray());
-            httpConnector.post(sql, in, uri);
-        } catch (IOException e) {
-            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
-        }
+    @Override
+    public ClickHouseInsertStream openInsertStream(String sql, ClickHouseFormat format) throws SQLException {
+        return openInsertStream(sql, format, null);
+    }
+
+    @Override
+    public ClickHouseInsertStream openInsertStream(String sql, ClickHouseFormat format,
+                                                   Map<ClickHouseQueryParam, String> additionalDBParams)
+            throws SQLException {
+        URI uri = buildRequestUri(null, null, additionalDBParams, null, false);
+        TimeZone timeZone = getConnection().getTimeZone();
+        StreamingRequest request = httpConnector.openPost(sql + " FORMAT " + format, uri);
+        return new ClickHouseInsertStream(request, timeZone, properties);
     }
 
     @Override
@@ -572,6 +737,19 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
         httpConnector.post(sql, content, uri);
     }
 
+    @Override
+    public CompletableFuture<Void> sendStreamSQLAsync(InputStream content, String sql) {
+        return sendStreamSQLAsync(content, sql, null, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamSQLAsync(InputStream content, String sql,
+                                                      Map<ClickHouseQueryParam, String> additionalDBParams,
+                                                      Executor executor) {
+        URI uri = buildRequestUri(null, null, additionalDBParams, null, false);
+        return httpConnector.postAsync(sql, content, uri, executor);
+    }
+
     public void sendStreamSQL(String sql, OutputStream responseContent) {
         sendStreamSQL(sql, responseContent, null);
     }
@@ -602,7 +780,27 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
                                                 boolean usesWithTotals,
                                                 ClickHouseStatement statement,
                                                 TimeZone timezone,
-                                                ClickHouseProperties properties) throws IOException {
+                                                ClickHouseProperties properties,
+                                                ClickHouseFormat selectFormat) throws IOException {
+        if (selectFormat == ClickHouseFormat.Native) {
+            return new ClickHouseNativeResultSet(new ClickHouseNativeBlockReader(is, bufferSize),
+                                                 db,
+                                                 table,
+                                                 statement,
+                                                 timezone,
+                                                 properties);
+        }
+
+        if (selectFormat == ClickHouseFormat.RowBinaryWithNamesAndTypes) {
+            return new ClickHouseNativeResultSet(
+                    new ClickHouseRowBinaryBlockReader(is, bufferSize, properties.getNativeBlockRows()),
+                    db,
+                    table,
+                    statement,
+                    timezone,
+                    properties);
+        }
+
         if (isResultSetScrollable) {
             return new ClickHouseScrollableResultSet(is,
                                                      bufferSize,
@@ -614,7 +812,7 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
                                                      properties);
         }
 
-        if (this.selectFormat == ClickHouseFormat.JSON || this.selectFormat == ClickHouseFormat.JSONCompact) {
+        if (selectFormat == ClickHouseFormat.JSON || selectFormat == ClickHouseFormat.JSONCompact) {
             return new ClickHouseJsonResultSet(
                     is,
                     bufferSize,
@@ -651,18 +849,22 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
             List<ClickHouseExternalData> externalData,
             Map<String, String> additionalRequestParams
     ) throws ClickHouseException {
-        String cleanSql = sql.trim();
-
-        this.isSelect = detectQueryType(cleanSql);
-        this.selectFormat = ClickHouseFormat.detectFormat(cleanSql);
-        if (this.isSelect && this.selectFormat == null) {
-            cleanSql = addFormat(cleanSql, ClickHouseFormat.TabSeparatedWithNamesAndTypes);
-        }
+        return sendRequest(sql, additionalClickHouseDBParams, externalData, additionalRequestParams, false);
+    }
 
-        if (additionalClickHouseDBParams == null) {
-            additionalClickHouseDBParams = new EnumMap<>(ClickHouseQueryParam.class);
-        }
-        addQueryIdTo(additionalClickHouseDBParams);
+    private InputStream sendRequest(
+            String sql,
+            Map<ClickHouseQueryParam, String> additionalClickHouseDBParams,
+            List<ClickHouseExternalData> externalData,
+            Map<String, String> additionalRequestParams,
+            boolean binary
+    ) throws ClickHouseException {
+        PreparedSql prepared = prepareSql(sql, binary);
+        String cleanSql = prepared.sql;
+        this.isSelect = prepared.select;
+        this.selectFormat = prepared.format;
+        additionalClickHouseDBParams = withQueryId(additionalClickHouseDBParams);
+        additionalRequestParams = withNativeFormatSettings(additionalRequestParams, this.selectFormat);
 
         boolean ignoreDatabase = cleanSql.regionMatches(true, 0, databaseKeyword, 0, databaseKeyword.length());
         URI uri;
@@ -693,6 +895,45 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
         }
     }
 
+    /**
+     * Detects the query type and adds FORMAT TabSeparatedWithNamesAndTypes to the select queries without format,
+     * or RowBinaryWithNamesAndTypes when <code>binary</code> is set
+     */
+    private PreparedSql prepareSql(String sql, boolean binary) {
+        String cleanSql = sql.trim();
+
+        boolean select = detectQueryType(cleanSql);
+        ClickHouseFormat format = ClickHouseFormat.detectFormat(cleanSql);
+        if (select && format == null) {
+            //the binary result set can't scroll and has no separate totals row
+            if (binary && !isResultSetScrollable && !extractWithTotals(cleanSql)) {
+                format = ClickHouseFormat.RowBinaryWithNamesAndTypes;
+            }
+            cleanSql = addFormat(cleanSql, format == null
+                    ? ClickHouseFormat.TabSeparatedWithNamesAndTypes
+                    : format);
+        }
+        return new PreparedSql(cleanSql, select, format);
+    }
+
+    //ClickHouseNativeBlockReader can't decode LowCardinality columns, so they are requested as plain columns
+    private static Map<String, String> withNativeFormatSettings(Map<String, String> params, ClickHouseFormat format) {
+        if (format != ClickHouseFormat.Native) {
+            return params;
+        }
+        Map<String, String> result = params == null ? new HashMap<>() : new HashMap<>(params);
+        result.putIfAbsent("low_cardinality_allow_in_native_format", "0");
+        return result;
+    }
+
+    private Map<ClickHouseQueryParam, String> withQueryId(Map<ClickHouseQueryParam, String> params) {
+        if (params == null) {
+            params = new EnumMap<>(ClickHouseQueryParam.class);
+        }
+        addQueryIdTo(params);
+        return params;
+    }
+
     URI buildRequestUri(
             String sql,
             List<ClickHouseExternalData> externalData,
@@ -804,4 +1045,17 @@ public class ClickHouseStatementImpl implements ClickHouseStatement {
         return result;
     }
 
+    private static final class PreparedSql {
+
+        private final String sql;
+        private final boolean select;
+        //null when the format is not set by the query or by the driver
+        private final ClickHouseFormat format;
+
+        PreparedSql(String sql, boolean select, ClickHouseFormat format) {
+            this.sql = sql;
+            this.select = select;
+            this.format = format;
+        }
+    }
 }
@@ -35,6 +35,7 @@ public enum ClickHouseFormat {
     PrettySpace,
     Protobuf,
     RowBinary,
+    RowBinaryWithNamesAndTypes,
     Native,
     Null,
     XML,
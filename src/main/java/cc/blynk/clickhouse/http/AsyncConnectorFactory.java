@@ -36,7 +36,8 @@ public final class AsyncConnectorFactory extends HttpConnectorFactory {
                 .setUseOpenSsl(OpenSsl.isAvailable());
         if (properties.getSsl()) {
             try {
-                JdkSslContext sslContext = new JdkSslContext(getSSLContext(properties), true, ClientAuth.REQUIRE);
+                JdkSslContext sslContext = new JdkSslContext(
+                        SSLContextCache.getSSLContext(properties), true, ClientAuth.REQUIRE);
                 clientConfigBuilder.setSslContext(sslContext);
             } catch (Exception e) {
                  throw new RuntimeException(
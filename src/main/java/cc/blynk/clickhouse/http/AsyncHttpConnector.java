@@ -3,32 +3,44 @@ package cc.blynk.clickhouse.http;
 import cc.blynk.clickhouse.ClickHouseExternalData;
 import cc.blynk.clickhouse.except.ClickHouseException;
 import cc.blynk.clickhouse.except.ClickHouseExceptionSpecifier;
+import cc.blynk.clickhouse.settings.ClickHouseConnectionSettings;
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseCompression;
 import cc.blynk.clickhouse.util.ClickHouseLZ4InputStream;
 import cc.blynk.clickhouse.util.ClickHouseLZ4OutputStream;
+import cc.blynk.clickhouse.util.ClickHouseParallelLZ4OutputStream;
+import cc.blynk.clickhouse.util.ClickHouseReadAheadLZ4InputStream;
+import cc.blynk.clickhouse.util.Utils;
 import cc.blynk.clickhouse.util.guava.StreamUtils;
+import io.netty.handler.codec.http.HttpHeaders;
 import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
 import org.asynchttpclient.ListenableFuture;
 import org.asynchttpclient.Response;
+import org.asynchttpclient.handler.StreamedAsyncHandler;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -36,56 +48,160 @@ final class AsyncHttpConnector implements HttpConnector {
 
     private static final Logger log = LoggerFactory.getLogger(AsyncHttpConnector.class);
 
+    //bounds the memory taken by the written, but not yet sent, body
+    private static final int MAX_QUEUED_CHUNKS = 16;
+
     private final ClickHouseProperties properties;
 
+    private final ClickHouseCompression compression;
+
     private final AsyncHttpClient asyncHttpClient;
 
     AsyncHttpConnector(AsyncHttpClient asyncHttpClient,
                        ClickHouseProperties properties) {
         this.asyncHttpClient = asyncHttpClient;
         this.properties = properties;
+        this.compression = ClickHouseCompression.fromName(properties.getCompressionMethod());
     }
 
     @Override
     public InputStream post(String sql, URI uri) throws ClickHouseException {
-        ByteArrayInputStream from = prepareInputStream(sql);
-        ListenableFuture<Response> listenableFuture = this.asyncHttpClient.preparePost(uri.toString())
-                .setBody(from)
-                .execute();
-        return getResponseBodyAsStream(listenableFuture);
+        return getResponse(executeStreamingPost(sql, uri));
     }
 
     @Override
     public void post(String sql, InputStream from, URI uri) throws ClickHouseException {
-        ByteArrayOutputStream maybeCompressed = openOutputStream(sql, from);
-        InputStream fromWithSql = new ByteArrayInputStream(maybeCompressed.toByteArray());
-
-        CompletableFuture<Response> completableFuture = this.asyncHttpClient.preparePost(uri.toString())
-                .setBody(fromWithSql)
-                .execute().toCompletableFuture();
-        checkForErrorAndThrow(completableFuture);
+        //the source is read by the caller thread, so a slow one doesn't block the event loop
+        post(sql, out -> {
+            try (InputStream fromIS = from) {
+                StreamUtils.copy(fromIS, out);
+            }
+        }, uri);
     }
 
     @Override
     public InputStream post(List<ClickHouseExternalData> externalData, URI uri) throws ClickHouseException {
         String boundaryString = UUID.randomUUID().toString();
-        ByteArrayInputStream from = prepareInputStream(externalData, boundaryString);
+        FeedingOutputStream feed = new FeedingOutputStream(getRequestChunkSize(), MAX_QUEUED_CHUNKS);
+        StreamingResponseHandler handler = new StreamingResponseHandler();
+        ListenableFuture<Void> future = this.asyncHttpClient.preparePost(uri.toString())
+                .addHeader("Content-Type", MultipartBody.contentType(boundaryString))
+                .setBody(feed.bodyGenerator())
+                .execute(handler);
+        feed.sentBy(future);
+        //the tables are read and compressed by the caller thread, so a slow source doesn't block the event loop
+        OutputStream body = maybeCompress(feed);
+        try (InputStream multipart = MultipartBody.open(externalData, boundaryString)) {
+            StreamUtils.copy(multipart, body);
+            body.flush();
+            feed.close();
+        } catch (IOException e) {
+            boolean responded = handler.body.isDone();
+            future.cancel(true);
+            if (responded) {
+                //throws the error of the server
+                StreamUtils.close(getResponse(handler.body));
+            }
+            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+        } catch (RuntimeException | Error e) {
+            future.cancel(true);
+            throw e;
+        } finally {
+            if (body != feed) {
+                StreamUtils.close(body);
+            }
+        }
+        return getResponse(handler.body);
+    }
+
+    @Override
+    public void post(String sql, List<byte[]> data, URI uri) throws ClickHouseException {
+        checkForErrorAndThrow(getResponse(executePost(sql, data, uri)));
+    }
 
-        ListenableFuture<Response> listenableFuture = this.asyncHttpClient.preparePost(uri.toString())
-                .addHeader("Content-Type", "multipart/form-data; boundary=" + boundaryString)
-                .setBody(from)
+    @Override
+    public void post(String sql, RequestBodyWriter body, URI uri) throws ClickHouseException {
+        FeedingRequest request = open(sql, uri);
+        try {
+            body.writeTo(request.body());
+        } catch (IOException e) {
+            throw request.fail(e);
+        } catch (RuntimeException | Error e) {
+            //the body must not be ended, otherwise the server inserts the rows sent so far
+            request.abort();
+            throw e;
+        }
+        request.finish();
+    }
+
+    @Override
+    public StreamingRequest openPost(String sql, URI uri) throws ClickHouseException {
+        return open(sql, uri);
+    }
+
+    //the caller thread writes the body, while the event loop sends the chunks written so far
+    private FeedingRequest open(String sql, URI uri) throws ClickHouseException {
+        FeedingOutputStream feed = new FeedingOutputStream(getRequestChunkSize(), MAX_QUEUED_CHUNKS);
+        ListenableFuture<Response> future = this.asyncHttpClient.preparePost(uri.toString())
+                .setBody(feed.bodyGenerator())
                 .execute();
-        return getResponseBodyAsStream(listenableFuture);
+        feed.sentBy(future);
+        FeedingRequest request = new FeedingRequest(feed, maybeCompress(feed), future);
+        try {
+            request.body().write(getSqlBytes(sql));
+        } catch (IOException e) {
+            throw request.fail(e);
+        }
+        return request;
     }
 
     @Override
-    public void post(String sql, List<byte[]> data, URI uri) throws ClickHouseException {
-        ByteArrayInputStream from = prepareInputStream(sql, data);
+    public CompletableFuture<InputStream> postAsync(String sql, URI uri, Executor executor) {
+        CompletableFuture<InputStream> future;
+        try {
+            future = executeStreamingPost(sql, uri);
+        } catch (ClickHouseException e) {
+            return Utils.failedFuture(e);
+        }
+        //the body is read by the blocking reader, that must not run on the event loop
+        //as the event loop is the one that reads the body from the socket
+        return future.thenApplyAsync(Function.identity(), executor == null ? BlockingPool.EXECUTOR : executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> postAsync(String sql, InputStream from, URI uri, Executor executor) {
+        //the source may block, so it is read on the executor instead of the event loop
+        return CompletableFuture.runAsync(() -> {
+            try {
+                post(sql, from, uri);
+            } catch (ClickHouseException e) {
+                throw new CompletionException(e);
+            }
+        }, executor == null ? BlockingPool.EXECUTOR : executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> postAsync(String sql, List<byte[]> data, URI uri, Executor executor) {
+        try {
+            return handleAsync(executePost(sql, data, uri), this::checkForErrorAndThrow, executor);
+        } catch (ClickHouseException e) {
+            return Utils.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<InputStream> executeStreamingPost(String sql, URI uri) throws ClickHouseException {
+        StreamingResponseHandler handler = new StreamingResponseHandler();
+        this.asyncHttpClient.preparePost(uri.toString())
+                .setBody(prepareInputStream(sql))
+                .execute(handler);
+        return handler.body;
+    }
 
-        CompletableFuture<Response> completableFuture = this.asyncHttpClient.preparePost(uri.toString())
-                .setBody(from)
-                .execute().toCompletableFuture();
-        checkForErrorAndThrow(completableFuture);
+    private ListenableFuture<Response> executePost(String sql, List<byte[]> data, URI uri)
+            throws ClickHouseException {
+        return this.asyncHttpClient.preparePost(uri.toString())
+                .setBody(prepareInputStream(sql, data))
+                .execute();
     }
 
     @Override
@@ -109,14 +225,6 @@ final class AsyncHttpConnector implements HttpConnector {
         return new ByteArrayInputStream(maybeCompressed.toByteArray());
     }
 
-    private ByteArrayInputStream prepareInputStream(List<ClickHouseExternalData> externalData, String boundaryString)
-            throws ClickHouseException {
-        byte[] bytes = buildMultipartData(externalData, boundaryString);
-        ByteArrayOutputStream maybeCompressed = openOutputStream(bytes, null);
-
-        return new ByteArrayInputStream(maybeCompressed.toByteArray());
-    }
-
     private ByteArrayInputStream prepareInputStream(String sql, List<byte[]> data) throws ClickHouseException {
         byte[] sqlBytes = getSqlBytes(sql);
         ByteArrayOutputStream maybeCompressed = openOutputStream(sqlBytes, data);
@@ -124,34 +232,6 @@ final class AsyncHttpConnector implements HttpConnector {
         return new ByteArrayInputStream(maybeCompressed.toByteArray());
     }
 
-    private byte[] buildMultipartData(List<ClickHouseExternalData> externalData, String boundaryString)
-            throws ClickHouseException {
-        try (ByteArrayOutputStream requestBodyStream = new ByteArrayOutputStream();
-             BufferedWriter httpRequestBodyWriter = new BufferedWriter(new OutputStreamWriter(requestBodyStream))) {
-            for (ClickHouseExternalData data : externalData) {
-                httpRequestBodyWriter.write("--" + boundaryString + "\r\n");
-                httpRequestBodyWriter.write("Content-Disposition: form-data;"
-                        + " name=\"" + data.getName() + "\";"
-                        + " filename=\"" + data.getName() + "\"" + "\r\n");
-                httpRequestBodyWriter.write("Content-Type: application/octet-stream" + "\r\n");
-                httpRequestBodyWriter.write("Content-Transfer-Encoding: binary" + "\r\n" + "\r\n");
-                httpRequestBodyWriter.flush();
-
-                StreamUtils.copy(data.getContent(), requestBodyStream);
-
-                requestBodyStream.flush();
-            }
-
-            httpRequestBodyWriter.write("\r\n" + "--" + boundaryString + "--" + "\r\n");
-            httpRequestBodyWriter.flush();
-
-            return requestBodyStream.toByteArray();
-        } catch (IOException e) {
-            log.error("Building Multipart Body failed. {}", e.getMessage());
-            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
-        }
-    }
-
     private byte[] getSqlBytes(String sql) {
         if (!sql.endsWith("\n")) {
             sql += "\n";
@@ -160,30 +240,37 @@ final class AsyncHttpConnector implements HttpConnector {
     }
 
 
-    private ByteArrayOutputStream openOutputStream(String sql, InputStream inputStream) throws ClickHouseException {
-        byte[] sqlBytes = getSqlBytes(sql);
-        byte[] bytes;
-        try {
-            bytes = StreamUtils.toByteArray(inputStream);
-        } catch (IOException e) {
-            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+    private OutputStream maybeCompress(OutputStream body) {
+        if (!properties.isDecompress()) {
+            return body;
         }
-        ArrayList<byte[]> batches = new ArrayList<>();
-        batches.add(bytes);
+        if (properties.getCompressThreads() > 0) {
+            return new ClickHouseParallelLZ4OutputStream(body, properties.getMaxCompressBufferSize(),
+                    properties.getCompressThreads(), compression, properties.getCompressionLevel());
+        }
+        return new ClickHouseLZ4OutputStream(body, properties.getMaxCompressBufferSize(),
+                compression, properties.getCompressionLevel());
+    }
 
-        return openOutputStream(sqlBytes, batches);
+    private int getRequestChunkSize() {
+        int chunkSize = properties.getRequestChunkSize();
+        return chunkSize > 0 ? chunkSize : (Integer) ClickHouseConnectionSettings.REQUEST_CHUNK_SIZE.getDefaultValue();
+    }
+
+    private InputStream maybeDecompress(InputStream response) {
+        if (!properties.isCompress()) {
+            return response;
+        }
+        if (properties.getReadAheadBlocks() > 0) {
+            return new ClickHouseReadAheadLZ4InputStream(response, properties.getReadAheadBlocks());
+        }
+        return new ClickHouseLZ4InputStream(response);
     }
 
     private ByteArrayOutputStream openOutputStream(byte[] sqlBytes, List<byte[]> batches) throws ClickHouseException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
-        OutputStream outputStream;
-
-        if (properties.isDecompress()) {
-            outputStream = new ClickHouseLZ4OutputStream(baos, properties.getMaxCompressBufferSize());
-        } else {
-            outputStream = new DataOutputStream(baos);
-        }
+        OutputStream outputStream = maybeCompress(baos);
 
         try {
             outputStream.write(sqlBytes);
@@ -200,30 +287,48 @@ final class AsyncHttpConnector implements HttpConnector {
         }
     }
 
-    private InputStream getResponseBodyAsStream(ListenableFuture<Response> listenableFuture)
-            throws ClickHouseException {
-        checkForErrorAndThrow(listenableFuture);
+    private <T> T getResponse(Future<T> future) throws ClickHouseException {
         try {
-            Response response = listenableFuture.get();
-            InputStream responseBody = response.getResponseBodyAsStream();
-
-            return properties.isCompress() ? new ClickHouseLZ4InputStream(responseBody) : responseBody;
-        } catch (InterruptedException | ExecutionException e) {
-            log.error("Http POST request failed. {}", e.getMessage());
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ClickHouseException) {
+                throw (ClickHouseException) e.getCause();
+            }
+            log.error("Http POST request failed. {}", e.getMessage());
+            throw ClickHouseExceptionSpecifier.specify(e.getCause(), properties.getHost(), properties.getPort());
         }
     }
 
-    private void checkForErrorAndThrow(Future<Response> completableFuture)
-            throws ClickHouseException {
-        Response response;
-        try {
-            response = completableFuture.get();
-        } catch (Exception e) {
-            throw ClickHouseExceptionSpecifier.specify("Http POST request failed.",
-                    properties.getHost(), properties.getPort());
-        }
+    /**
+     * Completes with the result of the handler once the response is received.
+     * Without executor the handler runs (and the future completes) on the netty event loop,
+     * so it must not block.
+     */
+    private <T> CompletableFuture<T> handleAsync(ListenableFuture<Response> future,
+                                                 ResponseHandler<T> handler,
+                                                 Executor executor) {
+        BiFunction<Response, Throwable, T> fn = (response, error) -> {
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    log.error("Http POST request failed. {}", cause.getMessage());
+                    throw ClickHouseExceptionSpecifier.specify(cause, properties.getHost(), properties.getPort());
+                }
+                return handler.handle(response);
+            } catch (ClickHouseException e) {
+                throw new CompletionException(e);
+            }
+        };
+        CompletableFuture<Response> responseFuture = future.toCompletableFuture();
+        return executor == null
+                ? responseFuture.handle(fn)
+                : responseFuture.handleAsync(fn, executor);
+    }
 
+    private Void checkForErrorAndThrow(Response response) throws ClickHouseException {
         if (response == null) {
             log.error("Http POST request failed.");
             throw ClickHouseExceptionSpecifier.specify("Http POST request failed.",
@@ -242,18 +347,184 @@ final class AsyncHttpConnector implements HttpConnector {
                 StreamUtils.close(responseBody);
             }
 
-            if (properties.isCompress()) {
-                try (InputStream messageStream = new ClickHouseLZ4InputStream(new ByteArrayInputStream(bytes))) {
-                    bytes = StreamUtils.toByteArray(messageStream);
-                } catch (IOException e) {
-                    log.warn("Error while read compressed stream. {}", e.getMessage());
-                }
+            throw toException(bytes);
+        }
+        return null;
+    }
+
+    private ClickHouseException toException(byte[] bytes) {
+        if (properties.isCompress()) {
+            try (InputStream messageStream = new ClickHouseLZ4InputStream(new ByteArrayInputStream(bytes))) {
+                bytes = StreamUtils.toByteArray(messageStream);
+            } catch (IOException e) {
+                log.warn("Error while read compressed stream. {}", e.getMessage());
             }
+        }
 
-            String chMessage = new String(bytes, UTF_8);
+        String chMessage = new String(bytes, UTF_8);
 
-            throw ClickHouseExceptionSpecifier.specify(chMessage, properties.getHost(), properties.getPort());
+        return ClickHouseExceptionSpecifier.specify(chMessage, properties.getHost(), properties.getPort());
+    }
+
+    /**
+     * Completes {@link #body} as soon as the response headers are received,
+     * so the caller reads the body while it is still being transferred.
+     * Error responses are small, so they are collected fully and fail the future.
+     */
+    private final class StreamingResponseHandler implements StreamedAsyncHandler<Void> {
+
+        private final CompletableFuture<InputStream> body = new CompletableFuture<>();
+
+        private int statusCode;
+        private StreamingResponseBody responseBody;
+
+        @Override
+        public State onStatusReceived(HttpResponseStatus responseStatus) {
+            this.statusCode = responseStatus.getStatusCode();
+            return State.CONTINUE;
+        }
+
+        @Override
+        public State onHeadersReceived(HttpHeaders headers) {
+            return State.CONTINUE;
+        }
+
+        @Override
+        public State onStream(Publisher<HttpResponseBodyPart> publisher) {
+            if (statusCode == HttpURLConnection.HTTP_OK) {
+                responseBody = new StreamingResponseBody();
+                publisher.subscribe(responseBody);
+                body.complete(maybeDecompress(responseBody));
+            } else {
+                publisher.subscribe(new ErrorBodySubscriber());
+            }
+            return State.CONTINUE;
+        }
+
+        @Override
+        public State onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+            //not called for the streamed responses, body parts go to the publisher
+            return State.CONTINUE;
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            log.error("Http POST request failed. {}", t.getMessage());
+            if (!body.completeExceptionally(
+                    ClickHouseExceptionSpecifier.specify(t, properties.getHost(), properties.getPort()))
+                    && responseBody != null) {
+                responseBody.onError(t);
+            }
+        }
+
+        @Override
+        public Void onCompleted() {
+            if (!body.isDone() && statusCode == HttpURLConnection.HTTP_OK) {
+                //response without body
+                body.complete(new ByteArrayInputStream(new byte[0]));
+            }
+            return null;
+        }
+
+        private final class ErrorBodySubscriber implements Subscriber<HttpResponseBodyPart> {
+
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(HttpResponseBodyPart part) {
+                byte[] partBytes = part.getBodyPartBytes();
+                bytes.write(partBytes, 0, partBytes.length);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                onThrowable(t);
+            }
+
+            @Override
+            public void onComplete() {
+                body.completeExceptionally(toException(bytes.toByteArray()));
+            }
         }
     }
 
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(Response response) throws ClickHouseException;
+    }
+
+    private final class FeedingRequest implements StreamingRequest {
+
+        private final FeedingOutputStream feed;
+        private final OutputStream body;
+        private final ListenableFuture<Response> future;
+        private boolean released;
+
+        FeedingRequest(FeedingOutputStream feed, OutputStream body, ListenableFuture<Response> future) {
+            this.feed = feed;
+            this.body = body;
+            this.future = future;
+        }
+
+        @Override
+        public OutputStream body() {
+            return body;
+        }
+
+        @Override
+        public void finish() throws ClickHouseException {
+            try {
+                body.flush();
+                feed.close();
+            } catch (IOException e) {
+                throw fail(e);
+            } finally {
+                release();
+            }
+            checkForErrorAndThrow(getResponse(future));
+        }
+
+        @Override
+        public void abort() {
+            cancel();
+        }
+
+        /**
+         * Aborts the request after the failed write.
+         *
+         * @return the error of the server, when it has responded already, or the write error
+         */
+        ClickHouseException fail(IOException e) {
+            boolean responded = future.isDone();
+            cancel();
+            if (responded) {
+                try {
+                    checkForErrorAndThrow(getResponse(future));
+                } catch (ClickHouseException serverError) {
+                    return serverError;
+                }
+            }
+            return ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+        }
+
+        //closes the channel, so the server sees the broken body.
+        //abort(Throwable) of the future forgets the channel, so it is not used
+        private void cancel() {
+            future.cancel(true);
+            release();
+        }
+
+        //releases the compressing threads, the body itself is ended only by finish()
+        private void release() {
+            if (!released && body != feed) {
+                released = true;
+                StreamUtils.close(body);
+            }
+        }
+    }
 }
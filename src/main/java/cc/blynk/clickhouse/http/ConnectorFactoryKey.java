@@ -0,0 +1,64 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+
+import java.util.Objects;
+
+/**
+ * Transport settings the connection pool of a {@link HttpConnectorFactory} is built from.
+ * DataSources with equal keys share the pool, the rest of the properties
+ * (host, credentials, query settings) are applied per connector.
+ */
+final class ConnectorFactoryKey {
+
+    private final String connectorType;
+    private final int maxConnections;
+    private final int connectionTimeout;
+    private final boolean ssl;
+    private final String sslMode;
+    private final String sslRootCertificate;
+
+    ConnectorFactoryKey(ClickHouseProperties properties) {
+        this.connectorType = properties.getConnectorType();
+        this.maxConnections = properties.getMaxConnections();
+        this.connectionTimeout = properties.getConnectionTimeout();
+        this.ssl = properties.getSsl();
+        //ssl settings do not matter when ssl is off
+        this.sslMode = ssl ? properties.getSslMode() : null;
+        this.sslRootCertificate = ssl ? properties.getSslRootCertificate() : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ConnectorFactoryKey that = (ConnectorFactoryKey) o;
+        return maxConnections == that.maxConnections
+                && connectionTimeout == that.connectionTimeout
+                && ssl == that.ssl
+                && Objects.equals(connectorType, that.connectorType)
+                && Objects.equals(sslMode, that.sslMode)
+                && Objects.equals(sslRootCertificate, that.sslRootCertificate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(connectorType, maxConnections, connectionTimeout, ssl, sslMode, sslRootCertificate);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectorFactoryKey{"
+                + "connectorType=" + connectorType
+                + ", maxConnections=" + maxConnections
+                + ", connectionTimeout=" + connectionTimeout
+                + ", ssl=" + ssl
+                + ", sslMode=" + sslMode
+                + ", sslRootCertificate=" + sslRootCertificate
+                + '}';
+    }
+}
@@ -2,16 +2,31 @@ package cc.blynk.clickhouse.http;
 
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
 
+/**
+ * Creates {@link DefaultHttpConnector}s. Their idle sockets are kept in the JVM wide keep-alive cache
+ * of HttpURLConnection, which holds up to <code>http.maxConnections</code> sockets per host (5 by default).
+ * It is a JVM level setting shared with every other HttpURLConnection user, read by the JDK only once,
+ * so it isn't configured by the connection properties and should be passed as a JVM option,
+ * e.g. <code>-Dhttp.maxConnections=20</code>.
+ */
 public final class DefaultConnectorFactory extends HttpConnectorFactory {
 
+    //HttpURLConnection keeps idle sockets in the JVM wide keep-alive cache,
+    //so the stats are JVM wide as well
+    private static final HttpConnectionStats stats = new HttpConnectionStats();
+
     @Override
     public HttpConnector create(ClickHouseProperties properties) {
-        return new DefaultHttpConnector(properties);
+        return new DefaultHttpConnector(properties, stats);
     }
 
     @Override
     public void close() {
         //empty because default connection factory uses HTTPUrlConnection that
-        //is closed within connection.close()
+        //keeps idle sockets in the JDK keep-alive cache, which closes them on timeout
+    }
+
+    public static HttpConnectionStats getConnectionStats() {
+        return stats;
     }
 }
@@ -4,45 +4,34 @@ import cc.blynk.clickhouse.ClickHouseExternalData;
 import cc.blynk.clickhouse.except.ClickHouseException;
 import cc.blynk.clickhouse.except.ClickHouseExceptionSpecifier;
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseCompression;
 import cc.blynk.clickhouse.util.ClickHouseLZ4InputStream;
 import cc.blynk.clickhouse.util.ClickHouseLZ4OutputStream;
+import cc.blynk.clickhouse.util.ClickHouseParallelLZ4OutputStream;
+import cc.blynk.clickhouse.util.ClickHouseReadAheadLZ4InputStream;
 import cc.blynk.clickhouse.util.guava.StreamUtils;
-import cc.blynk.clickhouse.util.ssl.NonValidatingTrustManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.KeyManager;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
-import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.cert.Certificate;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -52,10 +41,18 @@ final class DefaultHttpConnector implements HttpConnector {
 
     private final ClickHouseProperties properties;
 
-    private HttpURLConnection httpURLConnection;
+    private final ClickHouseCompression compression;
 
-    DefaultHttpConnector(ClickHouseProperties properties) {
+    private final HttpConnectionStats stats;
+
+    //responses not closed by the caller yet, mapped to their outermost streams,
+    //so the read-ahead is stopped before the response is closed
+    private final Map<ResponseInputStream, InputStream> openResponses = new ConcurrentHashMap<>();
+
+    DefaultHttpConnector(ClickHouseProperties properties, HttpConnectionStats stats) {
         this.properties = properties;
+        this.compression = ClickHouseCompression.fromName(properties.getCompressionMethod());
+        this.stats = stats;
     }
 
     @Override
@@ -68,7 +65,7 @@ final class DefaultHttpConnector implements HttpConnector {
     public InputStream post(String sql, URI uri) throws ClickHouseException {
         byte[] bytes = getSqlBytes(sql);
         HttpURLConnection connection = buildConnection(uri);
-        return sendPostRequest(new ByteArrayInputStream(bytes), connection);
+        return sendPostRequest(new ByteArrayInputStream(bytes), bytes.length, connection);
     }
 
     @Override
@@ -77,72 +74,113 @@ final class DefaultHttpConnector implements HttpConnector {
         sendPostRequest(sql, from, connection);
     }
 
+    @Override
+    public void post(String sql, RequestBodyWriter body, URI uri) throws ClickHouseException {
+        HttpURLConnection connection = buildConnection(uri);
+        sendPostRequest(sql, body, connection);
+    }
+
+    @Override
+    public StreamingRequest openPost(String sql, URI uri) throws ClickHouseException {
+        HttpURLConnection connection = buildConnection(uri);
+        setStreamingMode(connection, -1);
+        OpenRequest request = open(connection);
+        write(request, out -> out.write(getSqlBytes(sql)));
+        return request;
+    }
+
     @Override
     public InputStream post(List<ClickHouseExternalData> externalData, URI uri) throws ClickHouseException {
         String boundaryString = UUID.randomUUID().toString();
         HttpURLConnection connection = buildConnection(uri);
-        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundaryString);
+        connection.setRequestProperty("Content-Type", MultipartBody.contentType(boundaryString));
+
+        return sendPostRequest(MultipartBody.open(externalData, boundaryString), -1, connection);
+    }
 
-        byte[] bytes;
-        bytes = buildMultipartData(externalData, boundaryString);
-        InputStream from = new ByteArrayInputStream(bytes);
+    @Override
+    public CompletableFuture<InputStream> postAsync(String sql, URI uri, Executor executor) {
+        return supplyAsync(() -> post(sql, uri), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> postAsync(String sql, InputStream from, URI uri, Executor executor) {
+        return supplyAsync(() -> {
+            post(sql, from, uri);
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> postAsync(String sql, List<byte[]> data, URI uri, Executor executor) {
+        return supplyAsync(() -> {
+            post(sql, data, uri);
+            return null;
+        }, executor);
+    }
 
-        return sendPostRequest(from, connection);
+    //HttpURLConnection is blocking, so the request occupies the executor thread till the response is received.
+    //Without executor the request runs on the bounded pool of the connector, not on the common pool
+    //that is meant for the non-blocking tasks
+    private static <T> CompletableFuture<T> supplyAsync(BlockingRequest<T> request, Executor executor) {
+        Supplier<T> supplier = () -> {
+            try {
+                return request.execute();
+            } catch (ClickHouseException e) {
+                throw new CompletionException(e);
+            }
+        };
+        return CompletableFuture.supplyAsync(supplier, executor == null ? BlockingPool.EXECUTOR : executor);
     }
 
     @Override
     public void close() {
-        if (this.httpURLConnection != null) {
-            this.httpURLConnection.disconnect();
+        //the socket itself stays in the keep-alive cache,
+        //we only release the responses that weren't read till the end
+        for (InputStream response : openResponses.values()) {
+            StreamUtils.close(response);
         }
     }
 
     private void sendPostRequest(String sql, List<byte[]> batches, HttpURLConnection connection)
             throws ClickHouseException {
-        try (OutputStream outputStream = properties.isDecompress()
-                ? new ClickHouseLZ4OutputStream(connection.getOutputStream(), properties.getMaxCompressBufferSize())
-                : new DataOutputStream(connection.getOutputStream())) {
-
-            byte[] sqlBytes = getSqlBytes(sql);
+        byte[] sqlBytes = getSqlBytes(sql);
+        long contentLength = sqlBytes.length;
+        for (byte[] batch : batches) {
+            contentLength += batch.length;
+        }
+        setStreamingMode(connection, contentLength);
 
-            outputStream.write(sqlBytes);
+        OpenRequest request = open(connection);
+        write(request, out -> {
+            out.write(sqlBytes);
             for (byte[] batch : batches) {
-                outputStream.write(batch);
+                out.write(batch);
             }
-
-            outputStream.flush();
-            checkForErrorAndThrow(connection);
-            //we have to read fully, just in case
-            try (InputStream is = connection.getInputStream()) {
-                StreamUtils.toByteArray(is);
-            }
-        } catch (IOException e) {
-            log.error("Http POST request failed. {}", e.getMessage());
-            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
-        }
+        });
+        request.finish();
     }
 
     private void sendPostRequest(String sql,
                                  InputStream from,
                                  HttpURLConnection connection) throws ClickHouseException {
-        try (OutputStream requestStream = openOutputStream(connection);
-             InputStream fromIS = from) {
-            byte[] sqlBytes = getSqlBytes(sql);
-            requestStream.write(sqlBytes);
-
-            StreamUtils.copy(fromIS, requestStream);
-
-            requestStream.flush();
-            checkForErrorAndThrow(connection);
-
-            //we have to read fully, just in case
-            try (InputStream is = connection.getInputStream()) {
-                StreamUtils.toByteArray(is);
+        sendPostRequest(sql, out -> {
+            try (InputStream fromIS = from) {
+                StreamUtils.copy(fromIS, out);
             }
-        } catch (IOException e) {
-            log.error("Http POST request failed. {}", e.getMessage());
-            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
-        }
+        }, connection);
+    }
+
+    private void sendPostRequest(String sql,
+                                 RequestBodyWriter body,
+                                 HttpURLConnection connection) throws ClickHouseException {
+        setStreamingMode(connection, -1);
+        OpenRequest request = open(connection);
+        write(request, out -> {
+            out.write(getSqlBytes(sql));
+            body.writeTo(out);
+        });
+        request.finish();
     }
 
     private byte[] getSqlBytes(String sql) {
@@ -152,66 +190,103 @@ final class DefaultHttpConnector implements HttpConnector {
         return sql.getBytes(UTF_8);
     }
 
-    private InputStream sendPostRequest(InputStream from, HttpURLConnection connection)
+    private InputStream sendPostRequest(InputStream from, long contentLength, HttpURLConnection connection)
             throws ClickHouseException {
-        try (OutputStream requestStream = openOutputStream(connection);
-             InputStream fromIS = from) {
-            StreamUtils.copy(fromIS, requestStream);
-            requestStream.flush();
-            checkForErrorAndThrow(connection);
-
-            InputStream is = connection.getInputStream();
-            return properties.isCompress() ? new ClickHouseLZ4InputStream(is) : is;
+        setStreamingMode(connection, contentLength);
+        OpenRequest request = open(connection);
+        write(request, out -> {
+            try (InputStream fromIS = from) {
+                StreamUtils.copy(fromIS, out);
+            }
+        });
+        ResponseInputStream body = request.response();
+        InputStream response = maybeDecompress(body);
+        openResponses.put(body, response);
+        body.onClose(() -> openResponses.remove(body));
+        return response;
+    }
+
+    private OpenRequest open(HttpURLConnection connection) throws ClickHouseException {
+        try {
+            return new OpenRequest(connection, openOutputStream(connection));
         } catch (IOException e) {
             log.error("Http POST request failed. {}", e.getMessage());
+            abort(connection);
             throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
         }
     }
 
-    private OutputStream openOutputStream(HttpURLConnection connection) throws IOException {
-        OutputStream outputStream = connection.getOutputStream();
-        if (properties.isDecompress()) {
-            return new ClickHouseLZ4OutputStream(outputStream, properties.getMaxCompressBufferSize());
-        } else {
-            return new DataOutputStream(outputStream);
+    private void write(OpenRequest request, RequestBodyWriter body) throws ClickHouseException {
+        try {
+            body.writeTo(request.body());
+        } catch (IOException e) {
+            log.error("Http POST request failed. {}", e.getMessage());
+            request.abort();
+            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+        } catch (RuntimeException | Error e) {
+            //the body must not be ended, otherwise the server inserts the rows sent so far
+            request.abort();
+            throw e;
         }
     }
 
-    private byte[] buildMultipartData(List<ClickHouseExternalData> externalData, String boundaryString)
-            throws ClickHouseException {
-        try (ByteArrayOutputStream requestBodyStream = new ByteArrayOutputStream();
-             BufferedWriter httpRequestBodyWriter = new BufferedWriter(new OutputStreamWriter(requestBodyStream))) {
-            for (ClickHouseExternalData data : externalData) {
-                httpRequestBodyWriter.write("--" + boundaryString + "\r\n");
-                httpRequestBodyWriter.write("Content-Disposition: form-data;"
-                        + " name=\"" + data.getName() + "\";"
-                        + " filename=\"" + data.getName() + "\"" + "\r\n");
-                httpRequestBodyWriter.write("Content-Type: application/octet-stream" + "\r\n");
-                httpRequestBodyWriter.write("Content-Transfer-Encoding: binary" + "\r\n" + "\r\n");
-                httpRequestBodyWriter.flush();
-
-                StreamUtils.copy(data.getContent(), requestBodyStream);
-
-                requestBodyStream.flush();
-            }
+    private ResponseInputStream openResponse(HttpURLConnection connection) throws IOException {
+        return new ResponseInputStream(connection.getInputStream(), connection, stats);
+    }
 
-            httpRequestBodyWriter.write("\r\n" + "--" + boundaryString + "--" + "\r\n");
-            httpRequestBodyWriter.flush();
+    private void abort(HttpURLConnection connection) {
+        connection.disconnect();
+        stats.onClose();
+    }
 
-            return requestBodyStream.toByteArray();
-        } catch (IOException e) {
-            log.error("Building Multipart Body failed. {}", e.getMessage());
-            throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+    /**
+     * Without streaming mode HttpURLConnection buffers the whole request body on the heap
+     * before sending it. Body of known length (and not compressed) is sent as is,
+     * the rest is sent in chunks of {@link ClickHouseProperties#getRequestChunkSize()}.
+     *
+     * @param connection    not yet connected connection
+     * @param contentLength length of the body or -1 if it is unknown
+     */
+    private void setStreamingMode(HttpURLConnection connection, long contentLength) {
+        int chunkSize = properties.getRequestChunkSize();
+        if (chunkSize <= 0) {
+            return;
         }
+        if (contentLength >= 0 && !properties.isDecompress()) {
+            connection.setFixedLengthStreamingMode(contentLength);
+        } else {
+            connection.setChunkedStreamingMode(chunkSize);
+        }
+    }
+
+    private InputStream maybeDecompress(InputStream response) {
+        if (!properties.isCompress()) {
+            return response;
+        }
+        if (properties.getReadAheadBlocks() > 0) {
+            return new ClickHouseReadAheadLZ4InputStream(response, properties.getReadAheadBlocks());
+        }
+        return new ClickHouseLZ4InputStream(response);
+    }
+
+    private OutputStream openOutputStream(HttpURLConnection connection) throws IOException {
+        OutputStream outputStream = connection.getOutputStream();
+        if (!properties.isDecompress()) {
+            return new DataOutputStream(outputStream);
+        }
+        if (properties.getCompressThreads() > 0) {
+            return new ClickHouseParallelLZ4OutputStream(outputStream, properties.getMaxCompressBufferSize(),
+                    properties.getCompressThreads(), compression, properties.getCompressionLevel());
+        }
+        return new ClickHouseLZ4OutputStream(outputStream, properties.getMaxCompressBufferSize(),
+                compression, properties.getCompressionLevel());
     }
 
     private HttpURLConnection buildConnection(URI uri) throws ClickHouseException {
         try {
-            HttpURLConnection prevConnection = this.httpURLConnection;
-            if (prevConnection != null) {
-                prevConnection.disconnect();
-            }
-
+            //previous connection is not disconnected on purpose, its socket is
+            //returned to the JDK keep-alive cache once the response is read and
+            //url.openConnection() takes it from there
             URL url = uri.toURL();
             HttpURLConnection newConnection = (HttpURLConnection) url.openConnection();
             newConnection.setInstanceFollowRedirects(true);
@@ -227,7 +302,7 @@ final class DefaultHttpConnector implements HttpConnector {
                 configureHttps((HttpsURLConnection) newConnection);
             }
 
-            this.httpURLConnection = newConnection;
+            stats.onRequest();
             return newConnection;
         } catch (IOException e) {
             log.error("Can't build connection. {}", e.getMessage());
@@ -246,15 +321,13 @@ final class DefaultHttpConnector implements HttpConnector {
     private void configureHttps(HttpsURLConnection connection) throws ClickHouseException {
         if (properties.getSsl()) {
             try {
-                SSLContext sslContext = getSSLContext();
                 HostnameVerifier verifier = "strict".equals(properties.getSslMode())
                         ? HttpsURLConnection.getDefaultHostnameVerifier()
                         : TrustAllHostnameVerifier.getInstance();
 
                 connection.setHostnameVerifier(verifier);
 
-                SSLSocketFactory socketFactory = sslContext.getSocketFactory();
-                connection.setSSLSocketFactory(socketFactory);
+                connection.setSSLSocketFactory(SSLContextCache.getSocketFactory(properties));
             } catch (Exception e) {
                 throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
             }
@@ -267,7 +340,16 @@ final class DefaultHttpConnector implements HttpConnector {
         if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
             InputStream messageStream = connection.getErrorStream();
 
-            byte[] bytes = StreamUtils.toByteArray(messageStream);
+            byte[] bytes;
+            if (messageStream == null) {
+                bytes = new byte[0];
+                abort(connection);
+            } else {
+                //error body is read fully, so the socket could be reused as well
+                try (InputStream errorStream = new ResponseInputStream(messageStream, connection, stats)) {
+                    bytes = StreamUtils.toByteArray(errorStream);
+                }
+            }
             if (properties.isCompress()) {
                 try {
                     messageStream = new ClickHouseLZ4InputStream(new ByteArrayInputStream(bytes));
@@ -283,69 +365,64 @@ final class DefaultHttpConnector implements HttpConnector {
         }
     }
 
-    private SSLContext getSSLContext()
-            throws CertificateException, NoSuchAlgorithmException,
-            KeyStoreException, IOException, KeyManagementException {
-        SSLContext ctx = SSLContext.getInstance("TLS");
-        TrustManager[] tms = null;
-        KeyManager[] kms = null;
-        SecureRandom sr = null;
-
-        switch (properties.getSslMode()) {
-            case "none":
-                tms = new TrustManager[]{new NonValidatingTrustManager()};
-                kms = new KeyManager[]{};
-                sr = new SecureRandom();
-                break;
-            case "strict":
-                if (!properties.getSslRootCertificate().isEmpty()) {
-                    TrustManagerFactory tmf = TrustManagerFactory
-                            .getInstance(TrustManagerFactory.getDefaultAlgorithm());
-
-                    tmf.init(getKeyStore());
-                    tms = tmf.getTrustManagers();
-                    kms = new KeyManager[]{};
-                    sr = new SecureRandom();
-                }
-                break;
-            default:
-                throw new IllegalArgumentException("unknown ssl mode '" + properties.getSslMode() + "'");
-        }
-
-        ctx.init(kms, tms, sr);
-        return ctx;
+    @FunctionalInterface
+    private interface BlockingRequest<T> {
+        T execute() throws ClickHouseException;
     }
 
-    private KeyStore getKeyStore()
-            throws NoSuchAlgorithmException, IOException, CertificateException, KeyStoreException {
-        KeyStore ks;
-        try {
-            ks = KeyStore.getInstance("jks");
-            ks.load(null, null); // needed to initialize the key store
-        } catch (KeyStoreException e) {
-            throw new NoSuchAlgorithmException("jks KeyStore not available");
+    private final class OpenRequest implements StreamingRequest {
+
+        private final HttpURLConnection connection;
+        private final OutputStream requestStream;
+
+        OpenRequest(HttpURLConnection connection, OutputStream requestStream) {
+            this.connection = connection;
+            this.requestStream = requestStream;
         }
 
-        InputStream caInputStream;
-        try {
-            caInputStream = new FileInputStream(properties.getSslRootCertificate());
-        } catch (FileNotFoundException ex) {
-            ClassLoader cl = Thread.currentThread().getContextClassLoader();
-            caInputStream = cl.getResourceAsStream(properties.getSslRootCertificate());
-            if (caInputStream == null) {
-                throw new IOException(
-                        "Could not open SSL/TLS root certificate file '" + properties
-                                .getSslRootCertificate() + "'", ex);
+        @Override
+        public OutputStream body() {
+            return requestStream;
+        }
+
+        @Override
+        public void finish() throws ClickHouseException {
+            try {
+                //we have to read fully, so the socket could be reused
+                response().close();
+            } catch (IOException e) {
+                log.error("Http POST request failed. {}", e.getMessage());
+                DefaultHttpConnector.this.abort(connection);
+                throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
             }
         }
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        Iterator<? extends Certificate> caIt = cf.generateCertificates(caInputStream).iterator();
-        StreamUtils.close(caInputStream);
-        for (int i = 0; caIt.hasNext(); i++) {
-            ks.setCertificateEntry("cert" + i, caIt.next());
+
+        /**
+         * Ends the body and opens the response.
+         */
+        ResponseInputStream response() throws ClickHouseException {
+            try {
+                //the body is ended before the response is read: getInputStream() closes the request stream
+                //itself and closing a FilterOutputStream over it afterwards fails on JDK 9+
+                requestStream.flush();
+                requestStream.close();
+                checkForErrorAndThrow(connection);
+                return openResponse(connection);
+            } catch (IOException e) {
+                log.error("Http POST request failed. {}", e.getMessage());
+                abort();
+                throw ClickHouseExceptionSpecifier.specify(e, properties.getHost(), properties.getPort());
+            }
         }
 
-        return ks;
+        @Override
+        public void abort() {
+            //the socket is closed before the last chunk, so the server sees the broken body
+            DefaultHttpConnector.this.abort(connection);
+            //releases the compressing threads, closing the other streams would end the body
+            if (requestStream instanceof ClickHouseParallelLZ4OutputStream) {
+                StreamUtils.close(requestStream);
+            }
+        }
     }
-
 }
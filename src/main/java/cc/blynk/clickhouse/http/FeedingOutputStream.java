@@ -0,0 +1,134 @@
+package cc.blynk.clickhouse.http;
+
+import io.netty.buffer.Unpooled;
+import org.asynchttpclient.request.body.generator.BodyChunk;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+import org.asynchttpclient.request.body.generator.QueueBasedFeedableBodyGenerator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body of {@link AsyncHttpConnector} written by the caller thread and sent by the event loop.
+ * The written bytes are passed to the event loop in chunks, the writer waits while <code>maxChunks</code>
+ * chunks are not sent yet, so the body is sent while it is written and is never fully in memory.
+ * <p>
+ * {@link #flush()} passes the bytes written so far, {@link #close()} ends the body.
+ */
+final class FeedingOutputStream extends OutputStream {
+
+    //how often the waiting writer checks that the request isn't completed (failed) already
+    private static final long WAIT_MILLIS = 100;
+
+    private final BlockingFeedableBodyGenerator generator;
+    private final int chunkSize;
+    private byte[] chunk;
+    private int count;
+    private volatile Future<?> request;
+    private boolean closed;
+
+    FeedingOutputStream(int chunkSize, int maxChunks) {
+        this.generator = new BlockingFeedableBodyGenerator(maxChunks);
+        this.chunkSize = chunkSize;
+        this.chunk = new byte[chunkSize];
+    }
+
+    BodyGenerator bodyGenerator() {
+        return generator;
+    }
+
+    /**
+     * @param request the request that sends the body, once it is completed the writer doesn't wait anymore
+     */
+    void sentBy(Future<?> request) {
+        this.request = request;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == chunkSize) {
+            feed(false);
+        }
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == chunkSize) {
+                feed(false);
+            }
+            int n = Math.min(len, chunkSize - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            feed(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            feed(true);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    private void feed(boolean last) throws IOException {
+        //the queued chunk is sent later, so it isn't reused
+        byte[] fed = chunk;
+        int length = count;
+        chunk = last ? null : new byte[chunkSize];
+        count = 0;
+        try {
+            generator.feed(Unpooled.wrappedBuffer(fed, 0, length), last);
+        } catch (IOException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private final class BlockingFeedableBodyGenerator
+            extends QueueBasedFeedableBodyGenerator<BlockingQueue<BodyChunk>> {
+
+        BlockingFeedableBodyGenerator(int capacity) {
+            super(new ArrayBlockingQueue<>(capacity));
+        }
+
+        @Override
+        protected boolean offer(BodyChunk bodyChunk) throws Exception {
+            while (!queue.offer(bodyChunk, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Future<?> sending = request;
+                if (sending != null && sending.isDone()) {
+                    throw new IOException("Request is completed before the body is sent");
+                }
+            }
+            return true;
+        }
+    }
+}
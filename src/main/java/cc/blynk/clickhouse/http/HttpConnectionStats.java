@@ -0,0 +1,60 @@
+package cc.blynk.clickhouse.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keep-alive counters of the HttpUrlConnection based connector.
+ * HttpURLConnection doesn't tell whether a request went over a pooled socket,
+ * so instead we count the responses after which the socket was returned
+ * to the JDK keep-alive cache and the ones after which it was closed.
+ * Every request either reuses a returned socket or opens a new one, so
+ * <code>requests - released</code> close to zero means sockets are reused.
+ */
+public final class HttpConnectionStats {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+
+    HttpConnectionStats() {
+    }
+
+    void onRequest() {
+        requests.increment();
+    }
+
+    void onRelease() {
+        released.increment();
+    }
+
+    void onClose() {
+        closed.increment();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of responses after which the socket was returned to the keep-alive cache
+     */
+    public long getReleased() {
+        return released.sum();
+    }
+
+    /**
+     * @return number of responses after which the socket was closed and can't be reused
+     */
+    public long getClosed() {
+        return closed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpConnectionStats{"
+                + "requests=" + getRequests()
+                + ", released=" + getReleased()
+                + ", closed=" + getClosed()
+                + '}';
+    }
+}
@@ -6,6 +6,8 @@ import cc.blynk.clickhouse.except.ClickHouseException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface HttpConnector {
 
@@ -17,6 +19,33 @@ public interface HttpConnector {
 
     void post(String sql, List<byte[]> data, URI uri) throws ClickHouseException;
 
+    /**
+     * Sends the query followed by the body written by the writer.
+     */
+    void post(String sql, RequestBodyWriter body, URI uri) throws ClickHouseException;
+
+    /**
+     * Sends the query and leaves the request open, so the body is written by the caller at its own pace.
+     */
+    StreamingRequest openPost(String sql, URI uri) throws ClickHouseException;
+
+    /**
+     * Non-blocking version of {@link #post(String, URI)}. Future fails with {@link ClickHouseException}.
+     * Future completes once the response headers are received, the body may still be in transfer.
+     *
+     * @param executor executor to complete the future on. When <code>null</code>, the future is completed
+     *                 on the bounded pool of the connector, so the dependent stages may read the body
+     */
+    CompletableFuture<InputStream> postAsync(String sql, URI uri, Executor executor);
+
+    /**
+     * Non-blocking version of {@link #post(String, InputStream, URI)}. Reading the source may block,
+     * so it is read on the executor or, when it is <code>null</code>, on the bounded pool of the connector.
+     */
+    CompletableFuture<Void> postAsync(String sql, InputStream from, URI uri, Executor executor);
+
+    CompletableFuture<Void> postAsync(String sql, List<byte[]> data, URI uri, Executor executor);
+
     void close();
 
 }
@@ -1,61 +1,110 @@
 package cc.blynk.clickhouse.http;
 
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
-import cc.blynk.clickhouse.util.guava.StreamUtils;
-import cc.blynk.clickhouse.util.ssl.NonValidatingTrustManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.KeyManager;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
 import java.io.Closeable;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.cert.Certificate;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public abstract class HttpConnectorFactory implements Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(HttpConnectorFactory.class);
 
+    //one factory (and so one connection pool) per transport configuration
+    private static final Map<ConnectorFactoryKey, HttpConnectorFactory> factories = new HashMap<>();
+
+    //guarded by factories
+    private ConnectorFactoryKey key;
+    private int references;
+    private boolean retainedByDriver;
+
     public HttpConnectorFactory() {
     }
 
-    private static HttpConnectorFactory httpConnectorFactory;
+    /**
+     * Returns the factory for the transport configuration of the given properties and
+     * holds a reference on it. Each call has to be paired with {@link #release(HttpConnectorFactory)},
+     * the factory is closed when the last reference is released.
+     */
+    public static HttpConnectorFactory acquire(ClickHouseProperties properties) {
+        synchronized (factories) {
+            HttpConnectorFactory factory = getOrCreate(properties);
+            factory.references++;
+            return factory;
+        }
+    }
 
-    private static HttpConnectorFactory getHttpConnectorFactory(ClickHouseProperties properties) {
-        if (httpConnectorFactory == null) {
-            synchronized (HttpConnectorFactory.class) {
-                if (httpConnectorFactory == null) {
-                    httpConnectorFactory = createFactory(properties);
-                }
+    public static void release(HttpConnectorFactory factory) throws IOException {
+        synchronized (factories) {
+            if (factory.references == 0) {
+                return;
             }
+            factory.references--;
+            if (factory.references > 0) {
+                return;
+            }
+            factories.remove(factory.key);
         }
-        return httpConnectorFactory;
+        log.info("Closing http connector factory for {}.", factory.key);
+        factory.close();
     }
 
+    /**
+     * Connector for the connections created via {@link java.sql.DriverManager}, without DataSource.
+     * There is nobody to release such factories, so they are kept till {@link #shutdown()}.
+     */
     public static HttpConnector getHttpConnector(ClickHouseProperties properties) {
-        return getHttpConnectorFactory(properties).create(properties);
+        HttpConnectorFactory factory;
+        synchronized (factories) {
+            factory = getOrCreate(properties);
+            if (!factory.retainedByDriver) {
+                factory.retainedByDriver = true;
+                factory.references++;
+            }
+        }
+        return factory.create(properties);
     }
 
+    /**
+     * Closes all the factories, regardless of the references.
+     */
     public static void shutdown() throws IOException {
-        if (httpConnectorFactory != null) {
-            httpConnectorFactory.close();
+        List<HttpConnectorFactory> toClose;
+        synchronized (factories) {
+            toClose = new ArrayList<>(factories.values());
+            for (HttpConnectorFactory factory : toClose) {
+                factory.references = 0;
+            }
+            factories.clear();
+        }
+        for (HttpConnectorFactory factory : toClose) {
+            factory.close();
         }
     }
 
-    private static HttpConnectorFactory createFactory(ClickHouseProperties properties) {
+    static int size() {
+        synchronized (factories) {
+            return factories.size();
+        }
+    }
+
+    private static HttpConnectorFactory getOrCreate(ClickHouseProperties properties) {
+        ConnectorFactoryKey key = new ConnectorFactoryKey(properties);
+        HttpConnectorFactory factory = factories.get(key);
+        if (factory == null) {
+            factory = createFactory(properties, key);
+            factory.key = key;
+            factories.put(key, factory);
+        }
+        return factory;
+    }
+
+    private static HttpConnectorFactory createFactory(ClickHouseProperties properties, ConnectorFactoryKey key) {
         String client;
         HttpConnectorFactory connectorFactory;
         if ("ASYNC".equals(properties.getConnectorType())) {
@@ -65,75 +114,10 @@ public abstract class HttpConnectorFactory implements Closeable {
             client = "HttpUrlConnection Client";
             connectorFactory = new DefaultConnectorFactory();
         }
-        log.info("Using {} for clickhouse.", client);
+        log.info("Using {} for clickhouse with {}.", client, key);
         return connectorFactory;
     }
 
     public abstract HttpConnector create(ClickHouseProperties properties);
 
-    static SSLContext getSSLContext(ClickHouseProperties properties)
-            throws CertificateException, NoSuchAlgorithmException,
-            KeyStoreException, IOException, KeyManagementException {
-        SSLContext ctx = SSLContext.getInstance("TLS");
-        TrustManager[] tms = null;
-        KeyManager[] kms = null;
-        SecureRandom sr = null;
-
-        switch (properties.getSslMode()) {
-            case "none":
-                tms = new TrustManager[]{new NonValidatingTrustManager()};
-                kms = new KeyManager[]{};
-                sr = new SecureRandom();
-                break;
-            case "strict":
-                if (!properties.getSslRootCertificate().isEmpty()) {
-                    TrustManagerFactory tmf = TrustManagerFactory
-                            .getInstance(TrustManagerFactory.getDefaultAlgorithm());
-
-                    tmf.init(getKeyStore(properties));
-                    tms = tmf.getTrustManagers();
-                    kms = new KeyManager[]{};
-                    sr = new SecureRandom();
-                }
-                break;
-            default:
-                throw new IllegalArgumentException("unknown ssl mode '" + properties.getSslMode() + "'");
-        }
-
-        ctx.init(kms, tms, sr);
-        return ctx;
-    }
-
-    private static KeyStore getKeyStore(ClickHouseProperties properties)
-            throws NoSuchAlgorithmException, IOException, CertificateException, KeyStoreException {
-        KeyStore ks;
-        try {
-            ks = KeyStore.getInstance("jks");
-            ks.load(null, null); // needed to initialize the key store
-        } catch (KeyStoreException e) {
-            throw new NoSuchAlgorithmException("jks KeyStore not available");
-        }
-
-        InputStream caInputStream;
-        try {
-            caInputStream = new FileInputStream(properties.getSslRootCertificate());
-        } catch (FileNotFoundException ex) {
-            ClassLoader cl = Thread.currentThread().getContextClassLoader();
-            caInputStream = cl.getResourceAsStream(properties.getSslRootCertificate());
-            if (caInputStream == null) {
-                throw new IOException(
-                        "Could not open SSL/TLS root certificate file '" + properties
-                                .getSslRootCertificate() + "'", ex);
-            }
-        }
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        Iterator<? extends Certificate> caIt = cf.generateCertificates(caInputStream).iterator();
-        StreamUtils.close(caInputStream);
-        for (int i = 0; caIt.hasNext(); i++) {
-            ks.setCertificateEntry("cert" + i, caIt.next());
-        }
-
-        return ks;
-    }
-
 }
@@ -0,0 +1,49 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.ClickHouseExternalData;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * multipart/form-data request body with the external data tables.
+ * Boundaries and part headers are small in-memory streams between the content
+ * streams of the tables, so the content is read only while the body is sent.
+ */
+final class MultipartBody {
+
+    private MultipartBody() {
+    }
+
+    static String contentType(String boundary) {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    static InputStream open(List<ClickHouseExternalData> externalData, String boundary) {
+        List<InputStream> parts = new ArrayList<>(externalData.size() * 2 + 1);
+        for (int i = 0; i < externalData.size(); i++) {
+            ClickHouseExternalData data = externalData.get(i);
+            //the delimiter CRLF belongs to the boundary, not to the previous part content
+            String delimiter = (i == 0 ? "" : "\r\n") + "--" + boundary + "\r\n";
+            parts.add(text(delimiter
+                    + "Content-Disposition: form-data;"
+                    + " name=\"" + data.getName() + "\";"
+                    + " filename=\"" + data.getName() + "\"" + "\r\n"
+                    + "Content-Type: application/octet-stream" + "\r\n"
+                    + "Content-Transfer-Encoding: binary" + "\r\n" + "\r\n"));
+            parts.add(data.getContent());
+        }
+        parts.add(text("\r\n" + "--" + boundary + "--" + "\r\n"));
+        return new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    private static InputStream text(String text) {
+        return new ByteArrayInputStream(text.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,14 @@
+package cc.blynk.clickhouse.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the request body after the query, right into the request stream,
+ * so the body doesn't have to be prepared in memory.
+ */
+public interface RequestBodyWriter {
+
+    void writeTo(OutputStream out) throws IOException;
+
+}
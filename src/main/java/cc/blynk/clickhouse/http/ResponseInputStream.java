@@ -0,0 +1,103 @@
+package cc.blynk.clickhouse.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * Response body of the {@link HttpURLConnection}.
+ * HttpURLConnection returns the socket to the keep-alive cache only when the body
+ * was read till the end, so on close we drain the rest of the body (up to a limit)
+ * instead of calling {@link HttpURLConnection#disconnect()} that kills the socket.
+ */
+final class ResponseInputStream extends FilterInputStream {
+
+    //do not drain huge leftovers of the abandoned result sets,
+    //reconnecting is cheaper in that case
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final HttpURLConnection connection;
+    private final HttpConnectionStats stats;
+
+    private boolean eof;
+    private boolean closed;
+    private Runnable closeListener;
+
+    ResponseInputStream(InputStream in, HttpURLConnection connection, HttpConnectionStats stats) {
+        super(in);
+        this.connection = connection;
+        this.stats = stats;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            eof = true;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read == -1) {
+            eof = true;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        boolean reusable = eof || drain();
+        try {
+            in.close();
+        } finally {
+            if (reusable && isKeepAlive()) {
+                stats.onRelease();
+            } else {
+                connection.disconnect();
+                stats.onClose();
+            }
+            if (closeListener != null) {
+                closeListener.run();
+            }
+        }
+    }
+
+    void onClose(Runnable listener) {
+        this.closeListener = listener;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private boolean drain() {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        try {
+            while (drained <= MAX_DRAIN_BYTES) {
+                int read = in.read(buffer);
+                if (read == -1) {
+                    eof = true;
+                    return true;
+                }
+                drained += read;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private boolean isKeepAlive() {
+        return !"close".equalsIgnoreCase(connection.getHeaderField("Connection"));
+    }
+}
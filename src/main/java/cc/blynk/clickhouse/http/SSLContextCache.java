@@ -0,0 +1,166 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.guava.StreamUtils;
+import cc.blynk.clickhouse.util.ssl.NonValidatingTrustManager;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SSLContext per ssl mode and root certificate, shared by all the connectors.
+ * Creating the context reads the certificate from disk, and TLS sessions are cached
+ * inside the context, so reusing it lets repeat connections resume the session instead
+ * of the full handshake. The JDK keep-alive cache also reuses https sockets only for
+ * the same SSLSocketFactory instance, so the socket factory is cached as well.
+ * Certificate file changes are picked up only after restart.
+ */
+final class SSLContextCache {
+
+    private static final Map<Key, Entry> cache = new ConcurrentHashMap<>();
+
+    private SSLContextCache() {
+    }
+
+    static SSLContext getSSLContext(ClickHouseProperties properties) throws GeneralSecurityException, IOException {
+        return getEntry(properties).context;
+    }
+
+    static SSLSocketFactory getSocketFactory(ClickHouseProperties properties)
+            throws GeneralSecurityException, IOException {
+        return getEntry(properties).socketFactory;
+    }
+
+    private static Entry getEntry(ClickHouseProperties properties) throws GeneralSecurityException, IOException {
+        Key key = new Key(properties.getSslMode(), properties.getSslRootCertificate());
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            //concurrent callers may build the context twice, only one of them is kept
+            Entry created = new Entry(createSSLContext(key));
+            Entry existing = cache.putIfAbsent(key, created);
+            entry = existing == null ? created : existing;
+        }
+        return entry;
+    }
+
+    private static SSLContext createSSLContext(Key key) throws GeneralSecurityException, IOException {
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        TrustManager[] tms = null;
+        KeyManager[] kms = null;
+        SecureRandom sr = null;
+
+        switch (key.sslMode) {
+            case "none":
+                tms = new TrustManager[]{new NonValidatingTrustManager()};
+                kms = new KeyManager[]{};
+                sr = new SecureRandom();
+                break;
+            case "strict":
+                if (!key.sslRootCertificate.isEmpty()) {
+                    TrustManagerFactory tmf = TrustManagerFactory
+                            .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+
+                    tmf.init(getKeyStore(key.sslRootCertificate));
+                    tms = tmf.getTrustManagers();
+                    kms = new KeyManager[]{};
+                    sr = new SecureRandom();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown ssl mode '" + key.sslMode + "'");
+        }
+
+        ctx.init(kms, tms, sr);
+        return ctx;
+    }
+
+    private static KeyStore getKeyStore(String sslRootCertificate)
+            throws NoSuchAlgorithmException, IOException, CertificateException, KeyStoreException {
+        KeyStore ks;
+        try {
+            ks = KeyStore.getInstance("jks");
+            ks.load(null, null); // needed to initialize the key store
+        } catch (KeyStoreException e) {
+            throw new NoSuchAlgorithmException("jks KeyStore not available");
+        }
+
+        InputStream caInputStream;
+        try {
+            caInputStream = new FileInputStream(sslRootCertificate);
+        } catch (FileNotFoundException ex) {
+            ClassLoader cl = Thread.currentThread().getContextClassLoader();
+            caInputStream = cl.getResourceAsStream(sslRootCertificate);
+            if (caInputStream == null) {
+                throw new IOException(
+                        "Could not open SSL/TLS root certificate file '" + sslRootCertificate + "'", ex);
+            }
+        }
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        Iterator<? extends Certificate> caIt = cf.generateCertificates(caInputStream).iterator();
+        StreamUtils.close(caInputStream);
+        for (int i = 0; caIt.hasNext(); i++) {
+            ks.setCertificateEntry("cert" + i, caIt.next());
+        }
+
+        return ks;
+    }
+
+    private static final class Entry {
+
+        private final SSLContext context;
+        private final SSLSocketFactory socketFactory;
+
+        Entry(SSLContext context) {
+            this.context = context;
+            this.socketFactory = context.getSocketFactory();
+        }
+    }
+
+    private static final class Key {
+
+        private final String sslMode;
+        private final String sslRootCertificate;
+
+        Key(String sslMode, String sslRootCertificate) {
+            this.sslMode = sslMode;
+            this.sslRootCertificate = sslRootCertificate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(sslMode, key.sslMode)
+                    && Objects.equals(sslRootCertificate, key.sslRootCertificate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sslMode, sslRootCertificate);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.except.ClickHouseException;
+
+import java.io.OutputStream;
+
+/**
+ * Request, which body is written by the caller after the request is sent,
+ * see {@link HttpConnector#openPost}.
+ */
+public interface StreamingRequest {
+
+    /**
+     * @return stream of the request body, writes go right into the request (LZ4 framed when the body is compressed)
+     */
+    OutputStream body();
+
+    /**
+     * Ends the body and waits for the response.
+     */
+    void finish() throws ClickHouseException;
+
+    /**
+     * Cancels the request without ending the body.
+     */
+    void abort();
+
+}
@@ -0,0 +1,155 @@
+package cc.blynk.clickhouse.http;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Response body of the {@link AsyncHttpConnector} that is read while it is still being received.
+ * Body parts are requested from the netty channel only when the reader consumed the previous ones,
+ * so at most {@link #MAX_BUFFERED_PARTS} parts are kept in memory and the channel stops reading
+ * from the socket when the reader is slow.
+ */
+final class StreamingResponseBody extends InputStream implements Subscriber<HttpResponseBodyPart> {
+
+    //a part is a netty chunk, 8 KB by default
+    static final int MAX_BUFFERED_PARTS = 16;
+
+    private static final byte[] END = new byte[0];
+
+    //bounded by the requested demand, not by capacity, so publisher never blocks on it
+    private final BlockingQueue<byte[]> parts = new LinkedBlockingQueue<>();
+
+    private volatile Subscription subscription;
+    private volatile Throwable error;
+    private volatile boolean closed;
+
+    private byte[] current = END;
+    private int position;
+    private int consumedParts;
+    private boolean eof;
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        this.subscription = s;
+        if (closed) {
+            s.cancel();
+        } else {
+            s.request(MAX_BUFFERED_PARTS);
+        }
+    }
+
+    @Override
+    public void onNext(HttpResponseBodyPart part) {
+        parts.add(part.getBodyPartBytes());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (error == null) {
+            error = t;
+        }
+        parts.add(END);
+    }
+
+    @Override
+    public void onComplete() {
+        parts.add(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        int read = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return current.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        parts.clear();
+        //wakes up the reader blocked in another thread
+        parts.add(END);
+        current = END;
+        //the rest of the response is not needed, the channel is closed by the publisher on cancel
+        Subscription s = this.subscription;
+        if (!eof && s != null) {
+            s.cancel();
+        }
+    }
+
+    private boolean ensureCurrent() throws IOException {
+        ensureOpen();
+        while (position == current.length) {
+            if (eof) {
+                return false;
+            }
+            byte[] next = take();
+            if (next == END) {
+                eof = true;
+                if (error != null) {
+                    throw new IOException("Error while reading response body. " + error.getMessage(), error);
+                }
+                return false;
+            }
+            current = next;
+            position = 0;
+            onPartConsumed();
+        }
+        return true;
+    }
+
+    //request parts in batches to not schedule a task on the event loop for every part
+    private void onPartConsumed() {
+        consumedParts++;
+        if (consumedParts >= MAX_BUFFERED_PARTS / 2) {
+            subscription.request(consumedParts);
+            consumedParts = 0;
+        }
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            return parts.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response body.");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
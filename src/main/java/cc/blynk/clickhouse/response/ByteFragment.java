@@ -1,5 +1,7 @@
 package cc.blynk.clickhouse.response;
 
+import cc.blynk.clickhouse.util.ClickHouseStringDictionary;
+
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -115,6 +117,9 @@ public class ByteFragment {
             if (isNull()) {
                 return null;
             }
+            if (!hasEscapes()) {
+                return ClickHouseStringDictionary.decode(buf, start, len);
+            }
             return new String(unescape(), StandardCharsets.UTF_8);
         } else {
             return asString();
@@ -134,6 +139,15 @@ public class ByteFragment {
         return res;
     }
 
+    boolean hasEscapes() {
+        for (int i = start; i < start + len; i++) {
+            if (buf[i] == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     ByteArrayInputStream asStream() {
         return new ByteArrayInputStream(buf, start, len);
     }
@@ -29,6 +29,17 @@ final class ByteFragmentUtils {
         }
     };
 
+    // the powers of ten exactly representable in double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // the 29 double mantissa bits dropped by the cast to float, a float midpoint when it is 1 followed by zeros
+    private static final long FLOAT_ROUNDING_BITS = (1L << 29) - 1;
+    private static final long FLOAT_MIDPOINT = 1L << 28;
+    private static final int MAX_LONG_DIGITS = 18;
+
     private ByteFragmentUtils() {
     }
 
@@ -157,6 +168,150 @@ final class ByteFragmentUtils {
         }
     }
 
+    static double parseDouble(ByteFragment s) throws NumberFormatException {
+        if (s.isNull()) {
+            return 0; //jdbc spec
+        }
+        return parseFloatingPoint(s, false);
+    }
+
+    static float parseFloat(ByteFragment s) throws NumberFormatException {
+        if (s.isNull()) {
+            return 0; //jdbc spec
+        }
+        return (float) parseFloatingPoint(s, true);
+    }
+
+    // The decimal mantissa and exponent are read from the bytes. When both the mantissa and the power of ten are
+    // exact doubles a single multiplication or division rounds correctly (Clinger's fast path), other values,
+    // like 17 digit doubles, are passed to the JDK parser. The cast of the correctly rounded double to float
+    // can round twice only when the double is a float midpoint, these go to the JDK too.
+    // "inf" and "nan" are ClickHouse's values.
+    private static double parseFloatingPoint(ByteFragment s, boolean single) {
+        byte[] buf = s.buf;
+        int i = s.start;
+        int end = s.start + s.len;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        if (end - i == 3) {
+            if (buf[i] == 'i' && buf[i + 1] == 'n' && buf[i + 2] == 'f') {
+                return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            }
+            if (buf[i] == 'n' && buf[i + 1] == 'a' && buf[i + 2] == 'n') {
+                return Double.NaN;
+            }
+        }
+
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean point = false;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit >= 0 && digit <= 9) {
+                anyDigit = true;
+                // the leading zeros are not significant
+                if (mantissa != 0 || digit != 0) {
+                    if (++mantissaDigits > MAX_LONG_DIGITS) {
+                        return parseWithJdk(s, single);
+                    }
+                    mantissa = mantissa * 10 + digit;
+                }
+                if (point) {
+                    exponent--;
+                }
+            } else if (buf[i] == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            return parseWithJdk(s, single);
+        }
+        if (i < end) {
+            if (buf[i] != 'e' && buf[i] != 'E' || ++i == end) {
+                return parseWithJdk(s, single);
+            }
+            boolean negativeExponent = buf[i] == '-';
+            if (buf[i] == '-' || buf[i] == '+') {
+                i++;
+            }
+            if (i == end) {
+                return parseWithJdk(s, single);
+            }
+            int explicitExponent = 0;
+            for (; i < end; i++) {
+                int digit = buf[i] - '0';
+                if (digit < 0 || digit > 9 || explicitExponent > 1000) {
+                    return parseWithJdk(s, single);
+                }
+                explicitExponent = explicitExponent * 10 + digit;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (mantissa > MAX_EXACT_MANTISSA || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            return parseWithJdk(s, single);
+        }
+        double value = (double) mantissa;
+        value = exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+        if (single && (Double.doubleToRawLongBits(value) & FLOAT_ROUNDING_BITS) == FLOAT_MIDPOINT) {
+            return parseWithJdk(s, single);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseWithJdk(ByteFragment s, boolean single) {
+        return single ? Float.parseFloat(s.asString()) : Double.parseDouble(s.asString());
+    }
+
+    // values up to 18 digits are read to an unscaled long, others, like wide Decimal128 values, go to the JDK
+    static BigDecimal parseBigDecimal(ByteFragment s) throws NumberFormatException {
+        if (s.isNull()) {
+            return null;
+        }
+        byte[] buf = s.buf;
+        int i = s.start;
+        int end = s.start + s.len;
+        boolean negative = false;
+        if (i < end && buf[i] == '-') {
+            negative = true;
+            i++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit >= 0 && digit <= 9) {
+                if (++digits > MAX_LONG_DIGITS) {
+                    return new BigDecimal(s.asString(true));
+                }
+                unscaled = unscaled * 10 + digit;
+                if (point) {
+                    scale++;
+                }
+            } else if (buf[i] == '.' && !point) {
+                point = true;
+            } else {
+                return new BigDecimal(s.asString(true));
+            }
+        }
+        if (digits == 0) {
+            return new BigDecimal(s.asString(true));
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
     static Object parseArray(ByteFragment value, Class<?> elementClass) {
         return parseArray(value, elementClass, false, null);
     }
@@ -240,7 +395,7 @@ final class ByteFragmentUtils {
                     if (fragment.isNull()) {
                         bigDecimalValue = null;
                     } else {
-                        bigDecimalValue = new BigDecimal(fragment.asString(true));
+                        bigDecimalValue = parseBigDecimal(fragment);
                     }
                     java.lang.reflect.Array.set(array, index++, bigDecimalValue);
                 } else if (elementClass == Float.class) {
@@ -250,7 +405,7 @@ final class ByteFragmentUtils {
                     } else if (fragment.isNaN()) {
                         floatValue = Float.NaN;
                     } else {
-                        floatValue = Float.parseFloat(fragment.asString());
+                        floatValue = parseFloat(fragment);
                     }
                     java.lang.reflect.Array.set(array, index++, floatValue);
                 } else if (elementClass == Double.class) {
@@ -260,7 +415,7 @@ final class ByteFragmentUtils {
                     } else if (fragment.isNaN()) {
                         doubleValue = Double.NaN;
                     } else {
-                        doubleValue = Double.parseDouble(fragment.asString());
+                        doubleValue = parseDouble(fragment);
                     }
                     java.lang.reflect.Array.set(array, index++, doubleValue);
                 } else if (elementClass == Date.class) {
@@ -0,0 +1,607 @@
+package cc.blynk.clickhouse.response;
+
+import cc.blynk.clickhouse.ClickHouseArray;
+import cc.blynk.clickhouse.ClickHouseStatement;
+import cc.blynk.clickhouse.domain.ClickHouseDataType;
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseBlockReader;
+import cc.blynk.clickhouse.util.ClickHouseNativeBlock;
+import cc.blynk.clickhouse.util.ClickHouseNativeColumn;
+import cc.blynk.clickhouse.util.ClickHouseStringDictionary;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Forward only result set over the blocks of {@link ClickHouseBlockReader},
+ * the values are taken from the column vectors of the current block without parsing.
+ * It is used for the queries with <code>FORMAT Native</code> and <code>FORMAT RowBinaryWithNamesAndTypes</code>.
+ */
+public class ClickHouseNativeResultSet extends AbstractResultSet {
+
+    private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+    private final ClickHouseBlockReader reader;
+    private final ClickHouseStatement statement;
+    private final ClickHouseProperties properties;
+    private final String db;
+    private final String table;
+    private final TimeZone dateTimeTimeZone;
+    private final TimeZone dateTimeZone;
+    private final SimpleDateFormat dateTimeFormat = new SimpleDateFormat(DATE_TIME_PATTERN);
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+
+    private final ClickHouseColumnInfo[] columns;
+    private final ColumnLabelIndex labelIndex;
+    // getObject() decoders of the columns, resolved from the header types once
+    private final FieldDecoder[] decoders;
+    // repeated values of the String columns, null when disabled or for the other columns
+    private final ClickHouseStringDictionary[] dictionaries;
+
+    private ClickHouseNativeBlock block;
+    // row in the current block
+    private int blockRow = -1;
+    // 1-based
+    private int lastReadColumn;
+    private int rowNumber;
+    private int maxRows;
+    private boolean closed;
+
+    public ClickHouseNativeResultSet(ClickHouseBlockReader reader,
+                                     String db,
+                                     String table,
+                                     ClickHouseStatement statement,
+                                     TimeZone timeZone,
+                                     ClickHouseProperties properties) throws IOException {
+        this.reader = reader;
+        this.db = db;
+        this.table = table;
+        this.statement = statement;
+        this.properties = properties;
+        this.dateTimeTimeZone = timeZone;
+        this.dateTimeZone = properties.isUseServerTimeZoneForDates()
+            ? timeZone
+            : TimeZone.getDefault();
+        dateTimeFormat.setTimeZone(dateTimeTimeZone);
+        dateFormat.setTimeZone(dateTimeZone);
+        // the first block, even the empty one, has the names and the types of the columns
+        this.block = reader.readBlock();
+        int columnCount = block == null ? 0 : block.getColumnCount();
+        this.columns = new ClickHouseColumnInfo[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            ClickHouseNativeColumn column = block.getColumn(i);
+            columns[i] = ClickHouseColumnInfo.parse(column.getType(), column.getName());
+        }
+        this.labelIndex = new ColumnLabelIndex(columns);
+        this.decoders = new FieldDecoder[columnCount];
+        this.dictionaries = new ClickHouseStringDictionary[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            decoders[i] = FieldDecoder.of(columns[i].getClickHouseDataType(), this,
+                    columnIndex -> getColumn(columnIndex).getUUID(blockRow));
+            if (properties.getStringDictionarySize() > 0
+                    && columns[i].getClickHouseDataType() == ClickHouseDataType.String) {
+                dictionaries[i] = new ClickHouseStringDictionary(properties.getStringDictionarySize());
+            }
+        }
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (block == null || (maxRows != 0 && rowNumber >= maxRows)) {
+            endOfStream();
+            return false;
+        }
+        try {
+            while (blockRow + 1 >= block.getRows()) {
+                block = reader.readBlock();
+                blockRow = -1;
+                if (block == null) {
+                    endOfStream();
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        blockRow++;
+        rowNumber++;
+        return true;
+    }
+
+    private void endOfStream() throws SQLException {
+        block = null;
+        close();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() {
+        return new ClickHouseResultSetMetaData(Arrays.asList(columns), db, table);
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        int columnIndex = labelIndex.columnNumber(columnLabel);
+        if (columnIndex != 0) {
+            return columnIndex;
+        }
+        throw new SQLException("no column " + columnLabel + " in columns list " + Arrays.toString(columnNames()));
+    }
+
+    /////////////////////////////////////////////////////////
+
+    @Override
+    public boolean wasNull() {
+        if (lastReadColumn == 0) {
+            throw new IllegalStateException("You should get something before check nullability");
+        }
+        return block.getColumn(lastReadColumn - 1).isNull(blockRow);
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        ClickHouseNativeColumn column = getColumn(columnIndex);
+        if (column.isNull(blockRow)) {
+            return null;
+        }
+        switch (columns[columnIndex - 1].getClickHouseDataType()) {
+            case Date:
+                return formatDate(column.getLong(blockRow));
+            case DateTime:
+                return formatDateTime(column.getLong(blockRow), columns[columnIndex - 1].getTimeZone());
+            case Array:
+                return formatArray(columnIndex);
+            default:
+                return column.getString(blockRow, dictionaries[columnIndex - 1]);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        return getColumn(columnIndex).getLong(blockRow) != 0;
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        return (byte) getColumn(columnIndex).getLong(blockRow);
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        return (short) getColumn(columnIndex).getLong(blockRow);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return (int) getColumn(columnIndex).getLong(blockRow);
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        return getColumn(columnIndex).getLong(blockRow);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        return (float) getColumn(columnIndex).getDouble(blockRow);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        return getColumn(columnIndex).getDouble(blockRow);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        return getColumn(columnIndex).getBigDecimal(blockRow);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        BigDecimal value = getBigDecimal(columnIndex);
+        return value == null ? null : value.setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        ClickHouseNativeColumn column = getColumn(columnIndex);
+        ClickHouseDataType type = columns[columnIndex - 1].getClickHouseDataType();
+        if (type == ClickHouseDataType.String || type == ClickHouseDataType.FixedString) {
+            return column.getBytes(blockRow);
+        }
+        String value = getString(columnIndex);
+        return value == null ? null : value.getBytes(UTF_8);
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        return getDate(columnIndex, dateTimeZone);
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        return getDate(columnIndex, cal == null ? dateTimeZone : cal.getTimeZone());
+    }
+
+    private Date getDate(int columnIndex, TimeZone timeZone) throws SQLException {
+        ClickHouseNativeColumn column = getColumn(columnIndex);
+        if (column.isNull(blockRow)) {
+            return null;
+        }
+        long days;
+        switch (columns[columnIndex - 1].getClickHouseDataType()) {
+            case Date:
+                days = column.getLong(blockRow);
+                break;
+            case DateTime:
+                days = Instant.ofEpochSecond(column.getLong(blockRow))
+                        .atZone(dateTimeZone(columnIndex).toZoneId())
+                        .toLocalDate()
+                        .toEpochDay();
+                break;
+            default:
+                throw new SQLException("Column " + columns[columnIndex - 1].getColumnName() + " is not a date");
+        }
+        return new Date(startOfDay(days, timeZone));
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        return getTimestamp(columnIndex, (Calendar) null);
+    }
+
+    /**
+     * DateTime values are exact instants in Native format, the calendar is used for Date values only.
+     */
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        ClickHouseNativeColumn column = getColumn(columnIndex);
+        if (column.isNull(blockRow)) {
+            return null;
+        }
+        switch (columns[columnIndex - 1].getClickHouseDataType()) {
+            case DateTime:
+                return new Timestamp(column.getLong(blockRow) * 1000);
+            case Date:
+                TimeZone timeZone = cal == null ? dateTimeZone : cal.getTimeZone();
+                return new Timestamp(startOfDay(column.getLong(blockRow), timeZone));
+            default:
+                throw new SQLException("Column " + columns[columnIndex - 1].getColumnName() + " is not a date");
+        }
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        Timestamp ts = getTimestamp(columnIndex);
+        if (ts == null) {
+            return null;
+        }
+        return new Time(ts.getTime());
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        ClickHouseColumnInfo info = columns[columnIndex - 1];
+        if (info.getClickHouseDataType() != ClickHouseDataType.Array) {
+            throw new SQLException("Column not an array");
+        }
+        if (info.getArrayLevel() > 1) {
+            throw new SQLException("Nested arrays are not supported");
+        }
+        ClickHouseNativeColumn column = getColumn(columnIndex);
+        ClickHouseNativeColumn elements = column.getElements();
+        int start = column.getArrayOffsets()[blockRow];
+        int length = column.getArrayOffsets()[blockRow + 1] - start;
+
+        ClickHouseDataType baseType = info.getArrayBaseType();
+        Class<?> elementClass = baseType.getJavaClass();
+        boolean useObjects = properties.isUseObjectsInArrays();
+        Object array = java.lang.reflect.Array.newInstance(
+                useObjects ? elementClass : primitive(elementClass), length);
+        for (int i = 0; i < length; i++) {
+            int row = start + i;
+            Object value;
+            if (elements.isNull(row)) {
+                value = useObjects || !primitive(elementClass).isPrimitive() ? null : defaultValue(elementClass);
+            } else if (elementClass == Integer.class) {
+                value = (int) elements.getLong(row);
+            } else if (elementClass == Long.class) {
+                value = elements.getLong(row);
+            } else if (elementClass == Float.class) {
+                value = (float) elements.getDouble(row);
+            } else if (elementClass == Double.class) {
+                value = elements.getDouble(row);
+            } else if (elementClass == BigInteger.class) {
+                value = new BigInteger(elements.getString(row));
+            } else if (elementClass == BigDecimal.class) {
+                value = elements.getBigDecimal(row);
+            } else if (elementClass == Date.class) {
+                value = new Date(startOfDay(elements.getLong(row), dateTimeZone));
+            } else if (elementClass == Timestamp.class) {
+                value = new Timestamp(elements.getLong(row) * 1000);
+            } else if (elementClass == UUID.class) {
+                value = elements.getUUID(row);
+            } else {
+                value = elements.getString(row);
+            }
+            java.lang.reflect.Array.set(array, i, value);
+        }
+        return new ClickHouseArray(baseType, array);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        if (getColumn(columnIndex).isNull(blockRow)) {
+            return null;
+        }
+        return decoders[columnIndex - 1].decode(columnIndex);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        if (type.equals(UUID.class)) {
+            return (T) getColumn(columnIndex).getUUID(blockRow);
+        }
+        throw new SQLException("Not implemented for type=" + type.toString());
+    }
+
+    /////////////////////////////////////////////////////////
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel), scale);
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return getBytes(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        return getDate(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        return getTimestamp(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        return getTime(findColumn(columnLabel));
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        return getArray(findColumn(columnLabel));
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        return getObject(findColumn(columnLabel), type);
+    }
+
+    /////////////////////////////////////////////////////////
+
+    @Override
+    public Statement getStatement() {
+        return statement;
+    }
+
+    @Override
+    public int getType() {
+        return TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public int getRow() {
+        return rowNumber;
+    }
+
+    @Override
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) {
+        // ignore perfomance hint
+    }
+
+    @Override
+    public void setFetchSize(int rows) {
+        // ignore perfomance hint
+    }
+
+    private ClickHouseNativeColumn getColumn(int columnIndex) throws SQLException {
+        if (block == null || blockRow < 0) {
+            throw new SQLException("No current row");
+        }
+        lastReadColumn = columnIndex;
+        return block.getColumn(columnIndex - 1);
+    }
+
+    private TimeZone dateTimeZone(int columnIndex) {
+        TimeZone timeZone = columns[columnIndex - 1].getTimeZone();
+        return timeZone != null ? timeZone : dateTimeTimeZone;
+    }
+
+    private String formatDate(long days) {
+        return dateFormat.format(new Date(startOfDay(days, dateTimeZone)));
+    }
+
+    private String formatDateTime(long seconds, TimeZone timeZone) {
+        dateTimeFormat.setTimeZone(timeZone != null ? timeZone : dateTimeTimeZone);
+        return dateTimeFormat.format(new java.util.Date(seconds * 1000));
+    }
+
+    // the same text as ClickHouse writes in TabSeparated format
+    private String formatArray(int columnIndex) throws SQLException {
+        Object array = getArray(columnIndex).getArray();
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < java.lang.reflect.Array.getLength(array); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Object value = java.lang.reflect.Array.get(array, i);
+            if (value == null) {
+                sb.append("NULL");
+            } else if (value instanceof Timestamp) {
+                sb.append('\'').append(formatDateTime(((Timestamp) value).getTime() / 1000, null)).append('\'');
+            } else if (value instanceof java.util.Date) {
+                sb.append('\'').append(dateFormat.format(value)).append('\'');
+            } else if (value instanceof String || value instanceof UUID) {
+                sb.append('\'').append(value.toString().replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static long startOfDay(long days, TimeZone timeZone) {
+        return LocalDate.ofEpochDay(days).atStartOfDay(timeZone.toZoneId()).toInstant().toEpochMilli();
+    }
+
+    private static Class<?> primitive(Class<?> type) {
+        if (type == Integer.class) {
+            return int.class;
+        } else if (type == Long.class) {
+            return long.class;
+        } else if (type == Float.class) {
+            return float.class;
+        } else if (type == Double.class) {
+            return double.class;
+        }
+        return type;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == Integer.class) {
+            return 0;
+        } else if (type == Long.class) {
+            return 0L;
+        } else if (type == Float.class) {
+            return 0.0F;
+        }
+        return 0.0;
+    }
+
+    private String[] columnNames() {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].getColumnName();
+        }
+        return names;
+    }
+
+    @Override
+    public String toString() {
+        return "ClickHouseNativeResultSet{" +
+                "db='" + db + '\'' +
+                ", table='" + table + '\'' +
+                ", columns=" + Arrays.toString(columnNames()) +
+                ", maxRows=" + maxRows +
+                ", rowNumber=" + rowNumber +
+                ", statement=" + statement +
+                '}';
+    }
+}
@@ -5,12 +5,14 @@ import cc.blynk.clickhouse.ClickHouseStatement;
 import cc.blynk.clickhouse.domain.ClickHouseDataType;
 import cc.blynk.clickhouse.except.ClickHouseExceptionSpecifier;
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseDateTimeCodec;
+import cc.blynk.clickhouse.util.ClickHouseStringDictionary;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.sql.Array;
 import java.sql.Date;
 import java.sql.ResultSetMetaData;
@@ -18,7 +20,6 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
-import java.sql.Types;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -34,6 +35,8 @@ public class ClickHouseResultSet extends AbstractResultSet {
 
     private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
     private static final String DATE_PATTERN = "yyyy-MM-dd";
+    private static final byte[] ZERO_DATE_TIME = "0000-00-00 00:00:00".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZERO_DATE = "0000-00-00".getBytes(StandardCharsets.US_ASCII);
 
     private final static long[] EMPTY_LONG_ARRAY = {};
 
@@ -48,10 +51,19 @@ public class ClickHouseResultSet extends AbstractResultSet {
     private final String table;
 
     private final ClickHouseColumnInfo[] columns;
+    private final ColumnLabelIndex labelIndex;
+    // getObject() decoders of the columns, resolved from the header types once
+    private final FieldDecoder[] decoders;
+    // repeated values of the string columns, null when disabled or for the other columns
+    private final ClickHouseStringDictionary[] dictionaries;
 
     private int maxRows;
 
-    // current line
+    // current line, its fields are materialized by the getters only
+    private ByteFragment line;
+    // start and end of every field of the current line in its buffer, reused by all the rows
+    private final int[] fieldBounds;
+    // fields of the current line, when they are materialized or replayed by the scrollable result set
     protected ByteFragment[] values;
     // 1-based
     private int lastReadColumn;
@@ -116,6 +128,19 @@ public class ClickHouseResultSet extends AbstractResultSet {
         for (int i = 0; i < cols.length; i++) {
             columns[i] = ClickHouseColumnInfo.parse(types[i], cols[i]);
         }
+        this.fieldBounds = new int[columns.length * 2];
+        this.labelIndex = new ColumnLabelIndex(columns);
+        this.decoders = new FieldDecoder[columns.length];
+        this.dictionaries = new ClickHouseStringDictionary[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            ClickHouseDataType type = columns[i].getClickHouseDataType();
+            decoders[i] = FieldDecoder.of(type, this, columnIndex -> getObject(columnIndex, UUID.class));
+            if (properties.getStringDictionarySize() > 0 && (type == ClickHouseDataType.String
+                    || type == ClickHouseDataType.FixedString
+                    || type == ClickHouseDataType.Enum8 || type == ClickHouseDataType.Enum16)) {
+                dictionaries[i] = new ClickHouseStringDictionary(properties.getStringDictionarySize());
+            }
+        }
     }
 
     private static String[] toStringArray(ByteFragment headerFragment) {
@@ -137,6 +162,8 @@ public class ClickHouseResultSet extends AbstractResultSet {
                         || (maxRows != 0 && rowNumber >= maxRows)
                         || (usesWithTotals && nextLine.length() == 0)) {
                     if (usesWithTotals) {
+                        //more reads after the current line
+                        detachLine();
                         if (onTheSeparatorRow()) {
                             totalLine = bis.next();
                             endOfStream();
@@ -161,8 +188,8 @@ public class ClickHouseResultSet extends AbstractResultSet {
     @Override
     public boolean next() throws SQLException {
         if (hasNext()) {
-            values = nextLine.split((byte) 0x09);
-            checkValues(columns, values, nextLine);
+            splitLine(nextLine);
+            values = null;
             nextLine = null;
             rowNumber += 1;
             return true;
@@ -170,12 +197,50 @@ public class ClickHouseResultSet extends AbstractResultSet {
         return false;
     }
 
-    private void checkValues(ClickHouseColumnInfo[] columns,
-                             ByteFragment[] values,
-                             ByteFragment fragment) throws SQLException {
-        if (columns.length != values.length) {
+    //only the tab positions are recorded, the line is not copied
+    private void splitLine(ByteFragment fragment) throws SQLException {
+        byte[] buf = fragment.buf;
+        int[] bounds = fieldBounds;
+        int lastField = columns.length - 1;
+        int fieldStart = fragment.start;
+        int end = fragment.start + fragment.len;
+        for (int field = 0; field < lastField; field++) {
+            int tab = bis.indexOf(buf, (byte) 0x09, fieldStart, end);
+            if (tab < 0) {
+                throw ClickHouseExceptionSpecifier.specify(fragment.asString());
+            }
+            bounds[field * 2] = fieldStart;
+            bounds[field * 2 + 1] = tab;
+            fieldStart = tab + 1;
+        }
+        if (bis.indexOf(buf, (byte) 0x09, fieldStart, end) >= 0) {
             throw ClickHouseExceptionSpecifier.specify(fragment.asString());
         }
+        bounds[lastField * 2] = fieldStart;
+        bounds[lastField * 2 + 1] = end;
+        line = fragment;
+    }
+
+    // the splitter reuses its buffer, the current line is copied when it has to outlive two more reads
+    private void detachLine() {
+        if (line == null) {
+            return;
+        }
+        int shift = line.start;
+        for (int i = 0; i < fieldBounds.length; i++) {
+            fieldBounds[i] -= shift;
+        }
+        line = new ByteFragment(Arrays.copyOfRange(line.buf, shift, shift + line.len), 0, line.len);
+        values = null;
+    }
+
+    /**
+     * @return fields of the current line over a copy of it, unlike {@link #getValues()} they stay valid
+     * after the following rows are read
+     */
+    protected ByteFragment[] copyValues() {
+        detachLine();
+        return getValues();
     }
 
     @Override
@@ -362,7 +427,12 @@ public class ClickHouseResultSet extends AbstractResultSet {
 
     @Override
     public String getString(int colNum) {
-        return toString(getValue(colNum));
+        ByteFragment value = getValue(colNum);
+        ClickHouseStringDictionary dictionary = dictionaries[colNum - 1];
+        if (dictionary == null || value.isNull() || value.hasEscapes()) {
+            return toString(value);
+        }
+        return dictionary.get(value.buf, value.start, value.len);
     }
 
     @Override
@@ -419,7 +489,7 @@ public class ClickHouseResultSet extends AbstractResultSet {
 
     @Override
     public float getFloat(int columnIndex) throws SQLException {
-        return (float) getDouble(columnIndex);
+        return ByteFragmentUtils.parseFloat(getValue(columnIndex));
     }
 
     private boolean onTheSeparatorRow() throws IOException {
@@ -439,15 +509,7 @@ public class ClickHouseResultSet extends AbstractResultSet {
     @Override
     public Date getDate(int columnIndex) throws SQLException {
         // date is passed as a string from clickhouse
-        ByteFragment value = getValue(columnIndex);
-        if (value.isNull() || value.asString().equals("0000-00-00")) {
-            return null;
-        }
-        try {
-            return new Date(dateFormat.parse(value.asString()).getTime());
-        } catch (ParseException e) {
-            return null;
-        }
+        return toDate(getValue(columnIndex), dateTimeZone);
     }
 
     @Override
@@ -456,17 +518,7 @@ public class ClickHouseResultSet extends AbstractResultSet {
             return getDate(columnIndex);
         }
         // date is passed as a string from clickhouse
-        ByteFragment value = getValue(columnIndex);
-        if (value.isNull() || value.asString().equals("0000-00-00")) {
-            return null;
-        }
-        try {
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(DATE_PATTERN);
-            simpleDateFormat.setTimeZone(cal.getTimeZone());
-            return new Date(simpleDateFormat.parse(value.asString()).getTime());
-        } catch (ParseException e) {
-            return null;
-        }
+        return toDate(getValue(columnIndex), cal.getTimeZone());
     }
 
     @Override
@@ -476,18 +528,7 @@ public class ClickHouseResultSet extends AbstractResultSet {
 
     @Override
     public double getDouble(int columnIndex) throws SQLException {
-        String string = getString(columnIndex);
-        if (string == null) {
-            return 0;
-        } else if (string.equals("nan")) {
-            return Double.NaN;
-        } else if (string.equals("+inf") || string.equals("inf")) {
-            return Double.POSITIVE_INFINITY;
-        } else if (string.equals("-inf")) {
-            return Double.NEGATIVE_INFINITY;
-        } else {
-            return Double.parseDouble(string);
-        }
+        return ByteFragmentUtils.parseDouble(getValue(columnIndex));
     }
 
     @Override
@@ -540,46 +581,9 @@ public class ClickHouseResultSet extends AbstractResultSet {
             if (getValue(columnIndex).isNull()) {
                 return null;
             }
-            ClickHouseDataType chType = columns[columnIndex - 1].getClickHouseDataType();
-            int type = chType.getSqlType();
-            switch (type) {
-                case Types.BIGINT:
-                    if (!chType.isSigned()) {
-                        String stringVal = getString(columnIndex);
-                        return new BigInteger(stringVal);
-                    }
-                    return getLong(columnIndex);
-                case Types.INTEGER:
-                    if (!chType.isSigned()) {
-                        return getLong(columnIndex);
-                    }
-                    return getInt(columnIndex);
-                case Types.TINYINT:
-                case Types.SMALLINT:
-                    return getInt(columnIndex);
-                case Types.VARCHAR:
-                    return getString(columnIndex);
-                case Types.FLOAT:
-                    return getFloat(columnIndex);
-                case Types.DOUBLE:
-                    return getDouble(columnIndex);
-                case Types.DATE:
-                    return getDate(columnIndex);
-                case Types.TIMESTAMP:
-                    return getTimestamp(columnIndex);
-                case Types.BLOB:
-                    return getString(columnIndex);
-                case Types.ARRAY:
-                    return getArray(columnIndex);
-                case Types.DECIMAL:
-                    return getBigDecimal(columnIndex);
-            }
-            if (chType == ClickHouseDataType.UUID) {
-                return getObject(columnIndex, UUID.class);
-            }
-            return getString(columnIndex);
+            return decoders[columnIndex - 1].decode(columnIndex);
         } catch (Exception e) {
-            throw new RuntimeException("Parse exception: " + values[columnIndex - 1].toString(), e);
+            throw new RuntimeException("Parse exception: " + getValue(columnIndex).toString(), e);
         }
     }
 
@@ -605,17 +609,39 @@ public class ClickHouseResultSet extends AbstractResultSet {
     }
 
     private long toTimestamp(ByteFragment value, TimeZone timeZone) {
-        if (value.isNull() || value.asString().equals("0000-00-00 00:00:00")) {
+        if (value.isNull() || isZero(value, ZERO_DATE_TIME)) {
             return -1;
         }
         try {
-            dateTimeFormat.setTimeZone(timeZone);
-            return dateTimeFormat.parse(value.asString()).getTime();
+            return ClickHouseDateTimeCodec.of(timeZone).parseDateTime(value.buf, value.start, value.len);
         } catch (ParseException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static Date toDate(ByteFragment value, TimeZone timeZone) {
+        if (value.isNull() || isZero(value, ZERO_DATE)) {
+            return null;
+        }
+        try {
+            return new Date(ClickHouseDateTimeCodec.of(timeZone).parseDate(value.buf, value.start, value.len));
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean isZero(ByteFragment value, byte[] zero) {
+        if (value.len != zero.length) {
+            return false;
+        }
+        for (int i = 0; i < zero.length; i++) {
+            if (value.buf[value.start + i] != zero[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     //////
 
     @Override
@@ -644,17 +670,20 @@ public class ClickHouseResultSet extends AbstractResultSet {
 
     // 1-based index in column list
     private int asColNum(String column) {
-        for (int i = 0; i < columns.length; i++) {
-            if (column.equals(columns[i].getColumnName())) {
-                return i + 1;
-            }
+        int colNum = labelIndex.columnNumber(column);
+        if (colNum == 0) {
+            throw new RuntimeException("no column " + column + " in columns list " + getColumnNames());
         }
-        throw new RuntimeException("no column " + column + " in columns list " + getColumnNames());
+        return colNum;
     }
 
     private ByteFragment getValue(int colNum) {
         lastReadColumn = colNum;
-        return values[colNum - 1];
+        if (values != null) {
+            return values[colNum - 1];
+        }
+        int start = fieldBounds[(colNum - 1) * 2];
+        return new ByteFragment(line.buf, start, fieldBounds[(colNum - 1) * 2 + 1] - start);
     }
 
     public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
@@ -670,6 +699,13 @@ public class ClickHouseResultSet extends AbstractResultSet {
     }
 
     public ByteFragment[] getValues() {
+        if (values == null && line != null) {
+            ByteFragment[] fields = new ByteFragment[columns.length];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new ByteFragment(line.buf, fieldBounds[i * 2], fieldBounds[i * 2 + 1] - fieldBounds[i * 2]);
+            }
+            values = fields;
+        }
         return values;
     }
 
@@ -680,11 +716,7 @@ public class ClickHouseResultSet extends AbstractResultSet {
 
     @Override
     public BigDecimal getBigDecimal(int columnIndex) {
-        String string = getString(columnIndex);
-        if (string == null) {
-            return null;
-        }
-        return new BigDecimal(string);
+        return ByteFragmentUtils.parseBigDecimal(getValue(columnIndex));
     }
 
 
@@ -700,11 +732,10 @@ public class ClickHouseResultSet extends AbstractResultSet {
 
     @Override
     public BigDecimal getBigDecimal(int columnIndex, int scale) {
-        String string = getString(columnIndex);
-        if (string == null) {
+        BigDecimal result = ByteFragmentUtils.parseBigDecimal(getValue(columnIndex));
+        if (result == null) {
             return null;
         }
-        BigDecimal result = new BigDecimal(string);
         return result.setScale(scale, RoundingMode.HALF_UP);
     }
 
@@ -729,7 +760,7 @@ public class ClickHouseResultSet extends AbstractResultSet {
                 ", table='" + table + '\'' +
             ", columns=" + getColumnNames() +
                 ", maxRows=" + maxRows +
-                ", values=" + Arrays.toString(values) +
+                ", values=" + Arrays.toString(getValues()) +
                 ", lastReadColumn=" + lastReadColumn +
                 ", nextLine=" + nextLine +
                 ", rowNumber=" + rowNumber +
@@ -744,5 +775,4 @@ public class ClickHouseResultSet extends AbstractResultSet {
         }
         return sb.substring(0, sb.length() - 1);
     }
-
 }
@@ -2,18 +2,27 @@ package cc.blynk.clickhouse.response;
 
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.List;
 
 public class ClickHouseResultSetMetaData implements ResultSetMetaData {
 
-    private final ClickHouseResultSet resultSet;
+    private final List<ClickHouseColumnInfo> columns;
+    private final String db;
+    private final String table;
 
     ClickHouseResultSetMetaData(ClickHouseResultSet resultSet) {
-        this.resultSet = resultSet;
+        this(resultSet.getColumns(), resultSet.getDb(), resultSet.getTable());
+    }
+
+    ClickHouseResultSetMetaData(List<ClickHouseColumnInfo> columns, String db, String table) {
+        this.columns = columns;
+        this.db = db;
+        this.table = table;
     }
 
     @Override
     public int getColumnCount() throws SQLException {
-        return resultSet.getColumns().size();
+        return columns.size();
     }
 
     @Override
@@ -80,12 +89,12 @@ public class ClickHouseResultSetMetaData implements ResultSetMetaData {
 
     @Override
     public String getTableName(int column) throws SQLException {
-        return resultSet.getTable();
+        return table;
     }
 
     @Override
     public String getCatalogName(int column) throws SQLException {
-        return resultSet.getDb();
+        return db;
     }
 
     @Override
@@ -133,7 +142,7 @@ public class ClickHouseResultSetMetaData implements ResultSetMetaData {
     }
 
     private ClickHouseColumnInfo getCol(int column) {
-        return resultSet.getColumns().get(column - 1);
+        return columns.get(column - 1);
     }
 
 }
@@ -44,7 +44,7 @@ public class ClickHouseScrollableResultSet extends ClickHouseResultSet {
         }
         if (hasNext()) {
             super.next();
-            lines.add(values);
+            lines.add(copyValues());
             return true;
         } else {
             rowNumber += 1;
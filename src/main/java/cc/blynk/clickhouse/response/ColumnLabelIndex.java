@@ -0,0 +1,28 @@
+package cc.blynk.clickhouse.response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 1-based column numbers by column label, built once from the header of a result set.
+ * Like the linear scan it replaces, the first of the columns with the same label wins.
+ */
+final class ColumnLabelIndex {
+
+    private final Map<String, Integer> columnNumbers;
+
+    ColumnLabelIndex(ClickHouseColumnInfo[] columns) {
+        columnNumbers = new HashMap<>(columns.length * 2);
+        for (int i = 0; i < columns.length; i++) {
+            columnNumbers.putIfAbsent(columns[i].getColumnName(), i + 1);
+        }
+    }
+
+    /**
+     * @return the column number or 0 when there is no such column
+     */
+    int columnNumber(String label) {
+        Integer number = columnNumbers.get(label);
+        return number == null ? 0 : number;
+    }
+}
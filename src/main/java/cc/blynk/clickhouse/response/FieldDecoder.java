@@ -0,0 +1,57 @@
+package cc.blynk.clickhouse.response;
+
+import cc.blynk.clickhouse.domain.ClickHouseDataType;
+
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * getObject() decoder of a result set column, resolved from the column type once,
+ * so the type is not switched over for every value.
+ */
+@FunctionalInterface
+interface FieldDecoder {
+
+    Object decode(int columnIndex) throws SQLException;
+
+    /**
+     * @param uuid decoder of UUID columns, as every result set keeps them in its own way
+     */
+    static FieldDecoder of(ClickHouseDataType chType, ResultSet resultSet, FieldDecoder uuid) {
+        switch (chType.getSqlType()) {
+            case Types.BIGINT:
+                if (!chType.isSigned()) {
+                    return columnIndex -> new BigInteger(resultSet.getString(columnIndex));
+                }
+                return resultSet::getLong;
+            case Types.INTEGER:
+                if (!chType.isSigned()) {
+                    return resultSet::getLong;
+                }
+                return resultSet::getInt;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return resultSet::getInt;
+            case Types.FLOAT:
+                return resultSet::getFloat;
+            case Types.DOUBLE:
+                return resultSet::getDouble;
+            case Types.DATE:
+                return resultSet::getDate;
+            case Types.TIMESTAMP:
+                return resultSet::getTimestamp;
+            case Types.ARRAY:
+                return resultSet::getArray;
+            case Types.DECIMAL:
+                return resultSet::getBigDecimal;
+            default:
+                break;
+        }
+        if (chType == ClickHouseDataType.UUID) {
+            return uuid;
+        }
+        return resultSet::getString;
+    }
+}
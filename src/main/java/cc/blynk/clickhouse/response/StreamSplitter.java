@@ -2,26 +2,41 @@ package cc.blynk.clickhouse.response;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 
 /**
  * We have a stream of bytes and a separator as an input.
  * We split the stream by the separator and pass the byte arrays to output.
+ * <p>
+ * The fragments point into the read buffer, which is reused: a fragment stays valid until the second
+ * {@link #next()} after the one that returned it, so the current line survives a look ahead.
+ * When the buffer is full the unsent bytes are moved to a spare buffer, the two buffers take turns
+ * and a new one is allocated only when a single line doesn't fit.
  */
 public class StreamSplitter {
 
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
     // initial parameters
     private final InputStream delegate;
     private final byte sep;
 
     private byte[] buf;
+    // little endian views of the buffers, the separator is searched 8 bytes at a time
+    private ByteBuffer words;
+    // buffer the unsent bytes are moved to when buf is full, holds the previously returned fragment until then
+    private byte[] spare;
+    private ByteBuffer spareWords;
     // position until which the buf is filled with values read from delegate
     private int posRead;
     // position until which the values from buf already passed out through next()
     private int posNext;
 
-    private int markedRead;
-    private int markedNext;
+    // position the splitter returns to on reset(), the bytes after it are kept until then, -1 when not marked
+    private int markedNext = -1;
 
     private boolean readOnce;
 
@@ -31,18 +46,33 @@ public class StreamSplitter {
     StreamSplitter(ByteFragment bf, byte sep) {
         this.delegate = bf.asStream();
         this.sep = sep;
-        buf = new byte[bf.getLen()];
+        setBuffer(new byte[bf.getLen()]);
         readOnce = true;
     }
 
     StreamSplitter(InputStream delegate, byte sep, int bufLength) {
         this.delegate = delegate;
         this.sep = sep;
-        buf = new byte[bufLength];
+        setBuffer(new byte[bufLength]);
     }
 
-    private static int indexOf(byte[] array, byte target, int start, int end) {
-        for (int i = start; i < end; i++) {
+    /**
+     * Finds the target byte comparing 8 bytes at a time: a byte of <code>word ^ pattern</code> is zero where
+     * the target is, <code>(x - 0x01..01) &amp; ~x &amp; 0x80..80</code> sets the high bit of the lowest such byte.
+     *
+     * @param words little endian view of the array
+     */
+    static int indexOf(ByteBuffer words, byte[] array, byte target, int start, int end) {
+        long pattern = (target & 0xFFL) * ONES;
+        int i = start;
+        for (; i <= end - Long.BYTES; i += Long.BYTES) {
+            long word = words.getLong(i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < end; i++) {
             if (array[i] == target) {
                 return i;
             }
@@ -50,6 +80,14 @@ public class StreamSplitter {
         return -1;
     }
 
+    /**
+     * Same as {@link #indexOf(ByteBuffer, byte[], byte, int, int)} for the fragments of this splitter.
+     */
+    int indexOf(byte[] array, byte target, int start, int end) {
+        ByteBuffer view = array == buf ? words : array == spare ? spareWords : wordsOf(array);
+        return indexOf(view, array, target, start, end);
+    }
+
     public ByteFragment next() throws IOException {
         // if sent out all that have read
         if (posNext >= posRead) {
@@ -60,9 +98,11 @@ public class StreamSplitter {
                 return null;
             }
         }
-        // looking for the separator
+        // looking for the separator, the bytes already searched are skipped after every read
+        int searched = 0;
         int positionSep;
-        while ((positionSep = indexOf(buf, sep, posNext, posRead)) < posNext) {
+        while ((positionSep = indexOf(words, buf, sep, posNext + searched, posRead)) < 0) {
+            searched = posRead - posNext;
             // read from stream till we find the separator
             int readBytes = readFromStream();
             if (readBytes <= 0) {
@@ -101,23 +141,47 @@ public class StreamSplitter {
         }
     }
 
-    // if we have read till the end of buffer, we have to create
-    // a new buffer and move data by posNext (already send data position)
+    // if we have read till the end of buffer, we move the unsent data (from posNext or the mark) to the spare
+    // buffer, fragments already sent out stay in the old one, which becomes the spare buffer
     // if there is no sent data and buffer is still full - expand the buffer
     private void shiftOrResize() {
-        if (posNext > 0) {
-            byte[] oldBuf = buf;
-            buf = new byte[buf.length];
-            System.arraycopy(oldBuf, posNext, buf, 0, oldBuf.length - posNext);
-            posRead -= posNext;
-            posNext = 0;
+        int keepFrom = markedNext < 0 ? posNext : markedNext;
+        if (keepFrom > 0) {
+            byte[] target = spare;
+            ByteBuffer targetWords = spareWords;
+            if (target == null || target.length < buf.length) {
+                target = new byte[buf.length];
+                targetWords = wordsOf(target);
+            }
+            System.arraycopy(buf, keepFrom, target, 0, posRead - keepFrom);
+            spare = buf;
+            spareWords = words;
+            buf = target;
+            words = targetWords;
+            posRead -= keepFrom;
+            posNext -= keepFrom;
+            if (markedNext >= 0) {
+                markedNext -= keepFrom;
+            }
         } else {
             byte[] oldBuf = buf;
-            buf = new byte[buf.length * 2];
+            setBuffer(new byte[buf.length * 2]);
             System.arraycopy(oldBuf, 0, buf, 0, oldBuf.length);
+            // may hold the previously returned fragment and is too small for the next move anyway
+            spare = null;
+            spareWords = null;
         }
     }
 
+    private void setBuffer(byte[] buffer) {
+        buf = buffer;
+        words = wordsOf(buffer);
+    }
+
+    private static ByteBuffer wordsOf(byte[] array) {
+        return ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     public void close() throws IOException {
         closed = true;
         delegate.close();
@@ -142,12 +206,12 @@ public class StreamSplitter {
     }
 
     void mark() {
-        markedRead = posRead;
         markedNext = posNext;
     }
 
+    // the bytes read after mark() stay in the buffer
     void reset() {
-        posRead = markedRead;
         posNext = markedNext;
+        markedNext = -1;
     }
 }
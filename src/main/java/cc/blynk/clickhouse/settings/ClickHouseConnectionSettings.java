@@ -22,11 +22,19 @@ public enum ClickHouseConnectionSettings {
     MAX_REDIRECTS("max_redirects", 5),
     DATA_TRANSFER_TIMEOUT("dataTransferTimeout", 10000),
     KEEP_ALIVE_TIMEOUT("keepAliveTimeout", 30 * 1000),
+    REQUEST_CHUNK_SIZE("request_chunk_size", 64 * 1024),
     TIME_TO_LIVE_MILLIS("timeToLiveMillis", 60 * 1000),
     DEFAULT_MAX_PER_ROUTE("defaultMaxPerRoute", 500),
     MAX_TOTAL("maxTotal", 10000),
     USE_OBJECTS_IN_ARRAYS("use_objects_in_arrays", false),
     MAX_COMPRESS_BUFFER_SIZE("maxCompressBufferSize", 1024 * 1024),
+    COMPRESSION_METHOD("compression_method", "LZ4"),
+    COMPRESSION_LEVEL("compression_level", 0),
+    COMPRESS_THREADS("compress_threads", 0),
+    READ_AHEAD_BLOCKS("read_ahead_blocks", 0),
+    NATIVE_BLOCK_ROWS("native_block_rows", 65536),
+    USE_BINARY_RESULT_SET("use_binary_result_set", false),
+    STRING_DICTIONARY_SIZE("string_dictionary_size", 0),
     USE_SERVER_TIME_ZONE("use_server_time_zone", true),
     USE_TIME_ZONE("use_time_zone", ""),
     USE_SERVER_TIME_ZONE_FOR_DATES("use_server_time_zone_for_dates", false);
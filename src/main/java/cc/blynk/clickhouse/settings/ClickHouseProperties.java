@@ -17,6 +17,11 @@ public class ClickHouseProperties {
     private int connectionTimeout;
     private int dataTransferTimeout;
     private int keepAliveTimeout;
+    /**
+     * Size of the chunks the request body is streamed with. <code>0</code> disables
+     * streaming, so the whole body is buffered in memory before sending.
+     */
+    private int requestChunkSize;
     private int timeToLiveMillis;
     private int defaultMaxPerRoute;
     private int maxTotal;
@@ -49,6 +54,45 @@ public class ClickHouseProperties {
     private boolean checkForRedirects;
     //additional
     private int maxCompressBufferSize;
+    /**
+     * Number of threads compressing request blocks in parallel when {@link ClickHouseProperties#decompress}
+     * is <code>true</code>. <code>0</code> compresses on the writing thread.
+     * Up to twice as many blocks of {@link ClickHouseProperties#maxCompressBufferSize} are kept in memory.
+     */
+    private int compressThreads;
+    /**
+     * Compression of the request blocks when {@link ClickHouseProperties#decompress} is <code>true</code>:
+     * LZ4, LZ4HC, ZSTD or NONE. ZSTD requires zstd-jni on the classpath.
+     * Response blocks are read with any of them. The method is fixed per connection,
+     * it can't be overridden per query.
+     */
+    private String compressionMethod;
+    /**
+     * Level of LZ4HC and ZSTD compression, <code>0</code> is the default level of the method.
+     */
+    private int compressionLevel;
+    /**
+     * Number of compressed response blocks read and decompressed in background ahead of the reader
+     * when {@link ClickHouseProperties#compress} is <code>true</code>. <code>0</code> decompresses
+     * every block on the reading thread when it is needed.
+     */
+    private int readAheadBlocks;
+    /**
+     * Number of rows in the blocks written by {@link cc.blynk.clickhouse.util.ClickHouseNativeBlockWriter}
+     * and in the blocks decoded at once by the binary result set.
+     */
+    private int nativeBlockRows;
+    /**
+     * Select queries without format are requested in RowBinaryWithNamesAndTypes instead of
+     * TabSeparatedWithNamesAndTypes and values are decoded from binary. Forward only result sets only.
+     * Results with the column types the binary reader can't decode are requested again as text.
+     */
+    private boolean useBinaryResultSet;
+    /**
+     * Maximum number of the distinct String values of a column the result sets keep, the repeated values are
+     * returned as the same instance. 0 disables the dictionaries.
+     */
+    private int stringDictionarySize;
 
     private boolean useServerTimeZone;
     private String useTimeZone;
@@ -108,10 +152,18 @@ public class ClickHouseProperties {
         this.connectionTimeout = getSetting(info, ClickHouseConnectionSettings.CONNECTION_TIMEOUT);
         this.dataTransferTimeout = getSetting(info, ClickHouseConnectionSettings.DATA_TRANSFER_TIMEOUT);
         this.keepAliveTimeout = getSetting(info, ClickHouseConnectionSettings.KEEP_ALIVE_TIMEOUT);
+        this.requestChunkSize = getSetting(info, ClickHouseConnectionSettings.REQUEST_CHUNK_SIZE);
         this.timeToLiveMillis = getSetting(info, ClickHouseConnectionSettings.TIME_TO_LIVE_MILLIS);
         this.defaultMaxPerRoute = getSetting(info, ClickHouseConnectionSettings.DEFAULT_MAX_PER_ROUTE);
         this.maxTotal = getSetting(info, ClickHouseConnectionSettings.MAX_TOTAL);
         this.maxCompressBufferSize = getSetting(info, ClickHouseConnectionSettings.MAX_COMPRESS_BUFFER_SIZE);
+        this.compressThreads = getSetting(info, ClickHouseConnectionSettings.COMPRESS_THREADS);
+        this.compressionMethod = getSetting(info, ClickHouseConnectionSettings.COMPRESSION_METHOD);
+        this.compressionLevel = getSetting(info, ClickHouseConnectionSettings.COMPRESSION_LEVEL);
+        this.readAheadBlocks = getSetting(info, ClickHouseConnectionSettings.READ_AHEAD_BLOCKS);
+        this.nativeBlockRows = getSetting(info, ClickHouseConnectionSettings.NATIVE_BLOCK_ROWS);
+        this.useBinaryResultSet = getSetting(info, ClickHouseConnectionSettings.USE_BINARY_RESULT_SET);
+        this.stringDictionarySize = getSetting(info, ClickHouseConnectionSettings.STRING_DICTIONARY_SIZE);
         this.ssl = getSetting(info, ClickHouseConnectionSettings.SSL);
         this.sslRootCertificate = getSetting(info, ClickHouseConnectionSettings.SSL_ROOT_CERTIFICATE);
         this.sslMode = getSetting(info, ClickHouseConnectionSettings.SSL_MODE);
@@ -168,6 +220,7 @@ public class ClickHouseProperties {
     public Properties asProperties() {
         PropertiesBuilder ret = new PropertiesBuilder();
         ret.put(ClickHouseConnectionSettings.CONNECTOR_TYPE.getKey(), String.valueOf(connectorType));
+        ret.put(ClickHouseConnectionSettings.MAX_CONNECTIONS.getKey(), String.valueOf(maxConnections));
         ret.put(ClickHouseConnectionSettings.ASYNC.getKey(), String.valueOf(async));
         ret.put(ClickHouseConnectionSettings.BUFFER_SIZE.getKey(), String.valueOf(bufferSize));
         ret.put(ClickHouseConnectionSettings.APACHE_BUFFER_SIZE.getKey(), String.valueOf(apacheBufferSize));
@@ -175,10 +228,18 @@ public class ClickHouseProperties {
         ret.put(ClickHouseConnectionSettings.CONNECTION_TIMEOUT.getKey(), String.valueOf(connectionTimeout));
         ret.put(ClickHouseConnectionSettings.DATA_TRANSFER_TIMEOUT.getKey(), String.valueOf(dataTransferTimeout));
         ret.put(ClickHouseConnectionSettings.KEEP_ALIVE_TIMEOUT.getKey(), String.valueOf(keepAliveTimeout));
+        ret.put(ClickHouseConnectionSettings.REQUEST_CHUNK_SIZE.getKey(), String.valueOf(requestChunkSize));
         ret.put(ClickHouseConnectionSettings.TIME_TO_LIVE_MILLIS.getKey(), String.valueOf(timeToLiveMillis));
         ret.put(ClickHouseConnectionSettings.DEFAULT_MAX_PER_ROUTE.getKey(), String.valueOf(defaultMaxPerRoute));
         ret.put(ClickHouseConnectionSettings.MAX_TOTAL.getKey(), String.valueOf(maxTotal));
         ret.put(ClickHouseConnectionSettings.MAX_COMPRESS_BUFFER_SIZE.getKey(), String.valueOf(maxCompressBufferSize));
+        ret.put(ClickHouseConnectionSettings.COMPRESS_THREADS.getKey(), String.valueOf(compressThreads));
+        ret.put(ClickHouseConnectionSettings.COMPRESSION_METHOD.getKey(), String.valueOf(compressionMethod));
+        ret.put(ClickHouseConnectionSettings.COMPRESSION_LEVEL.getKey(), String.valueOf(compressionLevel));
+        ret.put(ClickHouseConnectionSettings.READ_AHEAD_BLOCKS.getKey(), String.valueOf(readAheadBlocks));
+        ret.put(ClickHouseConnectionSettings.NATIVE_BLOCK_ROWS.getKey(), String.valueOf(nativeBlockRows));
+        ret.put(ClickHouseConnectionSettings.USE_BINARY_RESULT_SET.getKey(), String.valueOf(useBinaryResultSet));
+        ret.put(ClickHouseConnectionSettings.STRING_DICTIONARY_SIZE.getKey(), String.valueOf(stringDictionarySize));
         ret.put(ClickHouseConnectionSettings.SSL.getKey(), String.valueOf(ssl));
         ret.put(ClickHouseConnectionSettings.SSL_ROOT_CERTIFICATE.getKey(), String.valueOf(sslRootCertificate));
         ret.put(ClickHouseConnectionSettings.SSL_MODE.getKey(), String.valueOf(sslMode));
@@ -237,6 +298,8 @@ public class ClickHouseProperties {
     public ClickHouseProperties(ClickHouseProperties properties) {
         setHost(properties.host);
         setPort(properties.port);
+        setConnectorType(properties.connectorType);
+        setMaxConnections(properties.maxConnections);
         setAsync(properties.async);
         setBufferSize(properties.bufferSize);
         setApacheBufferSize(properties.apacheBufferSize);
@@ -244,10 +307,18 @@ public class ClickHouseProperties {
         setConnectionTimeout(properties.connectionTimeout);
         setDataTransferTimeout(properties.dataTransferTimeout);
         setKeepAliveTimeout(properties.keepAliveTimeout);
+        setRequestChunkSize(properties.requestChunkSize);
         setTimeToLiveMillis(properties.timeToLiveMillis);
         setDefaultMaxPerRoute(properties.defaultMaxPerRoute);
         setMaxTotal(properties.maxTotal);
         setMaxCompressBufferSize(properties.maxCompressBufferSize);
+        setCompressThreads(properties.compressThreads);
+        setCompressionMethod(properties.compressionMethod);
+        setCompressionLevel(properties.compressionLevel);
+        setReadAheadBlocks(properties.readAheadBlocks);
+        setNativeBlockRows(properties.nativeBlockRows);
+        setUseBinaryResultSet(properties.useBinaryResultSet);
+        setStringDictionarySize(properties.stringDictionarySize);
         setSsl(properties.ssl);
         setSslRootCertificate(properties.sslRootCertificate);
         setSslMode(properties.sslMode);
@@ -502,10 +573,18 @@ public class ClickHouseProperties {
         return connectorType;
     }
 
+    public void setConnectorType(String connectorType) {
+        this.connectorType = connectorType;
+    }
+
     public int getMaxConnections() {
         return maxConnections;
     }
 
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
     public boolean isAsync() {
         return async;
     }
@@ -578,6 +657,14 @@ public class ClickHouseProperties {
         this.keepAliveTimeout = keepAliveTimeout;
     }
 
+    public int getRequestChunkSize() {
+        return requestChunkSize;
+    }
+
+    public void setRequestChunkSize(int requestChunkSize) {
+        this.requestChunkSize = requestChunkSize;
+    }
+
     public String getUser() {
         return user;
     }
@@ -618,6 +705,62 @@ public class ClickHouseProperties {
         this.maxCompressBufferSize = maxCompressBufferSize;
     }
 
+    public int getCompressThreads() {
+        return compressThreads;
+    }
+
+    public void setCompressThreads(int compressThreads) {
+        this.compressThreads = compressThreads;
+    }
+
+    public String getCompressionMethod() {
+        return compressionMethod;
+    }
+
+    public void setCompressionMethod(String compressionMethod) {
+        this.compressionMethod = compressionMethod;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getReadAheadBlocks() {
+        return readAheadBlocks;
+    }
+
+    public void setReadAheadBlocks(int readAheadBlocks) {
+        this.readAheadBlocks = readAheadBlocks;
+    }
+
+    public int getNativeBlockRows() {
+        return nativeBlockRows;
+    }
+
+    public void setNativeBlockRows(int nativeBlockRows) {
+        this.nativeBlockRows = nativeBlockRows;
+    }
+
+    public boolean isUseBinaryResultSet() {
+        return useBinaryResultSet;
+    }
+
+    public void setUseBinaryResultSet(boolean useBinaryResultSet) {
+        this.useBinaryResultSet = useBinaryResultSet;
+    }
+
+    public int getStringDictionarySize() {
+        return stringDictionarySize;
+    }
+
+    public void setStringDictionarySize(int stringDictionarySize) {
+        this.stringDictionarySize = stringDictionarySize;
+    }
+
     public boolean getSsl() {
         return ssl;
     }
@@ -0,0 +1,170 @@
+package cc.blynk.clickhouse.util;
+
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses clickhouse compressed blocks:
+ * 16 bytes checksum, 1 byte method, 4 bytes compressed size with the 9 bytes header,
+ * 4 bytes uncompressed size and the compressed data, all little endian.
+ * Blocks are compressed with the method given to the constructor and
+ * decompressed with the method of the block header.
+ * The whole block is kept in one reused buffer, so the checksum of the header and
+ * the data is calculated in place and no memory is allocated per block once
+ * the buffers have grown to the block size.
+ * Not thread safe.
+ */
+final class ClickHouseBlockCodec {
+
+    static final int MAGIC = ClickHouseCompression.LZ4.getMethod();
+
+    private static final int CHECKSUM_SIZE = 16;
+    private static final int HEADER_SIZE = 9;
+    private static final int CHECKSUM_AND_HEADER_SIZE = CHECKSUM_SIZE + HEADER_SIZE;
+
+    private final int method;
+    private final ClickHouseBlockCompressor compressor;
+    private LZ4FastDecompressor lz4Decompressor;
+
+    private byte[] block = new byte[CHECKSUM_AND_HEADER_SIZE];
+    private byte[] decompressed = new byte[0];
+
+    ClickHouseBlockCodec() {
+        this(ClickHouseCompression.LZ4, 0);
+    }
+
+    /**
+     * @param level compression level, <code>0</code> is the default level of the method
+     */
+    ClickHouseBlockCodec(ClickHouseCompression compression, int level) {
+        this.method = compression.getMethod();
+        this.compressor = compression.compressor(level);
+    }
+
+    /**
+     * @return size of the compressed block, available via {@link #block()}
+     */
+    int compress(byte[] src, int offset, int length) {
+        ensureBlockCapacity(CHECKSUM_AND_HEADER_SIZE + compressor.maxCompressedLength(length));
+        int compressed = compressor.compress(src, offset, length,
+                block, CHECKSUM_AND_HEADER_SIZE, block.length - CHECKSUM_AND_HEADER_SIZE);
+        int compressedSizeWithHeader = compressed + HEADER_SIZE;
+
+        block[CHECKSUM_SIZE] = (byte) method;
+        putInt(block, CHECKSUM_SIZE + 1, compressedSizeWithHeader);
+        putInt(block, CHECKSUM_SIZE + 5, length);
+
+        long[] checksum = ClickHouseCityHash.cityHash128(block, CHECKSUM_SIZE, compressedSizeWithHeader);
+        putLong(block, 0, checksum[0]);
+        putLong(block, 8, checksum[1]);
+        return CHECKSUM_SIZE + compressedSizeWithHeader;
+    }
+
+    byte[] block() {
+        return block;
+    }
+
+    /**
+     * Reads the next block from the stream and decompresses it.
+     *
+     * @return size of the decompressed data, available via {@link #decompressed()},
+     *          or <code>-1</code> when the stream has ended
+     */
+    int decompress(InputStream stream) throws IOException {
+        int first = stream.read();
+        if (first < 0) {
+            return -1;
+        }
+        block[0] = (byte) first;
+        readFully(stream, block, 1, CHECKSUM_AND_HEADER_SIZE - 1);
+
+        int blockMethod = block[CHECKSUM_SIZE] & 0xFF;
+        if (blockMethod != ClickHouseCompression.LZ4.getMethod()
+                && blockMethod != ClickHouseCompression.ZSTD.getMethod()
+                && blockMethod != ClickHouseCompression.NONE.getMethod()) {
+            throw new IOException("Magic is not correct: " + blockMethod);
+        }
+        int compressedSizeWithHeader = getInt(block, CHECKSUM_SIZE + 1);
+        int uncompressedSize = getInt(block, CHECKSUM_SIZE + 5);
+        if (compressedSizeWithHeader < HEADER_SIZE || uncompressedSize < 0) {
+            throw new IOException("Block size is not correct: " + compressedSizeWithHeader
+                    + ", uncompressed " + uncompressedSize);
+        }
+
+        ensureBlockCapacity(CHECKSUM_SIZE + compressedSizeWithHeader);
+        readFully(stream, block, CHECKSUM_AND_HEADER_SIZE, compressedSizeWithHeader - HEADER_SIZE);
+
+        long[] checksum = ClickHouseCityHash.cityHash128(block, CHECKSUM_SIZE, compressedSizeWithHeader);
+        if (checksum[0] != getLong(block, 0) || checksum[1] != getLong(block, 8)) {
+            throw new IllegalArgumentException("Checksum doesn't match: corrupted data.");
+        }
+
+        if (decompressed.length < uncompressedSize) {
+            decompressed = new byte[uncompressedSize];
+        }
+        int length = compressedSizeWithHeader - HEADER_SIZE;
+        if (blockMethod == ClickHouseCompression.LZ4.getMethod()) {
+            if (lz4Decompressor == null) {
+                lz4Decompressor = Utils.factory.fastDecompressor();
+            }
+            lz4Decompressor.decompress(block, CHECKSUM_AND_HEADER_SIZE, decompressed, 0, uncompressedSize);
+        } else if (blockMethod == ClickHouseCompression.ZSTD.getMethod()) {
+            ClickHouseZstd.decompress(block, CHECKSUM_AND_HEADER_SIZE, length, decompressed, uncompressedSize);
+        } else {
+            if (length != uncompressedSize) {
+                throw new IOException("Block size is not correct: " + length + ", uncompressed " + uncompressedSize);
+            }
+            System.arraycopy(block, CHECKSUM_AND_HEADER_SIZE, decompressed, 0, length);
+        }
+        return uncompressedSize;
+    }
+
+    byte[] decompressed() {
+        return decompressed;
+    }
+
+    //keeps the already read checksum and header
+    private void ensureBlockCapacity(int size) {
+        if (block.length < size) {
+            block = Arrays.copyOf(block, size);
+        }
+    }
+
+    private static void readFully(InputStream stream, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int read = stream.read(b, off, len);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            off += read;
+            len -= read;
+        }
+    }
+
+    private static void putInt(byte[] b, int pos, int value) {
+        b[pos] = (byte) value;
+        b[pos + 1] = (byte) (value >>> 8);
+        b[pos + 2] = (byte) (value >>> 16);
+        b[pos + 3] = (byte) (value >>> 24);
+    }
+
+    private static void putLong(byte[] b, int pos, long value) {
+        putInt(b, pos, (int) value);
+        putInt(b, pos + 4, (int) (value >>> 32));
+    }
+
+    private static int getInt(byte[] b, int pos) {
+        return (b[pos] & 0xFF)
+                | (b[pos + 1] & 0xFF) << 8
+                | (b[pos + 2] & 0xFF) << 16
+                | (b[pos + 3] & 0xFF) << 24;
+    }
+
+    private static long getLong(byte[] b, int pos) {
+        return (getInt(b, pos) & 0xFFFFFFFFL) | (long) getInt(b, pos + 4) << 32;
+    }
+}
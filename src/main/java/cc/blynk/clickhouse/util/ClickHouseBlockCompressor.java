@@ -0,0 +1,14 @@
+package cc.blynk.clickhouse.util;
+
+/**
+ * Compresses the data of one block, the framing is done by {@link ClickHouseBlockCodec}.
+ */
+interface ClickHouseBlockCompressor {
+
+    int maxCompressedLength(int length);
+
+    /**
+     * @return compressed length
+     */
+    int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int maxDstLength);
+}
@@ -0,0 +1,151 @@
+package cc.blynk.clickhouse.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reader of a binary result into blocks of {@link ClickHouseNativeColumn} vectors.
+ * Subclasses decode their format on top of the buffered input kept here.
+ * <p>
+ * The block and the vectors are reused by the next {@link #readBlock()}, values that should
+ * outlive the block have to be copied.
+ */
+public abstract class ClickHouseBlockReader implements Closeable {
+
+    private final InputStream in;
+    final byte[] buffer;
+    int position;
+    int limit;
+
+    final ClickHouseNativeBlock block = new ClickHouseNativeBlock();
+    //raw little endian values of the fixed width columns
+    byte[] scratch = new byte[0];
+
+    ClickHouseBlockReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return the next block, or <code>null</code> at the end of the stream
+     */
+    public abstract ClickHouseNativeBlock readBlock() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    final boolean isEnd() throws IOException {
+        return position == limit && !fill();
+    }
+
+    static ClickHouseNativeColumn column(String name, String type, boolean plainLowCardinality) throws IOException {
+        try {
+            return ClickHouseNativeColumn.of(name, type, plainLowCardinality);
+        } catch (IllegalArgumentException e) {
+            throw new ClickHouseUnsupportedTypeException(type, e);
+        }
+    }
+
+    final ByteBuffer readScratch(int size) throws IOException {
+        scratch = ensureCapacity(scratch, size);
+        readFully(scratch, 0, size);
+        return ByteBuffer.wrap(scratch, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    final String readString() throws IOException {
+        int length = readSize();
+        if (limit - position >= length) {
+            String value = new String(buffer, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        readFully(bytes, 0, length);
+        return new String(bytes, UTF_8);
+    }
+
+    //unsigned LEB128, sizes and counts have to fit int
+    final int readSize() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position == limit && !fill()) {
+                throw new EOFException();
+            }
+            int b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value > Integer.MAX_VALUE) {
+                    throw new IOException("Size " + value + " is too large");
+                }
+                return (int) value;
+            }
+        }
+        throw new IOException("invalid LEB128 sequence");
+    }
+
+    final void readFully(byte[] bytes, int offset, int length) throws IOException {
+        int buffered = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, bytes, offset, buffered);
+        position += buffered;
+        offset += buffered;
+        length -= buffered;
+        //large values are read right into the vector
+        if (length >= buffer.length) {
+            while (length > 0) {
+                int read = in.read(bytes, offset, length);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                offset += read;
+                length -= read;
+            }
+            return;
+        }
+        while (length > 0) {
+            if (!fill()) {
+                throw new EOFException();
+            }
+            int toCopy = Math.min(length, limit);
+            System.arraycopy(buffer, 0, bytes, offset, toCopy);
+            position = toCopy;
+            offset += toCopy;
+            length -= toCopy;
+        }
+    }
+
+    final boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        while (read == 0) {
+            read = in.read(buffer, 0, buffer.length);
+        }
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    static byte[] ensureCapacity(byte[] array, int size) {
+        if (array.length >= size) {
+            return array;
+        }
+        byte[] grown = new byte[grow(array.length, size)];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    static int[] ensureCapacity(int[] array, int size) {
+        return array.length >= size ? array : new int[grow(array.length, size)];
+    }
+
+    static int grow(int length, int size) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, length + (long) (length >> 1)));
+    }
+
+}
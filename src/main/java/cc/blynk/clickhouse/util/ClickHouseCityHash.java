@@ -130,9 +130,12 @@ final class ClickHouseCityHash {
     }
 
 
-    private static long[] weakHashLen32WithSeeds(
-            long w, long x, long y, long z,
-            long a, long b) {
+    //writes the result to the out array instead of allocating a new one, as it is called for every 32 bytes
+    private static void weakHashLen32WithSeeds(byte[] s, int pos, long a, long b, long[] out) {
+        long w = fetch64(s, pos + 0);
+        long x = fetch64(s, pos + 8);
+        long y = fetch64(s, pos + 16);
+        long z = fetch64(s, pos + 24);
 
         a += w;
         b = rotate(b + a + z, 21);
@@ -140,18 +143,8 @@ final class ClickHouseCityHash {
         a += x;
         a += y;
         b += rotate(a, 44);
-        return new long[]{a + z, b + c};
-    }
-
-    private static long[] weakHashLen32WithSeeds(byte[] s, int pos, long a, long b) {
-        return weakHashLen32WithSeeds(
-                fetch64(s, pos + 0),
-                fetch64(s, pos + 8),
-                fetch64(s, pos + 16),
-                fetch64(s, pos + 24),
-                a,
-                b
-        );
+        out[0] = a + z;
+        out[1] = b + c;
     }
 
     private static long[] cityMurmur(byte[] s, int pos, int len, long seed0, long seed1) {
@@ -213,8 +206,8 @@ final class ClickHouseCityHash {
             y ^= v[0];
 
             z = rotate(z ^ w[0], 33);
-            v = weakHashLen32WithSeeds(s, pos, v[1] * k1, x + w[0]);
-            w = weakHashLen32WithSeeds(s, pos + 32, z + w[1], y);
+            weakHashLen32WithSeeds(s, pos, v[1] * k1, x + w[0], v);
+            weakHashLen32WithSeeds(s, pos + 32, z + w[1], y, w);
 
 
             long swap = z;
@@ -227,8 +220,8 @@ final class ClickHouseCityHash {
             x ^= w[1];
             y ^= v[0];
             z = rotate(z ^ w[0], 33);
-            v = weakHashLen32WithSeeds(s, pos, v[1] * k1, x + w[0]);
-            w = weakHashLen32WithSeeds(s, pos + 32, z + w[1], y);
+            weakHashLen32WithSeeds(s, pos, v[1] * k1, x + w[0], v);
+            weakHashLen32WithSeeds(s, pos + 32, z + w[1], y, w);
 
             swap = z;
             z = x;
@@ -248,7 +241,7 @@ final class ClickHouseCityHash {
             w[0] += fetch64(s, pos + len - tailDone + 16);
             x = rotate(x, 49) * k0 + w[0];
             w[0] += v[0];
-            v = weakHashLen32WithSeeds(s, pos + len - tailDone, v[0], v[1]);
+            weakHashLen32WithSeeds(s, pos + len - tailDone, v[0], v[1], v);
         }
 
         // At this point our 48 bytes of state should contain more than
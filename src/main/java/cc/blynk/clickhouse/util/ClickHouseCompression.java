@@ -0,0 +1,96 @@
+package cc.blynk.clickhouse.util;
+
+import java.util.Locale;
+
+/**
+ * Compression methods of the clickhouse compressed blocks, the ones sent
+ * with <code>decompress=1</code> and received with <code>compress=1</code>.
+ * The method is stored in every block, so the reader detects it per block.
+ * LZ4HC blocks are plain LZ4 blocks, only compressed harder.
+ * ZSTD requires <code>com.github.luben:zstd-jni</code> on the classpath.
+ */
+public enum ClickHouseCompression {
+
+    NONE(0x02),
+    LZ4(0x82),
+    LZ4HC(0x82),
+    ZSTD(0x90);
+
+    private final int method;
+
+    ClickHouseCompression(int method) {
+        this.method = method;
+    }
+
+    /**
+     * @return method byte of the block header
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    public static ClickHouseCompression fromName(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown compression method '" + name + "'");
+        }
+    }
+
+    /**
+     * @param level compression level, <code>0</code> is the default level of the method.
+     *              Ignored by LZ4 and NONE
+     */
+    ClickHouseBlockCompressor compressor(int level) {
+        switch (this) {
+            case NONE:
+                return NoneCompressor.INSTANCE;
+            case LZ4:
+                return new LZ4Compressor(Utils.factory.fastCompressor());
+            case LZ4HC:
+                return new LZ4Compressor(level == 0
+                        ? Utils.factory.highCompressor()
+                        : Utils.factory.highCompressor(level));
+            case ZSTD:
+                //the same default as clickhouse has
+                return new ClickHouseZstd.Compressor(level == 0 ? 1 : level);
+            default:
+                throw new IllegalStateException("unknown compression method " + this);
+        }
+    }
+
+    private static final class NoneCompressor implements ClickHouseBlockCompressor {
+
+        private static final NoneCompressor INSTANCE = new NoneCompressor();
+
+        @Override
+        public int maxCompressedLength(int length) {
+            return length;
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int maxDstLength) {
+            System.arraycopy(src, srcOff, dst, dstOff, length);
+            return length;
+        }
+    }
+
+    private static final class LZ4Compressor implements ClickHouseBlockCompressor {
+
+        private final net.jpountz.lz4.LZ4Compressor compressor;
+
+        LZ4Compressor(net.jpountz.lz4.LZ4Compressor compressor) {
+            this.compressor = compressor;
+        }
+
+        @Override
+        public int maxCompressedLength(int length) {
+            return compressor.maxCompressedLength(length);
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int maxDstLength) {
+            return compressor.compress(src, srcOff, length, dst, dstOff, maxDstLength);
+        }
+    }
+}
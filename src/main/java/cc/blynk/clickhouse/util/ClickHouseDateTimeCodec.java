@@ -0,0 +1,286 @@
+package cc.blynk.clickhouse.util;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parses and formats <code>yyyy-MM-dd HH:mm:ss</code> and <code>yyyy-MM-dd</code> values of one time zone
+ * without a calendar. The offset of every day is computed once and cached, so a value is converted with
+ * a table lookup and a few multiplications. Days with an offset change (DST transitions) and the years out of
+ * 1900 - 2299 go through {@link GregorianCalendar}, the results are the same as the ones of lenient
+ * {@link SimpleDateFormat} for every value.
+ * <p>
+ * Instances are shared by all the threads, see {@link #of(TimeZone)}.
+ */
+public final class ClickHouseDateTimeCodec {
+
+    private static final long MILLIS_IN_DAY = 24 * 3600 * 1000L;
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+    private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    //1900-01-01 and 2299-12-31
+    private static final int MIN_DAY = -25567;
+    private static final int MAX_DAY = 120529;
+    private static final int CHUNK_BITS = 9;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    //cached offsets are stored as offset * 2 + 1, so a missing chunk element reads as UNKNOWN
+    private static final int UNKNOWN = 0;
+    private static final int TRANSITION = 2;
+
+    private static final ConcurrentMap<String, ClickHouseDateTimeCodec> CODECS = new ConcurrentHashMap<>();
+
+    private final TimeZone timeZone;
+    //offset of the local days and of the UTC days, filled lazily, races only recompute the same values
+    private final int[][] localDays = new int[((MAX_DAY - MIN_DAY) >> CHUNK_BITS) + 1][];
+    private final int[][] utcDays = new int[((MAX_DAY - MIN_DAY) >> CHUNK_BITS) + 1][];
+
+    private ClickHouseDateTimeCodec(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    public static ClickHouseDateTimeCodec of(TimeZone timeZone) {
+        ClickHouseDateTimeCodec codec = CODECS.get(timeZone.getID());
+        if (codec == null) {
+            codec = CODECS.computeIfAbsent(timeZone.getID(),
+                    id -> new ClickHouseDateTimeCodec((TimeZone) timeZone.clone()));
+        }
+        return codec;
+    }
+
+    /**
+     * @return epoch millis of the local midnight of the day, which is counted in the proleptic Gregorian calendar
+     */
+    public long dayStartMillis(long epochDay) {
+        int offset = localOffset(epochDay);
+        if (offset != TRANSITION) {
+            return epochDay * MILLIS_IN_DAY - (offset >> 1);
+        }
+        long civil = civil(epochDay);
+        return calendarMillis((int) (civil / 10000), (int) (civil / 100 % 100), (int) (civil % 100), 0, 0, 0);
+    }
+
+    /**
+     * @return epoch millis of the local date and time, the fields are lenient as in {@link Calendar}
+     */
+    public long toEpochMillis(int year, int month, int day, int hour, int minute, int second) {
+        long millisOfDay = ((hour * 60L + minute) * 60 + second) * 1000;
+        if (millisOfDay >= 0 && millisOfDay < MILLIS_IN_DAY) {
+            long epochDay = epochDay(year, month, day);
+            int offset = localOffset(epochDay);
+            if (offset != TRANSITION) {
+                return epochDay * MILLIS_IN_DAY + millisOfDay - (offset >> 1);
+            }
+        }
+        return calendarMillis(year, month, day, hour, minute, second);
+    }
+
+    /**
+     * Parses <code>yyyy-MM-dd HH:mm:ss</code>, other values are parsed with {@link SimpleDateFormat}.
+     */
+    public long parseDateTime(byte[] bytes, int start, int length) throws ParseException {
+        if (length == DATE_TIME_PATTERN.length()
+                && bytes[start + 4] == '-' && bytes[start + 7] == '-' && bytes[start + 10] == ' '
+                && bytes[start + 13] == ':' && bytes[start + 16] == ':') {
+            int year = digits(bytes, start, 4);
+            int month = digits(bytes, start + 5, 2);
+            int day = digits(bytes, start + 8, 2);
+            int hour = digits(bytes, start + 11, 2);
+            int minute = digits(bytes, start + 14, 2);
+            int second = digits(bytes, start + 17, 2);
+            if ((year | month | day | hour | minute | second) >= 0) {
+                return toEpochMillis(year, month, day, hour, minute, second);
+            }
+        }
+        String value = new String(bytes, start, length, StandardCharsets.UTF_8);
+        return fallbackFormat(DATE_TIME_PATTERN).parse(value).getTime();
+    }
+
+    /**
+     * Parses the <code>yyyy-MM-dd</code> prefix, like {@link SimpleDateFormat#parse(String)} the rest is ignored.
+     *
+     * @return epoch millis of the local midnight
+     */
+    public long parseDate(byte[] bytes, int start, int length) throws ParseException {
+        if (length >= DATE_PATTERN.length() && bytes[start + 4] == '-' && bytes[start + 7] == '-'
+                && (length == DATE_PATTERN.length() || bytes[start + 10] == ' ')) {
+            int year = digits(bytes, start, 4);
+            int month = digits(bytes, start + 5, 2);
+            int day = digits(bytes, start + 8, 2);
+            if ((year | month | day) >= 0) {
+                return toEpochMillis(year, month, day, 0, 0, 0);
+            }
+        }
+        String value = new String(bytes, start, length, StandardCharsets.UTF_8);
+        return fallbackFormat(DATE_PATTERN).parse(value).getTime();
+    }
+
+    public String formatDateTime(long millis) {
+        char[] chars = new char[DATE_TIME_PATTERN.length()];
+        if (!format(millis, chars)) {
+            return fallbackFormat(DATE_TIME_PATTERN).format(new java.util.Date(millis));
+        }
+        return new String(chars);
+    }
+
+    public String formatDate(long millis) {
+        char[] chars = new char[DATE_TIME_PATTERN.length()];
+        if (!format(millis, chars)) {
+            return fallbackFormat(DATE_PATTERN).format(new java.util.Date(millis));
+        }
+        return new String(chars, 0, DATE_PATTERN.length());
+    }
+
+    //false when the value is out of the cached years
+    private boolean format(long millis, char[] chars) {
+        long utcDay = Math.floorDiv(millis, MILLIS_IN_DAY);
+        int offset = utcOffset(utcDay);
+        if (offset == UNKNOWN) {
+            return false;
+        }
+        long local = millis + (offset == TRANSITION ? timeZone.getOffset(millis) : offset >> 1);
+        long localDay = Math.floorDiv(local, MILLIS_IN_DAY);
+        if (localDay < MIN_DAY || localDay > MAX_DAY) {
+            return false;
+        }
+        int secondOfDay = (int) ((local - localDay * MILLIS_IN_DAY) / 1000);
+
+        long civil = civil(localDay);
+        int year = (int) (civil / 10000);
+        int month = (int) (civil / 100 % 100);
+        int day = (int) (civil % 100);
+
+        write(chars, 0, year, 4);
+        chars[4] = '-';
+        write(chars, 5, month, 2);
+        chars[7] = '-';
+        write(chars, 8, day, 2);
+        chars[10] = ' ';
+        write(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        write(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        write(chars, 17, secondOfDay % 60, 2);
+        return true;
+    }
+
+    private static void write(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    //-1 when there is a non digit
+    private static int digits(byte[] bytes, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    //proleptic Gregorian, the day and the month may be out of range
+    static long epochDay(int year, int month, int day) {
+        long y = year + Math.floorDiv(month - 1, 12);
+        int m = Math.floorMod(month - 1, 12) + 1;
+        y -= m <= 2 ? 1 : 0;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    //civil date of the day as year * 10000 + month * 100 + day, see http://howardhinnant.github.io/date_algorithms.html
+    static long civil(long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    //encoded offset of the local day, TRANSITION when it changes during the day or the day is out of the cache
+    private int localOffset(long epochDay) {
+        if (epochDay < MIN_DAY || epochDay > MAX_DAY) {
+            return TRANSITION;
+        }
+        int[] chunk = chunk(localDays, epochDay);
+        int index = (int) (epochDay - MIN_DAY) & CHUNK_MASK;
+        int offset = chunk[index];
+        if (offset == UNKNOWN) {
+            long civil = civil(epochDay);
+            int year = (int) (civil / 10000);
+            int month = (int) (civil / 100 % 100);
+            int day = (int) (civil % 100);
+            long start = calendarMillis(year, month, day, 0, 0, 0);
+            long end = calendarMillis(year, month, day + 1, 0, 0, 0);
+            offset = end - start == MILLIS_IN_DAY && timeZone.getOffset(start) == timeZone.getOffset(end - 1)
+                    ? encode(epochDay * MILLIS_IN_DAY - start)
+                    : TRANSITION;
+            chunk[index] = offset;
+        }
+        return offset;
+    }
+
+    //encoded offset of the UTC day, UNKNOWN when the day is out of the cache
+    private int utcOffset(long utcDay) {
+        if (utcDay < MIN_DAY || utcDay > MAX_DAY) {
+            return UNKNOWN;
+        }
+        int[] chunk = chunk(utcDays, utcDay);
+        int index = (int) (utcDay - MIN_DAY) & CHUNK_MASK;
+        int offset = chunk[index];
+        if (offset == UNKNOWN) {
+            long start = utcDay * MILLIS_IN_DAY;
+            int startOffset = timeZone.getOffset(start);
+            offset = startOffset == timeZone.getOffset(start + MILLIS_IN_DAY - 1) ? encode(startOffset) : TRANSITION;
+            chunk[index] = offset;
+        }
+        return offset;
+    }
+
+    private static int[] chunk(int[][] chunks, long epochDay) {
+        int chunkIndex = (int) (epochDay - MIN_DAY) >> CHUNK_BITS;
+        int[] chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            chunk = new int[1 << CHUNK_BITS];
+            chunks[chunkIndex] = chunk;
+        }
+        return chunk;
+    }
+
+    private static int encode(long offset) {
+        return (int) offset * 2 + 1;
+    }
+
+    //the lenient calendar resolves the fields in the zone like SimpleDateFormat does
+    private long calendarMillis(int year, int month, int day, int hour, int minute, int second) {
+        Calendar calendar = new GregorianCalendar(timeZone);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+    private SimpleDateFormat fallbackFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(timeZone);
+        return format;
+    }
+}
@@ -1,28 +1,27 @@
 package cc.blynk.clickhouse.util;
 
-import cc.blynk.clickhouse.util.guava.LittleEndianDataInputStream;
-import net.jpountz.lz4.LZ4FastDecompressor;
-
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Reader from clickhouse in lz4
+ * Reader from clickhouse compressed blocks, the compression method is detected per block
  */
 
 public class ClickHouseLZ4InputStream extends InputStream {
 
-    public static final int MAGIC = 0x82;
+    public static final int MAGIC = ClickHouseBlockCodec.MAGIC;
 
     private final InputStream stream;
-    private final LittleEndianDataInputStream dataWrapper;
+    private final ClickHouseBlockCodec codec = new ClickHouseBlockCodec();
 
+    //decompressed data of the current block, the array is reused and may be larger than the block
     private byte[] currentBlock;
+    private int blockSize;
     private int pointer;
+    private boolean eof;
 
     public ClickHouseLZ4InputStream(InputStream stream) {
         this.stream = stream;
-        dataWrapper = new LittleEndianDataInputStream(stream);
     }
 
     @Override
@@ -52,7 +51,7 @@ public class ClickHouseLZ4InputStream extends InputStream {
         int copied = 0;
         int targetPointer = off;
         while (copied != len) {
-            int toCopy = Math.min(currentBlock.length - pointer, len - copied);
+            int toCopy = Math.min(blockSize - pointer, len - copied);
             System.arraycopy(currentBlock, pointer, b, targetPointer, toCopy);
             targetPointer += toCopy;
             pointer += toCopy;
@@ -70,54 +69,21 @@ public class ClickHouseLZ4InputStream extends InputStream {
     }
 
     private boolean checkNext() throws IOException {
-        if (currentBlock == null || pointer == currentBlock.length) {
-            currentBlock = readNextBlock();
+        while (pointer == blockSize) {
+            if (eof) {
+                return false;
+            }
+            int size = codec.decompress(stream);
+            if (size < 0) {
+                eof = true;
+                blockSize = 0;
+            } else {
+                currentBlock = codec.decompressed();
+                blockSize = size;
+            }
             pointer = 0;
         }
-        return currentBlock != null;
-    }
-
-    // every block is:
-    private byte[] readNextBlock() throws IOException {
-        int read = stream.read();
-        if (read < 0) {
-            return null;
-        }
-
-        byte[] checksum = new byte[16];
-        checksum[0] = (byte) read;
-        // checksum - 16 bytes.
-        dataWrapper.readFully(checksum, 1, 15);
-        ClickHouseBlockChecksum expected = ClickHouseBlockChecksum.fromBytes(checksum);
-        // header:
-        // 1 byte - 0x82 (shows this is LZ4)
-        int magic = dataWrapper.readUnsignedByte();
-        if (magic != MAGIC) {
-            throw new IOException("Magic is not correct: " + magic);
-        }
-        // 4 bytes - size of the compressed data including 9 bytes of the header
-        int compressedSizeWithHeader = dataWrapper.readInt();
-        // 4 bytes - size of uncompressed data
-        int uncompressedSize = dataWrapper.readInt();
-        int compressedSize = compressedSizeWithHeader - 9; //header
-        byte[] block = new byte[compressedSize];
-        // compressed data: compressed_size - 9 байт.
-        dataWrapper.readFully(block);
-
-        ClickHouseBlockChecksum real = ClickHouseBlockChecksum.calculateForBlock((byte) magic,
-                                                                                 compressedSizeWithHeader,
-                                                                                 uncompressedSize,
-                                                                                 block,
-                                                                                 compressedSize);
-        if (!real.equals(expected)) {
-            throw new IllegalArgumentException("Checksum doesn't match: corrupted data.");
-        }
-
-        byte[] decompressed = new byte[uncompressedSize];
-        LZ4FastDecompressor decompressor = Utils.factory.fastDecompressor();
-        decompressor.decompress(block, 0, decompressed, 0, uncompressedSize);
-        return decompressed;
+        return true;
     }
 
-
 }
@@ -1,25 +1,31 @@
 package cc.blynk.clickhouse.util;
 
-import cc.blynk.clickhouse.util.guava.LittleEndianDataOutputStream;
-import net.jpountz.lz4.LZ4Compressor;
-
 import java.io.IOException;
 import java.io.OutputStream;
 
+/**
+ * Writer of clickhouse compressed blocks, lz4 by default.
+ */
 public final class ClickHouseLZ4OutputStream extends OutputStream {
 
-    private final LittleEndianDataOutputStream dataWrapper;
+    private final OutputStream stream;
+    private final ClickHouseBlockCodec codec;
 
     private final byte[] currentBlock;
     private int pointer;
-    private final byte[] compressedBlock;
-    private final LZ4Compressor compressor;
 
     public ClickHouseLZ4OutputStream(OutputStream stream, int maxCompressBlockSize) {
-        dataWrapper = new LittleEndianDataOutputStream(stream);
-        compressor = Utils.factory.fastCompressor();
+        this(stream, maxCompressBlockSize, ClickHouseCompression.LZ4, 0);
+    }
+
+    /**
+     * @param level compression level, <code>0</code> is the default level of the method
+     */
+    public ClickHouseLZ4OutputStream(OutputStream stream, int maxCompressBlockSize,
+                                     ClickHouseCompression compression, int level) {
+        this.stream = stream;
+        this.codec = new ClickHouseBlockCodec(compression, level);
         currentBlock = new byte[maxCompressBlockSize];
-        compressedBlock = new byte[compressor.maxCompressedLength(maxCompressBlockSize)];
     }
 
     @Override
@@ -32,28 +38,32 @@ public final class ClickHouseLZ4OutputStream extends OutputStream {
         }
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int toCopy = Math.min(len, currentBlock.length - pointer);
+            System.arraycopy(b, off, currentBlock, pointer, toCopy);
+            pointer += toCopy;
+            off += toCopy;
+            len -= toCopy;
+
+            if (pointer == currentBlock.length) {
+                writeBlock();
+            }
+        }
+    }
+
     @Override
     public void flush() throws IOException {
         if (pointer != 0) {
             writeBlock();
         }
-        dataWrapper.flush();
+        stream.flush();
     }
 
     private void writeBlock() throws IOException {
-        int compressed = compressor.compress(currentBlock, 0, pointer, compressedBlock, 0);
-        ClickHouseBlockChecksum checksum = ClickHouseBlockChecksum.calculateForBlock(
-                (byte) ClickHouseLZ4InputStream.MAGIC,
-                compressed + 9,
-                pointer,
-                compressedBlock,
-                compressed
-        );
-        dataWrapper.write(checksum.asBytes());
-        dataWrapper.writeByte(ClickHouseLZ4InputStream.MAGIC);
-        dataWrapper.writeInt(compressed + 9); // compressed size with header
-        dataWrapper.writeInt(pointer); // uncompressed size
-        dataWrapper.write(compressedBlock, 0, compressed);
+        int size = codec.compress(currentBlock, 0, pointer);
+        stream.write(codec.block(), 0, size);
         pointer = 0;
     }
 }
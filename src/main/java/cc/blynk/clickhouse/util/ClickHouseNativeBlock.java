@@ -0,0 +1,41 @@
+package cc.blynk.clickhouse.util;
+
+/**
+ * Block of the Native format read by {@link ClickHouseNativeBlockReader}.
+ * The block and its columns are reused by the next block of the reader.
+ */
+public final class ClickHouseNativeBlock {
+
+    ClickHouseNativeColumn[] columns = new ClickHouseNativeColumn[0];
+    int rows;
+
+    ClickHouseNativeBlock() {
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param index 0-based index of the column
+     */
+    public ClickHouseNativeColumn getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @return the column or <code>null</code> when there is no column with such name
+     */
+    public ClickHouseNativeColumn getColumn(String name) {
+        for (ClickHouseNativeColumn column : columns) {
+            if (column.getName().equals(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,150 @@
+package cc.blynk.clickhouse.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Reader of the Native format. Every block is decoded column by column into the primitive vectors
+ * of {@link ClickHouseNativeColumn}, so the decoding cost is paid per block, not per value.
+ * <p>
+ * LowCardinality columns can't be decoded, they are requested as plain columns by
+ * {@link cc.blynk.clickhouse.ClickHouseStatement#executeQueryNativeBlocks(String)}.
+ */
+public final class ClickHouseNativeBlockReader extends ClickHouseBlockReader {
+
+    public ClickHouseNativeBlockReader(InputStream in, int bufferSize) {
+        super(in, bufferSize);
+    }
+
+    @Override
+    public ClickHouseNativeBlock readBlock() throws IOException {
+        if (isEnd()) {
+            return null;
+        }
+        int columnCount = readSize();
+        int rows = readSize();
+        ClickHouseNativeColumn[] previous = block.columns;
+        ClickHouseNativeColumn[] columns = previous.length == columnCount
+                ? previous
+                : new ClickHouseNativeColumn[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString();
+            String type = readString();
+            ClickHouseNativeColumn column = i < previous.length
+                    && previous[i].getName().equals(name) && previous[i].getType().equals(type)
+                    ? previous[i]
+                    : column(name, type, false);
+            readColumn(column, rows);
+            columns[i] = column;
+        }
+        block.columns = columns;
+        block.rows = rows;
+        return block;
+    }
+
+    private void readColumn(ClickHouseNativeColumn column, int rows) throws IOException {
+        column.rows = rows;
+        if (column.nullable) {
+            column.nullMap = ensureCapacity(column.nullMap, rows);
+            readFully(column.nullMap, 0, rows);
+        }
+        switch (column.kind) {
+            case LONG:
+                readLongs(column, rows);
+                break;
+            case DOUBLE:
+                readDoubles(column, rows);
+                break;
+            case FIXED:
+                column.data = ensureCapacity(column.data, rows * column.width);
+                readFully(column.data, 0, rows * column.width);
+                break;
+            case STRING:
+                readStrings(column, rows);
+                break;
+            case ARRAY:
+                readArrays(column, rows);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void readLongs(ClickHouseNativeColumn column, int rows) throws IOException {
+        ByteBuffer bytes = readScratch(rows * column.width);
+        long[] longs = column.longs.length >= rows ? column.longs : new long[grow(column.longs.length, rows)];
+        column.longs = longs;
+        switch (column.width) {
+            case 1:
+                for (int i = 0; i < rows; i++) {
+                    longs[i] = column.unsigned ? scratch[i] & 0xFF : scratch[i];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < rows; i++) {
+                    short value = bytes.getShort(i * 2);
+                    longs[i] = column.unsigned ? value & 0xFFFF : value;
+                }
+                break;
+            case 4:
+                IntBuffer ints = bytes.asIntBuffer();
+                for (int i = 0; i < rows; i++) {
+                    int value = ints.get(i);
+                    longs[i] = column.unsigned ? value & 0xFFFFFFFFL : value;
+                }
+                break;
+            default:
+                bytes.asLongBuffer().get(longs, 0, rows);
+                break;
+        }
+    }
+
+    private void readDoubles(ClickHouseNativeColumn column, int rows) throws IOException {
+        ByteBuffer bytes = readScratch(rows * column.width);
+        double[] doubles = column.doubles.length >= rows
+                ? column.doubles
+                : new double[grow(column.doubles.length, rows)];
+        column.doubles = doubles;
+        if (column.width == 4) {
+            FloatBuffer floats = bytes.asFloatBuffer();
+            for (int i = 0; i < rows; i++) {
+                doubles[i] = floats.get(i);
+            }
+        } else {
+            bytes.asDoubleBuffer().get(doubles, 0, rows);
+        }
+    }
+
+    private void readStrings(ClickHouseNativeColumn column, int rows) throws IOException {
+        int[] offsets = ensureCapacity(column.offsets, rows + 1);
+        byte[] data = column.data;
+        int size = 0;
+        for (int i = 0; i < rows; i++) {
+            int length = readSize();
+            data = ensureCapacity(data, size + length);
+            readFully(data, size, length);
+            size += length;
+            offsets[i + 1] = size;
+        }
+        column.offsets = offsets;
+        column.data = data;
+    }
+
+    private void readArrays(ClickHouseNativeColumn column, int rows) throws IOException {
+        ByteBuffer bytes = readScratch(rows * 8);
+        int[] offsets = ensureCapacity(column.offsets, rows + 1);
+        for (int i = 0; i < rows; i++) {
+            long end = bytes.getLong(i * 8);
+            if (end < offsets[i] || end > Integer.MAX_VALUE) {
+                throw new IOException("Invalid array offset " + end + " of column " + column.getName());
+            }
+            offsets[i + 1] = (int) end;
+        }
+        column.offsets = offsets;
+        readColumn(column.elements, offsets[rows]);
+    }
+
+}
@@ -0,0 +1,749 @@
+package cc.blynk.clickhouse.util;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writer of the Native format. Values are written row by row, in the order of the columns,
+ * but they are kept in a contiguous little endian buffer per column. Once
+ * {@link ClickHouseProperties#getNativeBlockRows()} rows are collected, the block is written
+ * to the stream as the number of columns and rows, followed by the name, the type and
+ * the data of every column. The buffers are reused for the next block.
+ * <p>
+ * Supported column types are the numbers, Date, DateTime, Enum8, Enum16, Decimal, UUID,
+ * String, FixedString, Nullable of them and Array of them.
+ * Values are checked against the type of the column: the integers go into the columns of the same width,
+ * signed or unsigned, and into the enums, Int32 and Int64 also go into Decimal columns of their width
+ * as unscaled values. {@link #writeDecimal(BigDecimal)} applies the scale of the column.
+ */
+public final class ClickHouseNativeBlockWriter {
+
+    private static final int VARIABLE_WIDTH = -1;
+    private static final long U_INT32_MAX = (1L << 32) - 1;
+
+    private final OutputStream out;
+    private final TimeZone timeZone;
+    private final int blockRows;
+    private final String[] names;
+    private final String[] types;
+    private final Column[] columns;
+    private final Buffer header = new Buffer(64);
+
+    private int columnIndex;
+    private int rows;
+
+    public ClickHouseNativeBlockWriter(OutputStream out, String[] columnNames, String[] columnTypes,
+                                       TimeZone timeZone, ClickHouseProperties properties) {
+        if (columnNames.length != columnTypes.length || columnNames.length == 0) {
+            throw new IllegalArgumentException("Column names " + Arrays.toString(columnNames)
+                    + " don't match column types " + Arrays.toString(columnTypes));
+        }
+        if (properties.getNativeBlockRows() <= 0) {
+            throw new IllegalArgumentException("Native block rows should be positive, but is "
+                    + properties.getNativeBlockRows());
+        }
+        this.out = out;
+        this.timeZone = properties.isUseServerTimeZoneForDates() ? timeZone : TimeZone.getDefault();
+        this.blockRows = properties.getNativeBlockRows();
+        this.names = columnNames.clone();
+        this.types = columnTypes.clone();
+        this.columns = new Column[types.length];
+        for (int i = 0; i < types.length; i++) {
+            columns[i] = column(types[i]);
+        }
+    }
+
+    public void writeInt8(byte value) throws IOException {
+        data(Kind.INT8, "Int8").putByte(value);
+        endValue();
+    }
+
+    public void writeInt8(int value) throws IOException {
+        validateInt(value, Byte.MIN_VALUE, Byte.MAX_VALUE, "Int8");
+        writeInt8((byte) value);
+    }
+
+    public void writeUInt8(boolean value) throws IOException {
+        writeInt8((byte) (value ? 1 : 0));
+    }
+
+    public void writeUInt8(int value) throws IOException {
+        validateInt(value, 0, 0xFF, "UInt8");
+        writeInt8((byte) value);
+    }
+
+    public void writeInt16(short value) throws IOException {
+        data(Kind.INT16, "Int16").putShort(value);
+        endValue();
+    }
+
+    public void writeInt16(int value) throws IOException {
+        validateInt(value, Short.MIN_VALUE, Short.MAX_VALUE, "Int16");
+        writeInt16((short) value);
+    }
+
+    public void writeUInt16(int value) throws IOException {
+        validateInt(value, 0, 0xFFFF, "UInt16");
+        writeInt16((short) value);
+    }
+
+    public void writeInt32(int value) throws IOException {
+        data(Kind.INT32, "Int32").putInt(value);
+        endValue();
+    }
+
+    public void writeUInt32(long value) throws IOException {
+        validateUInt32(value);
+        writeInt32((int) value);
+    }
+
+    public void writeInt64(long value) throws IOException {
+        data(Kind.INT64, "Int64").putLong(value);
+        endValue();
+    }
+
+    public void writeUInt64(long value) throws IOException {
+        if (value < 0) {
+            throw new IllegalStateException("Not a UInt64 value: " + value);
+        }
+        writeInt64(value);
+    }
+
+    public void writeFloat32(float value) throws IOException {
+        data(Kind.FLOAT32, "Float32").putInt(Float.floatToRawIntBits(value));
+        endValue();
+    }
+
+    public void writeFloat64(double value) throws IOException {
+        data(Kind.FLOAT64, "Float64").putLong(Double.doubleToRawLongBits(value));
+        endValue();
+    }
+
+    public void writeDate(Date date) throws IOException {
+        Objects.requireNonNull(date);
+        data(Kind.DATE, "Date").putShort((short) toDays(date));
+        endValue();
+    }
+
+    public void writeDateTime(Date date) throws IOException {
+        Objects.requireNonNull(date);
+        data(Kind.DATE_TIME, "DateTime").putInt((int) toSeconds(date));
+        endValue();
+    }
+
+    /**
+     * Writes Decimal value with the scale of the column, the value is not rounded.
+     *
+     * @throws IllegalStateException when the value has more digits than the column allows
+     */
+    public void writeDecimal(BigDecimal value) throws IOException {
+        Objects.requireNonNull(value);
+        DataColumn data = dataColumn();
+        if (data == null || data.kind != Kind.DECIMAL) {
+            throw mismatch("Decimal");
+        }
+        BigInteger unscaled = data.unscaled(value);
+        Buffer buffer = data(Kind.DECIMAL, "Decimal");
+        if (data.width == 4) {
+            buffer.putInt(unscaled.intValue());
+        } else if (data.width == 8) {
+            buffer.putLong(unscaled.longValue());
+        } else {
+            buffer.putLong(unscaled.longValue());
+            buffer.putLong(unscaled.shiftRight(64).longValue());
+        }
+        endValue();
+    }
+
+    public void writeUUID(UUID uuid) throws IOException {
+        Objects.requireNonNull(uuid);
+        Buffer buffer = data(Kind.UUID, "UUID");
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        endValue();
+    }
+
+    public void writeString(String string) throws IOException {
+        Objects.requireNonNull(string);
+        data(Kind.STRING, "String").putString(string);
+        endValue();
+    }
+
+    public void writeString(byte[] bytes) throws IOException {
+        Objects.requireNonNull(bytes);
+        Buffer buffer = data(Kind.STRING, "String");
+        buffer.putVarInt(bytes.length);
+        buffer.putBytes(bytes, 0, bytes.length);
+        endValue();
+    }
+
+    /**
+     * Writes FixedString value, the value shorter than the column is padded with zero bytes.
+     */
+    public void writeFixedString(byte[] bytes) throws IOException {
+        Objects.requireNonNull(bytes);
+        DataColumn data = dataColumn();
+        if (data == null || data.kind != Kind.FIXED_STRING || data.width < bytes.length) {
+            throw mismatch("FixedString(" + bytes.length + ")");
+        }
+        int width = data.width;
+        Buffer buffer = data(Kind.FIXED_STRING, "FixedString(" + bytes.length + ")");
+        buffer.putBytes(bytes, 0, bytes.length);
+        buffer.putZeros(width - bytes.length);
+        endValue();
+    }
+
+    /**
+     * Writes <code>NULL</code> into Nullable column.
+     */
+    public void writeNull() throws IOException {
+        Column column = current();
+        if (!(column instanceof NullableColumn)) {
+            throw mismatch("NULL");
+        }
+        NullableColumn nullable = (NullableColumn) column;
+        nullable.nulls.putByte((byte) 1);
+        nullable.nested.writeDefault();
+        endValue();
+    }
+
+    public void writeInt8Array(byte[] values) throws IOException {
+        Buffer buffer = array(Kind.INT8, "Array(Int8)", values.length);
+        buffer.putBytes(values, 0, values.length);
+        endValue();
+    }
+
+    public void writeUInt8Array(int[] values) throws IOException {
+        for (int value : values) {
+            validateInt(value, 0, 0xFF, "UInt8");
+        }
+        Buffer buffer = array(Kind.INT8, "Array(UInt8)", values.length);
+        for (int value : values) {
+            buffer.putByte((byte) value);
+        }
+        endValue();
+    }
+
+    public void writeInt16Array(short[] values) throws IOException {
+        Buffer buffer = array(Kind.INT16, "Array(Int16)", values.length);
+        for (short value : values) {
+            buffer.putShort(value);
+        }
+        endValue();
+    }
+
+    public void writeUInt16Array(int[] values) throws IOException {
+        for (int value : values) {
+            validateInt(value, 0, 0xFFFF, "UInt16");
+        }
+        Buffer buffer = array(Kind.INT16, "Array(UInt16)", values.length);
+        for (int value : values) {
+            buffer.putShort((short) value);
+        }
+        endValue();
+    }
+
+    public void writeInt32Array(int[] values) throws IOException {
+        Buffer buffer = array(Kind.INT32, "Array(Int32)", values.length);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        endValue();
+    }
+
+    public void writeUInt32Array(long[] values) throws IOException {
+        for (long value : values) {
+            validateUInt32(value);
+        }
+        Buffer buffer = array(Kind.INT32, "Array(UInt32)", values.length);
+        for (long value : values) {
+            buffer.putInt((int) value);
+        }
+        endValue();
+    }
+
+    public void writeInt64Array(long[] values) throws IOException {
+        Buffer buffer = array(Kind.INT64, "Array(Int64)", values.length);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+        endValue();
+    }
+
+    public void writeFloat32Array(float[] values) throws IOException {
+        Buffer buffer = array(Kind.FLOAT32, "Array(Float32)", values.length);
+        for (float value : values) {
+            buffer.putInt(Float.floatToRawIntBits(value));
+        }
+        endValue();
+    }
+
+    public void writeFloat64Array(double[] values) throws IOException {
+        Buffer buffer = array(Kind.FLOAT64, "Array(Float64)", values.length);
+        for (double value : values) {
+            buffer.putLong(Double.doubleToRawLongBits(value));
+        }
+        endValue();
+    }
+
+    public void writeDateArray(Date[] dates) throws IOException {
+        long[] days = new long[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            days[i] = toDays(Objects.requireNonNull(dates[i]));
+        }
+        Buffer buffer = array(Kind.DATE, "Array(Date)", dates.length);
+        for (long day : days) {
+            buffer.putShort((short) day);
+        }
+        endValue();
+    }
+
+    public void writeDateTimeArray(Date[] dates) throws IOException {
+        long[] seconds = new long[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            seconds[i] = toSeconds(Objects.requireNonNull(dates[i]));
+        }
+        Buffer buffer = array(Kind.DATE_TIME, "Array(DateTime)", dates.length);
+        for (long second : seconds) {
+            buffer.putInt((int) second);
+        }
+        endValue();
+    }
+
+    public void writeStringArray(String[] strings) throws IOException {
+        for (String string : strings) {
+            Objects.requireNonNull(string);
+        }
+        Buffer buffer = array(Kind.STRING, "Array(String)", strings.length);
+        for (String string : strings) {
+            buffer.putString(string);
+        }
+        endValue();
+    }
+
+    /**
+     * Writes the collected rows as a block, if there are any, and flushes the stream.
+     *
+     * @throws IllegalStateException when the last row is not complete
+     */
+    public void flush() throws IOException {
+        if (columnIndex != 0) {
+            throw new IllegalStateException("Row is not complete, next column is " + names[columnIndex]);
+        }
+        if (rows > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    private Column current() {
+        return columns[columnIndex];
+    }
+
+    //data column of the current column or of the current nullable one, null for the arrays
+    private DataColumn dataColumn() {
+        Column column = current();
+        if (column instanceof NullableColumn) {
+            return ((NullableColumn) column).nested;
+        }
+        return column instanceof DataColumn ? (DataColumn) column : null;
+    }
+
+    private Buffer data(Kind kind, String valueType) {
+        DataColumn data = dataColumn();
+        checkType(data, kind, valueType);
+        Column column = current();
+        if (column instanceof NullableColumn) {
+            ((NullableColumn) column).nulls.putByte((byte) 0);
+        }
+        return data.buffer;
+    }
+
+    private Buffer array(Kind kind, String valueType, int length) {
+        Column column = current();
+        if (!(column instanceof ArrayColumn)) {
+            throw mismatch(valueType);
+        }
+        ArrayColumn array = (ArrayColumn) column;
+        checkType(array.nested, kind, valueType);
+        array.elements += length;
+        array.offsets.putLong(array.elements);
+        return array.nested.buffer;
+    }
+
+    private void checkType(DataColumn data, Kind kind, String valueType) {
+        if (data == null || !data.accepts(kind)) {
+            throw mismatch(valueType);
+        }
+    }
+
+    private IllegalStateException mismatch(String valueType) {
+        return new IllegalStateException("Column " + names[columnIndex] + " of type " + types[columnIndex]
+                + " can't be written as " + valueType);
+    }
+
+    private void endValue() throws IOException {
+        columnIndex++;
+        if (columnIndex == columns.length) {
+            columnIndex = 0;
+            rows++;
+            if (rows == blockRows) {
+                writeBlock();
+            }
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        header.clear();
+        header.putVarInt(columns.length);
+        header.putVarInt(rows);
+        header.writeTo(out);
+        for (int i = 0; i < columns.length; i++) {
+            header.clear();
+            header.putString(names[i]);
+            header.putString(types[i]);
+            header.writeTo(out);
+            columns[i].writeTo(out);
+            columns[i].clear();
+        }
+        rows = 0;
+    }
+
+    private long toDays(Date date) {
+        long localMillis = date.getTime() + timeZone.getOffset(date.getTime());
+        //floor, so the dates before the epoch are not rounded up to it
+        long days = Math.floorDiv(localMillis, ClickHouseRowBinaryStream.MILLIS_IN_DAY);
+        if (days < 0 || days > 0xFFFF) {
+            throw new IllegalStateException("Not a UInt16 value: " + days);
+        }
+        return days;
+    }
+
+    private static long toSeconds(Date date) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(date.getTime());
+        validateUInt32(seconds);
+        return seconds;
+    }
+
+    private static void validateInt(int value, int minValue, int maxValue, String dataType) {
+        if (value < minValue || value > maxValue) {
+            throw new IllegalStateException("Not a " + dataType + " value: " + value);
+        }
+    }
+
+    private static void validateUInt32(long value) {
+        if (value < 0 || value > U_INT32_MAX) {
+            throw new IllegalStateException("Not a UInt32 value: " + value);
+        }
+    }
+
+    private static Column column(String type) {
+        if (type.startsWith("Nullable(") && type.endsWith(")")) {
+            Column nested = column(type.substring("Nullable(".length(), type.length() - 1));
+            if (nested instanceof DataColumn) {
+                return new NullableColumn((DataColumn) nested);
+            }
+        } else if (type.startsWith("Array(") && type.endsWith(")")) {
+            Column nested = column(type.substring("Array(".length(), type.length() - 1));
+            if (nested instanceof DataColumn) {
+                return new ArrayColumn((DataColumn) nested);
+            }
+        } else {
+            DataColumn data = dataColumn(type);
+            if (data != null) {
+                return data;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported Native column type " + type);
+    }
+
+    //null for unsupported types
+    private static DataColumn dataColumn(String type) {
+        int argsStart = type.indexOf('(');
+        String base = argsStart < 0 ? type : type.substring(0, argsStart);
+        switch (base) {
+            case "Int8":
+            case "UInt8":
+            case "Enum8":
+                return new DataColumn(Kind.INT8);
+            case "Int16":
+            case "UInt16":
+            case "Enum16":
+                return new DataColumn(Kind.INT16);
+            case "Int32":
+            case "UInt32":
+                return new DataColumn(Kind.INT32);
+            case "Int64":
+            case "UInt64":
+                return new DataColumn(Kind.INT64);
+            case "Float32":
+                return new DataColumn(Kind.FLOAT32);
+            case "Float64":
+                return new DataColumn(Kind.FLOAT64);
+            case "Date":
+                return new DataColumn(Kind.DATE);
+            case "DateTime":
+                return new DataColumn(Kind.DATE_TIME);
+            case "UUID":
+                return new DataColumn(Kind.UUID);
+            case "String":
+                return new DataColumn(Kind.STRING);
+            case "FixedString":
+                return argsStart < 0 ? null
+                        : new DataColumn(Kind.FIXED_STRING, Integer.parseInt(args(type, argsStart)[0]), 0, 0);
+            case "Decimal32":
+                return argsStart < 0 ? null : decimal(9, args(type, argsStart)[0]);
+            case "Decimal64":
+                return argsStart < 0 ? null : decimal(18, args(type, argsStart)[0]);
+            case "Decimal128":
+                return argsStart < 0 ? null : decimal(38, args(type, argsStart)[0]);
+            case "Decimal":
+                if (argsStart < 0) {
+                    return null;
+                }
+                String[] args = args(type, argsStart);
+                return args.length < 2 ? null : decimal(Integer.parseInt(args[0]), args[1]);
+            default:
+                return null;
+        }
+    }
+
+    private static DataColumn decimal(int precision, String scale) {
+        int width = precision <= 9 ? 4 : precision <= 18 ? 8 : 16;
+        return new DataColumn(Kind.DECIMAL, width, precision, Integer.parseInt(scale));
+    }
+
+    private static String[] args(String type, int argsStart) {
+        return type.substring(argsStart + 1, type.lastIndexOf(')')).trim().split("\\s*,\\s*");
+    }
+
+    //family of the column types, Decimal and FixedString have the width of the column
+    private enum Kind {
+        INT8(1), INT16(2), INT32(4), INT64(8), FLOAT32(4), FLOAT64(8), DATE(2), DATE_TIME(4), UUID(16),
+        STRING(VARIABLE_WIDTH), FIXED_STRING(0), DECIMAL(0);
+
+        private final int width;
+
+        Kind(int width) {
+            this.width = width;
+        }
+    }
+
+    private abstract static class Column {
+
+        abstract void writeDefault();
+
+        abstract void writeTo(OutputStream out) throws IOException;
+
+        abstract void clear();
+    }
+
+    private static final class DataColumn extends Column {
+
+        private final Kind kind;
+        private final int width;
+        private final int precision;
+        private final int scale;
+        private final BigInteger maxUnscaled;
+        private final Buffer buffer = new Buffer(1024);
+
+        DataColumn(Kind kind) {
+            this(kind, kind.width, 0, 0);
+        }
+
+        DataColumn(Kind kind, int width, int precision, int scale) {
+            this.kind = kind;
+            this.width = width;
+            this.precision = precision;
+            this.scale = scale;
+            this.maxUnscaled = kind == Kind.DECIMAL ? BigInteger.TEN.pow(precision).subtract(BigInteger.ONE) : null;
+        }
+
+        //the unscaled Int32 and Int64 values go into Decimal32 and Decimal64
+        boolean accepts(Kind valueKind) {
+            return kind == valueKind
+                    || kind == Kind.DECIMAL && (valueKind == Kind.INT32 || valueKind == Kind.INT64)
+                            && valueKind.width == width;
+        }
+
+        BigInteger unscaled(BigDecimal value) {
+            BigInteger unscaled;
+            try {
+                unscaled = value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue();
+            } catch (ArithmeticException e) {
+                unscaled = null;
+            }
+            if (unscaled == null || unscaled.abs().compareTo(maxUnscaled) > 0) {
+                throw new IllegalStateException("Not a Decimal(" + precision + ", " + scale + ") value: " + value);
+            }
+            return unscaled;
+        }
+
+        @Override
+        void writeDefault() {
+            if (width == VARIABLE_WIDTH) {
+                buffer.putVarInt(0);
+            } else {
+                buffer.putZeros(width);
+            }
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            buffer.writeTo(out);
+        }
+
+        @Override
+        void clear() {
+            buffer.clear();
+        }
+    }
+
+    //null map of UInt8 followed by the nested column with the default values for nulls
+    private static final class NullableColumn extends Column {
+
+        private final Buffer nulls = new Buffer(1024);
+        private final DataColumn nested;
+
+        NullableColumn(DataColumn nested) {
+            this.nested = nested;
+        }
+
+        @Override
+        void writeDefault() {
+            nulls.putByte((byte) 1);
+            nested.writeDefault();
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            nulls.writeTo(out);
+            nested.writeTo(out);
+        }
+
+        @Override
+        void clear() {
+            nulls.clear();
+            nested.clear();
+        }
+    }
+
+    //UInt64 end offsets of every array followed by the elements of all the arrays
+    private static final class ArrayColumn extends Column {
+
+        private final Buffer offsets = new Buffer(1024);
+        private final DataColumn nested;
+        private long elements;
+
+        ArrayColumn(DataColumn nested) {
+            this.nested = nested;
+        }
+
+        @Override
+        void writeDefault() {
+            offsets.putLong(elements);
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            offsets.writeTo(out);
+            nested.writeTo(out);
+        }
+
+        @Override
+        void clear() {
+            offsets.clear();
+            nested.clear();
+            elements = 0;
+        }
+    }
+
+    private static final class Buffer {
+
+        private byte[] data;
+        private int size;
+
+        Buffer(int capacity) {
+            this.data = new byte[capacity];
+        }
+
+        void putByte(byte value) {
+            ensureCapacity(1);
+            data[size++] = value;
+        }
+
+        void putShort(short value) {
+            ensureCapacity(2);
+            data[size] = (byte) value;
+            data[size + 1] = (byte) (value >>> 8);
+            size += 2;
+        }
+
+        void putInt(int value) {
+            ensureCapacity(4);
+            data[size] = (byte) value;
+            data[size + 1] = (byte) (value >>> 8);
+            data[size + 2] = (byte) (value >>> 16);
+            data[size + 3] = (byte) (value >>> 24);
+            size += 4;
+        }
+
+        void putLong(long value) {
+            putInt((int) value);
+            putInt((int) (value >>> 32));
+        }
+
+        void putVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(bytes.length);
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        void putBytes(byte[] bytes, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(bytes, off, data, size, len);
+            size += len;
+        }
+
+        void putZeros(int len) {
+            ensureCapacity(len);
+            Arrays.fill(data, size, size + len, (byte) 0);
+            size += len;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(data, 0, size);
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        private void ensureCapacity(int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+        }
+    }
+}
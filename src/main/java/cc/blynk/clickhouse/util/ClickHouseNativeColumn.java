@@ -0,0 +1,471 @@
+package cc.blynk.clickhouse.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Values of one column of {@link ClickHouseNativeBlock}, decoded into primitive vectors:
+ * <ul>
+ *     <li>integers, Date (days), DateTime (seconds), Enum (codes) and Decimal32, Decimal64 (unscaled)
+ *     are in {@link #getLongs()}, unsigned values are zero extended, UInt64 keeps its bits</li>
+ *     <li>Float32 and Float64 are in {@link #getDoubles()}</li>
+ *     <li>String values are in {@link #getData()}, value <code>i</code> is between
+ *     <code>offsets[i]</code> and <code>offsets[i + 1]</code> of {@link #getOffsets()}</li>
+ *     <li>FixedString, UUID and Decimal128 values are in {@link #getData()}, {@link #getWidth()} bytes each,
+ *     as they are sent by the server</li>
+ *     <li>Array elements are in the {@link #getElements()} column, elements of row <code>i</code> are between
+ *     <code>offsets[i]</code> and <code>offsets[i + 1]</code> of {@link #getArrayOffsets()}</li>
+ * </ul>
+ * Nullable columns have {@link #getNullMap()} with <code>1</code> for null values,
+ * the vector has the default value for them.
+ * <p>
+ * The vectors may be longer than the number of rows, they are reused by the next block.
+ */
+public final class ClickHouseNativeColumn {
+
+    enum Kind {
+        LONG, DOUBLE, FIXED, STRING, ARRAY
+    }
+
+    private static final long[] EMPTY_LONGS = {};
+    private static final double[] EMPTY_DOUBLES = {};
+    private static final byte[] EMPTY_BYTES = {};
+    private static final int[] EMPTY_OFFSETS = {0};
+
+    private final String name;
+    private final String type;
+    private final String family;
+    final Kind kind;
+    final int width;
+    final boolean unsigned;
+    final boolean nullable;
+    private final boolean decimal;
+    private final int scale;
+    private final String[] enumNames;
+    private final int enumMin;
+    final ClickHouseNativeColumn elements;
+
+    int rows;
+    long[] longs = EMPTY_LONGS;
+    double[] doubles = EMPTY_DOUBLES;
+    byte[] data = EMPTY_BYTES;
+    int[] offsets = EMPTY_OFFSETS;
+    byte[] nullMap = EMPTY_BYTES;
+
+    private ClickHouseNativeColumn(String name, String type, String family, Kind kind, int width,
+                                   boolean unsigned, boolean nullable, int scale, String[] enumNames, int enumMin,
+                                   ClickHouseNativeColumn elements) {
+        this.name = name;
+        this.type = type;
+        this.family = family;
+        this.kind = kind;
+        this.width = width;
+        this.unsigned = unsigned;
+        this.nullable = nullable;
+        this.decimal = family.startsWith("Decimal");
+        this.scale = scale;
+        this.enumNames = enumNames;
+        this.enumMin = enumMin;
+        this.elements = elements;
+    }
+
+    /**
+     * @throws IllegalArgumentException for the types that can't be decoded
+     */
+    static ClickHouseNativeColumn of(String name, String type) {
+        return of(name, type, false);
+    }
+
+    /**
+     * @param plainLowCardinality LowCardinality(T) is decoded as T, row formats send it without the dictionary
+     * @throws IllegalArgumentException for the types that can't be decoded
+     */
+    static ClickHouseNativeColumn of(String name, String type, boolean plainLowCardinality) {
+        boolean nullable = false;
+        String base = type;
+        if (plainLowCardinality && base.startsWith("LowCardinality(") && base.endsWith(")")) {
+            base = base.substring("LowCardinality(".length(), base.length() - 1);
+        }
+        if (base.startsWith("Nullable(") && base.endsWith(")")) {
+            nullable = true;
+            base = base.substring("Nullable(".length(), base.length() - 1);
+        }
+        if (!nullable && base.startsWith("Array(") && base.endsWith(")")) {
+            ClickHouseNativeColumn elements = of(name, base.substring("Array(".length(), base.length() - 1),
+                    plainLowCardinality);
+            return new ClickHouseNativeColumn(name, type, "Array", Kind.ARRAY, 8, false, false, 0, null, 0,
+                    elements);
+        }
+
+        int argsStart = base.indexOf('(');
+        String family = argsStart < 0 ? base : base.substring(0, argsStart);
+        switch (family) {
+            case "Int8":
+            case "UInt8":
+            case "Int16":
+            case "UInt16":
+            case "Int32":
+            case "UInt32":
+            case "Int64":
+            case "UInt64":
+                int bits = Integer.parseInt(family.substring(family.indexOf("Int") + 3));
+                return number(name, type, family, Kind.LONG, bits / 8, family.startsWith("U"), nullable, 0);
+            case "Date":
+                return number(name, type, family, Kind.LONG, 2, true, nullable, 0);
+            case "DateTime":
+                return number(name, type, family, Kind.LONG, 4, true, nullable, 0);
+            case "Float32":
+                return number(name, type, family, Kind.DOUBLE, 4, false, nullable, 0);
+            case "Float64":
+                return number(name, type, family, Kind.DOUBLE, 8, false, nullable, 0);
+            case "Decimal32":
+                return decimal(name, type, family, 4, nullable, Integer.parseInt(args(base, argsStart)[0]));
+            case "Decimal64":
+                return decimal(name, type, family, 8, nullable, Integer.parseInt(args(base, argsStart)[0]));
+            case "Decimal128":
+                return decimal(name, type, family, 16, nullable, Integer.parseInt(args(base, argsStart)[0]));
+            case "Decimal":
+                if (argsStart > 0) {
+                    String[] args = args(base, argsStart);
+                    int precision = Integer.parseInt(args[0]);
+                    int width = precision <= 9 ? 4 : precision <= 18 ? 8 : 16;
+                    return decimal(name, type, family, width, nullable, Integer.parseInt(args[1]));
+                }
+                break;
+            case "Enum8":
+            case "Enum16":
+                if (argsStart > 0) {
+                    int width = "Enum8".equals(family) ? 1 : 2;
+                    return enumeration(name, type, family, width, nullable, base, argsStart);
+                }
+                break;
+            case "UUID":
+                return number(name, type, family, Kind.FIXED, 16, false, nullable, 0);
+            case "FixedString":
+                if (argsStart > 0) {
+                    int width = Integer.parseInt(args(base, argsStart)[0]);
+                    return number(name, type, family, Kind.FIXED, width, false, nullable, 0);
+                }
+                break;
+            case "String":
+                return number(name, type, family, Kind.STRING, 0, false, nullable, 0);
+            case "Nothing":
+                //type of NULL literal, UInt8 zeros
+                return number(name, type, family, Kind.LONG, 1, true, nullable, 0);
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Unsupported Native column type " + type);
+    }
+
+    private static ClickHouseNativeColumn number(String name, String type, String family, Kind kind, int width,
+                                                 boolean unsigned, boolean nullable, int scale) {
+        return new ClickHouseNativeColumn(name, type, family, kind, width, unsigned, nullable, scale, null, 0, null);
+    }
+
+    private static ClickHouseNativeColumn decimal(String name, String type, String family, int width,
+                                                  boolean nullable, int scale) {
+        return number(name, type, family, width == 16 ? Kind.FIXED : Kind.LONG, width, false, nullable, scale);
+    }
+
+    //Enum8('a' = 1, 'b\'s' = 2), names are looked up by code - min code
+    private static ClickHouseNativeColumn enumeration(String name, String type, String family, int width,
+                                                      boolean nullable, String base, int argsStart) {
+        List<String> values = new ArrayList<>();
+        List<Integer> codes = new ArrayList<>();
+        int i = argsStart + 1;
+        while (i < base.length() && base.charAt(i) != ')') {
+            StringBuilder value = new StringBuilder();
+            i = base.indexOf('\'', i) + 1;
+            while (base.charAt(i) != '\'') {
+                if (base.charAt(i) == '\\') {
+                    i++;
+                }
+                value.append(base.charAt(i++));
+            }
+            int codeStart = base.indexOf('=', i) + 1;
+            int codeEnd = codeStart;
+            while (codeEnd < base.length() && base.charAt(codeEnd) != ',' && base.charAt(codeEnd) != ')') {
+                codeEnd++;
+            }
+            values.add(value.toString());
+            codes.add(Integer.parseInt(base.substring(codeStart, codeEnd).trim()));
+            i = codeEnd == base.length() || base.charAt(codeEnd) == ')' ? codeEnd : codeEnd + 1;
+        }
+        int min = codes.isEmpty() ? 0 : Collections.min(codes);
+        int max = codes.isEmpty() ? 0 : Collections.max(codes);
+        String[] names = new String[max - min + 1];
+        for (int j = 0; j < codes.size(); j++) {
+            names[codes.get(j) - min] = values.get(j);
+        }
+        return new ClickHouseNativeColumn(name, type, family, Kind.LONG, width, false, nullable, 0, names, min,
+                null);
+    }
+
+    private static String[] args(String type, int argsStart) {
+        return type.substring(argsStart + 1, type.lastIndexOf(')')).trim().split("\\s*,\\s*");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return size of the FixedString, UUID and Decimal values in bytes
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public boolean isNull(int row) {
+        return nullable && nullMap[row] != 0;
+    }
+
+    public long[] getLongs() {
+        return longs;
+    }
+
+    public double[] getDoubles() {
+        return doubles;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public byte[] getNullMap() {
+        return nullMap;
+    }
+
+    public int[] getArrayOffsets() {
+        return offsets;
+    }
+
+    public ClickHouseNativeColumn getElements() {
+        return elements;
+    }
+
+    public boolean isArray() {
+        return kind == Kind.ARRAY;
+    }
+
+    /**
+     * String values are parsed, nulls are <code>0</code>.
+     */
+    public long getLong(int row) {
+        switch (kind) {
+            case LONG:
+                return decimal ? BigDecimal.valueOf(longs[row], scale).longValue() : longs[row];
+            case DOUBLE:
+                return (long) doubles[row];
+            case STRING:
+                return isNull(row) ? 0 : Long.parseLong(getString(row));
+            case FIXED:
+                if (decimal) {
+                    return isNull(row) ? 0 : getBigDecimal(row).longValue();
+                }
+                throw unsupported("long");
+            default:
+                throw unsupported("long");
+        }
+    }
+
+    public double getDouble(int row) {
+        switch (kind) {
+            case DOUBLE:
+                return doubles[row];
+            case LONG:
+                if (decimal) {
+                    return BigDecimal.valueOf(longs[row], scale).doubleValue();
+                }
+                return unsigned && longs[row] < 0 ? toUnsigned(longs[row]).doubleValue() : longs[row];
+            case STRING:
+                return isNull(row) ? 0 : Double.parseDouble(getString(row));
+            case FIXED:
+                if (decimal) {
+                    return isNull(row) ? 0 : getBigDecimal(row).doubleValue();
+                }
+                throw unsupported("double");
+            default:
+                throw unsupported("double");
+        }
+    }
+
+    public BigDecimal getBigDecimal(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        switch (kind) {
+            case LONG:
+                if (unsigned && longs[row] < 0) {
+                    return new BigDecimal(toUnsigned(longs[row]));
+                }
+                return BigDecimal.valueOf(longs[row], scale);
+            case DOUBLE:
+                return BigDecimal.valueOf(doubles[row]);
+            case FIXED:
+                if (decimal) {
+                    return new BigDecimal(new BigInteger(reversed(row)), scale);
+                }
+                throw unsupported("BigDecimal");
+            case STRING:
+                return new BigDecimal(getString(row));
+            default:
+                throw unsupported("BigDecimal");
+        }
+    }
+
+    public UUID getUUID(int row) {
+        if (!"UUID".equals(family)) {
+            throw unsupported("UUID");
+        }
+        if (isNull(row)) {
+            return null;
+        }
+        int start = row * 16;
+        return new UUID(littleEndianLong(data, start), littleEndianLong(data, start + 8));
+    }
+
+    /**
+     * @return copy of String and FixedString value
+     */
+    public byte[] getBytes(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        switch (kind) {
+            case STRING:
+                byte[] bytes = new byte[offsets[row + 1] - offsets[row]];
+                System.arraycopy(data, offsets[row], bytes, 0, bytes.length);
+                return bytes;
+            case FIXED:
+                bytes = new byte[width];
+                System.arraycopy(data, row * width, bytes, 0, width);
+                return bytes;
+            default:
+                throw unsupported("bytes");
+        }
+    }
+
+    /**
+     * Same as {@link #getString(int)}, String values are taken from the dictionary when it is not null.
+     */
+    public String getString(int row, ClickHouseStringDictionary dictionary) {
+        if (dictionary == null || kind != Kind.STRING || isNull(row)) {
+            return getString(row);
+        }
+        return dictionary.get(data, offsets[row], offsets[row + 1] - offsets[row]);
+    }
+
+    /**
+     * Date and DateTime values are returned as days and seconds, the time zone is up to the caller.
+     */
+    public String getString(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        switch (kind) {
+            case STRING:
+                return ClickHouseStringDictionary.decode(data, offsets[row], offsets[row + 1] - offsets[row]);
+            case LONG:
+                if (enumNames != null) {
+                    return enumNames[(int) longs[row] - enumMin];
+                }
+                if (decimal) {
+                    return getBigDecimal(row).toPlainString();
+                }
+                return unsigned ? Long.toUnsignedString(longs[row]) : Long.toString(longs[row]);
+            case DOUBLE:
+                return formatFloat(doubles[row], width == 4);
+            case FIXED:
+                if (decimal) {
+                    return getBigDecimal(row).toPlainString();
+                }
+                if ("UUID".equals(family)) {
+                    return getUUID(row).toString();
+                }
+                return new String(data, row * width, width, UTF_8);
+            default:
+                throw unsupported("String");
+        }
+    }
+
+    /**
+     * Same text as the server writes: the shortest digits, "1" rather than "1.0", plain notation for
+     * the exponents from -6 to 20, "inf", "-inf" and "nan".
+     */
+    static String formatFloat(double value, boolean single) {
+        if (Double.isNaN(value)) {
+            return "nan";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "inf" : "-inf";
+        }
+        if (value == 0) {
+            return 1 / value > 0 ? "0" : "-0";
+        }
+        BigDecimal digits = new BigDecimal(single ? Float.toString((float) value) : Double.toString(value))
+                .stripTrailingZeros();
+        int exponent = digits.precision() - digits.scale() - 1;
+        if (exponent >= -6 && exponent <= 20) {
+            return digits.toPlainString();
+        }
+        String unscaled = digits.unscaledValue().abs().toString();
+        StringBuilder result = new StringBuilder(unscaled.length() + 8);
+        if (value < 0) {
+            result.append('-');
+        }
+        result.append(unscaled.charAt(0));
+        if (unscaled.length() > 1) {
+            result.append('.').append(unscaled, 1, unscaled.length());
+        }
+        return result.append('e').append(exponent).toString();
+    }
+
+    private byte[] reversed(int row) {
+        byte[] bigEndian = new byte[width];
+        int start = row * width;
+        for (int i = 0; i < width; i++) {
+            bigEndian[i] = data[start + width - 1 - i];
+        }
+        return bigEndian;
+    }
+
+    private static long littleEndianLong(byte[] bytes, int start) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[start + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static BigInteger toUnsigned(long value) {
+        return new BigInteger(Long.toUnsignedString(value));
+    }
+
+    private IllegalStateException unsupported(String valueType) {
+        return new IllegalStateException("Column " + name + " of type " + type + " can't be read as " + valueType);
+    }
+}
@@ -0,0 +1,9 @@
+package cc.blynk.clickhouse.util;
+
+import java.io.IOException;
+
+public interface ClickHouseNativeStreamCallback {
+
+    void writeTo(ClickHouseNativeBlockWriter writer) throws IOException;
+
+}
@@ -0,0 +1,192 @@
+package cc.blynk.clickhouse.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Same output as {@link ClickHouseLZ4OutputStream}, but full blocks are compressed and checksummed
+ * on a worker pool while the writer keeps filling the next block. Compressed blocks are written
+ * to the underlying stream in order, by the writing thread only.
+ * At most <code>2 * parallelism</code> blocks are in flight, when all of them are busy
+ * the writer waits for the oldest one, so memory stays bounded whatever the payload size.
+ * At most <code>parallelism</code> of them are compressed at once, so a stream never occupies
+ * more workers of the shared pool than that.
+ * Not thread safe, as any other stream.
+ */
+public final class ClickHouseParallelLZ4OutputStream extends OutputStream {
+
+    private final OutputStream stream;
+    private final int maxCompressBlockSize;
+    private final int maxInFlight;
+    private final Executor executor;
+    private final ClickHouseCompression compression;
+    private final int level;
+
+    //blocks in the order they were filled, the oldest is written first
+    private final ArrayDeque<Block> inFlight = new ArrayDeque<>();
+    private final ArrayDeque<Block> free = new ArrayDeque<>();
+    private int created;
+
+    //blocks are compressed one after another within a lane, blocks are assigned to the lanes in turn
+    private final CompletableFuture<?>[] lanes;
+    private int nextLane;
+
+    private Block current;
+
+    public ClickHouseParallelLZ4OutputStream(OutputStream stream, int maxCompressBlockSize, int parallelism) {
+        this(stream, maxCompressBlockSize, parallelism, ClickHouseCompression.LZ4, 0);
+    }
+
+    /**
+     * @param level compression level, <code>0</code> is the default level of the method
+     */
+    public ClickHouseParallelLZ4OutputStream(OutputStream stream, int maxCompressBlockSize, int parallelism,
+                                             ClickHouseCompression compression, int level) {
+        this(stream, maxCompressBlockSize, parallelism, compression, level, Utils.workerPool());
+    }
+
+    public ClickHouseParallelLZ4OutputStream(OutputStream stream, int maxCompressBlockSize, int parallelism,
+                                             ClickHouseCompression compression, int level, Executor executor) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism should be positive, but is " + parallelism);
+        }
+        this.stream = stream;
+        this.maxCompressBlockSize = maxCompressBlockSize;
+        this.maxInFlight = parallelism * 2;
+        this.lanes = new CompletableFuture<?>[parallelism];
+        this.executor = executor;
+        this.compression = compression;
+        this.level = level;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        Block block = currentBlock();
+        block.data[block.length++] = (byte) b;
+
+        if (block.length == maxCompressBlockSize) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            Block block = currentBlock();
+            int toCopy = Math.min(len, maxCompressBlockSize - block.length);
+            System.arraycopy(b, off, block.data, block.length, toCopy);
+            block.length += toCopy;
+            off += toCopy;
+            len -= toCopy;
+
+            if (block.length == maxCompressBlockSize) {
+                submit();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (current != null && current.length != 0) {
+            submit();
+        }
+        while (!inFlight.isEmpty()) {
+            writeOldest();
+        }
+        stream.flush();
+    }
+
+    /**
+     * Like {@link ClickHouseLZ4OutputStream#close()} doesn't flush and doesn't close the underlying stream.
+     * Blocks that are not written yet are dropped once their compression is over,
+     * so no worker is busy with the stream after it is closed.
+     */
+    @Override
+    public void close() {
+        for (Block block : inFlight) {
+            block.compressed.handle((ignored, e) -> null).join();
+        }
+        inFlight.clear();
+        Arrays.fill(lanes, null);
+        free.clear();
+        current = null;
+    }
+
+    private Block currentBlock() throws IOException {
+        if (current == null) {
+            current = nextFreeBlock();
+        }
+        return current;
+    }
+
+    private Block nextFreeBlock() throws IOException {
+        Block block = free.pollFirst();
+        if (block != null) {
+            return block;
+        }
+        if (created < maxInFlight) {
+            created++;
+            return new Block(maxCompressBlockSize, new ClickHouseBlockCodec(compression, level));
+        }
+        writeOldest();
+        return free.removeFirst();
+    }
+
+    private void submit() throws IOException {
+        Block block = current;
+        current = null;
+        CompletableFuture<?> previous = lanes[nextLane];
+        block.compressed = previous == null || previous.isDone()
+                ? CompletableFuture.runAsync(block::compress, executor)
+                : previous.handle((ignored, e) -> null).thenRunAsync(block::compress, executor);
+        lanes[nextLane] = block.compressed;
+        nextLane = (nextLane + 1) % lanes.length;
+        inFlight.addLast(block);
+
+        //keeps the network busy while the writer fills the next block
+        while (!inFlight.isEmpty() && inFlight.peekFirst().compressed.isDone()) {
+            writeOldest();
+        }
+    }
+
+    private void writeOldest() throws IOException {
+        Block block = inFlight.removeFirst();
+        try {
+            block.compressed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the block compression");
+        } catch (ExecutionException e) {
+            throw new IOException("Block compression failed", e.getCause());
+        }
+        stream.write(block.codec.block(), 0, block.compressedSize);
+        block.length = 0;
+        block.compressed = null;
+        free.addLast(block);
+    }
+
+    private static final class Block {
+
+        private final byte[] data;
+        private final ClickHouseBlockCodec codec;
+        private int length;
+        private int compressedSize;
+        private CompletableFuture<Void> compressed;
+
+        Block(int size, ClickHouseBlockCodec codec) {
+            this.data = new byte[size];
+            this.codec = codec;
+        }
+
+        //runs on the worker, the fields are published to the writer by the future completion
+        void compress() {
+            compressedSize = codec.compress(data, 0, length);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package cc.blynk.clickhouse.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Same data as {@link ClickHouseLZ4InputStream}, but a background task keeps the next blocks
+ * read from the network, checksum verified and decompressed, so parsing of the rows
+ * overlaps with the IO and the decompression.
+ * The task holds up to <code>blocks</code> decompressed blocks ahead of the reader,
+ * block buffers are reused, so the memory is bounded by <code>blocks + 1</code>
+ * compressed and decompressed blocks.
+ * Waits of the reader are counted in {@link #getStats()}.
+ */
+public final class ClickHouseReadAheadLZ4InputStream extends InputStream {
+
+    private static final ClickHouseReadAheadStats globalStats = new ClickHouseReadAheadStats();
+    private static final Block END = new Block((ClickHouseBlockCodec) null);
+
+    private final InputStream stream;
+    private final ClickHouseReadAheadStats stats;
+    //decompressed blocks in the stream order, followed by END or the failure
+    private final BlockingQueue<Block> ready;
+    private final BlockingQueue<Block> free;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    //guarded by this, the task thread is interrupted and its stream is closed on close only while it reads ahead
+    private Thread worker;
+    private boolean closed;
+
+    private Block current;
+    private int pointer;
+    private boolean eof;
+
+    public ClickHouseReadAheadLZ4InputStream(InputStream stream, int blocks) {
+        this(stream, blocks, Utils.workerPool(), globalStats);
+    }
+
+    ClickHouseReadAheadLZ4InputStream(InputStream stream, int blocks,
+                                      Executor executor, ClickHouseReadAheadStats stats) {
+        if (blocks < 1) {
+            throw new IllegalArgumentException("blocks should be positive, but is " + blocks);
+        }
+        this.stream = stream;
+        this.stats = stats;
+        //one more block is kept by the reader, and one more place is left for END
+        this.free = new ArrayBlockingQueue<>(blocks + 1);
+        this.ready = new ArrayBlockingQueue<>(blocks + 2);
+        for (int i = 0; i <= blocks; i++) {
+            free.add(new Block(new ClickHouseBlockCodec()));
+        }
+        executor.execute(this::readAhead);
+    }
+
+    /**
+     * @return counters of all the read-ahead streams
+     */
+    public static ClickHouseReadAheadStats getStats() {
+        return globalStats;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!checkNext()) {
+            return -1;
+        }
+        return current.codec.decompressed()[pointer++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+
+        if (!checkNext()) {
+            return -1;
+        }
+        int read = Math.min(len, current.length - pointer);
+        System.arraycopy(current.codec.decompressed(), pointer, b, off, read);
+        pointer += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - pointer;
+    }
+
+    /**
+     * Stops the read-ahead and closes the underlying stream. A task blocked in a socket read doesn't see
+     * the interrupt, so while the task runs the stream is closed under it to fail that read, and the close
+     * waits for the task to stop before the buffers are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean running;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = worker != null;
+            if (running) {
+                worker.interrupt();
+            }
+        }
+        try {
+            if (running) {
+                stream.close();
+            }
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping the read-ahead");
+        } finally {
+            current = null;
+            ready.clear();
+            free.clear();
+        }
+        if (!running) {
+            stream.close();
+        }
+    }
+
+    private boolean checkNext() throws IOException {
+        while (current == null || pointer == current.length) {
+            if (eof) {
+                return false;
+            }
+            if (current != null) {
+                free.add(current);
+                current = null;
+            }
+            Block block = nextReady();
+            if (block == END) {
+                eof = true;
+                return false;
+            }
+            if (block.failure != null) {
+                eof = true;
+                throw rethrow(block.failure);
+            }
+            stats.onBlock();
+            current = block;
+            pointer = 0;
+        }
+        return true;
+    }
+
+    private Block nextReady() throws IOException {
+        Block block = ready.poll();
+        if (block != null) {
+            return block;
+        }
+        long start = System.nanoTime();
+        try {
+            block = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next block");
+        }
+        stats.onStall(System.nanoTime() - start);
+        return block;
+    }
+
+    private void readAhead() {
+        synchronized (this) {
+            if (closed) {
+                finished.countDown();
+                return;
+            }
+            worker = Thread.currentThread();
+        }
+        try {
+            while (true) {
+                Block block = free.take();
+                int size = block.codec.decompress(stream);
+                if (size < 0) {
+                    ready.add(END);
+                    return;
+                }
+                block.length = size;
+                ready.add(block);
+            }
+        } catch (InterruptedException e) {
+            //closed by the reader
+        } catch (Exception e) {
+            ready.add(new Block(e));
+        } finally {
+            synchronized (this) {
+                worker = null;
+            }
+            //the pool thread must not keep the interrupt of the close
+            Thread.interrupted();
+            finished.countDown();
+        }
+    }
+
+    //failure happened on another thread, so the reader stack is kept as well
+    private static IOException rethrow(Exception failure) {
+        if (failure instanceof IllegalArgumentException) {
+            throw new IllegalArgumentException(failure.getMessage(), failure);
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        return new IOException(failure.getMessage(), failure);
+    }
+
+    private static final class Block {
+
+        private final ClickHouseBlockCodec codec;
+        private final Exception failure;
+        private int length;
+
+        Block(ClickHouseBlockCodec codec) {
+            this.codec = codec;
+            this.failure = null;
+        }
+
+        Block(Exception failure) {
+            this.codec = null;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cc.blynk.clickhouse.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the read-ahead decompression of the compressed responses.
+ * A stall is a read that found no decompressed block ready and had to wait
+ * for the network or the decompression. <code>stalls</code> close to
+ * <code>blocks</code> means the reader is faster than the read-ahead,
+ * so more blocks ahead won't help.
+ */
+public final class ClickHouseReadAheadStats {
+
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+
+    ClickHouseReadAheadStats() {
+    }
+
+    void onBlock() {
+        blocks.increment();
+    }
+
+    void onStall(long nanos) {
+        stalls.increment();
+        stallNanos.add(nanos);
+    }
+
+    /**
+     * @return number of decompressed blocks handed to the readers
+     */
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    /**
+     * @return number of times a reader waited for the next block
+     */
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    public long getStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stallNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "ClickHouseReadAheadStats{"
+                + "blocks=" + getBlocks()
+                + ", stalls=" + getStalls()
+                + ", stallMillis=" + getStallMillis()
+                + '}';
+    }
+}
@@ -0,0 +1,223 @@
+package cc.blynk.clickhouse.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reader of the RowBinaryWithNamesAndTypes format. Rows are decoded straight into the primitive vectors
+ * of {@link ClickHouseNativeColumn}, up to <code>blockRows</code> rows per block, so the result is
+ * consumed the same way as the Native one, without a String per value.
+ * <p>
+ * LowCardinality columns are sent as plain values in this format and decoded as such.
+ */
+public final class ClickHouseRowBinaryBlockReader extends ClickHouseBlockReader {
+
+    private final int blockRows;
+    private boolean headerRead;
+
+    public ClickHouseRowBinaryBlockReader(InputStream in, int bufferSize, int blockRows) {
+        super(in, bufferSize);
+        if (blockRows < 1) {
+            throw new IllegalArgumentException("blockRows should be positive, but is " + blockRows);
+        }
+        this.blockRows = blockRows;
+    }
+
+    /**
+     * The first block has the columns even when there are no rows.
+     */
+    @Override
+    public ClickHouseNativeBlock readBlock() throws IOException {
+        if (!headerRead) {
+            headerRead = true;
+            if (isEnd()) {
+                return null;
+            }
+            readHeader();
+        } else if (isEnd()) {
+            return null;
+        }
+        ClickHouseNativeColumn[] columns = block.columns;
+        for (ClickHouseNativeColumn column : columns) {
+            reserve(column, blockRows);
+        }
+        int rows = 0;
+        while (rows < blockRows && !isEnd()) {
+            for (ClickHouseNativeColumn column : columns) {
+                readValue(column, rows);
+            }
+            rows++;
+        }
+        for (ClickHouseNativeColumn column : columns) {
+            column.rows = rows;
+        }
+        block.rows = rows;
+        return block;
+    }
+
+    private void readHeader() throws IOException {
+        int columnCount = readSize();
+        String[] names = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = readString();
+        }
+        ClickHouseNativeColumn[] columns = new ClickHouseNativeColumn[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = column(names[i], readString(), true);
+        }
+        block.columns = columns;
+    }
+
+    //top level vectors are sized once per block, the array elements grow while they are read
+    private static void reserve(ClickHouseNativeColumn column, int rows) {
+        if (column.nullable) {
+            column.nullMap = ensureCapacity(column.nullMap, rows);
+        }
+        switch (column.kind) {
+            case LONG:
+                if (column.longs.length < rows) {
+                    column.longs = new long[rows];
+                }
+                break;
+            case DOUBLE:
+                if (column.doubles.length < rows) {
+                    column.doubles = new double[rows];
+                }
+                break;
+            case FIXED:
+                column.data = ensureCapacity(column.data, rows * column.width);
+                break;
+            default:
+                column.offsets = ensureCapacity(column.offsets, rows + 1);
+                break;
+        }
+    }
+
+    private void readValue(ClickHouseNativeColumn column, int row) throws IOException {
+        if (column.nullable) {
+            byte isNull = readByte();
+            column.nullMap[row] = isNull;
+            if (isNull != 0) {
+                writeDefault(column, row);
+                return;
+            }
+        }
+        switch (column.kind) {
+            case LONG:
+                column.longs[row] = readLong(column.width, column.unsigned);
+                break;
+            case DOUBLE:
+                column.doubles[row] = column.width == 4
+                        ? Float.intBitsToFloat((int) readLong(4, false))
+                        : Double.longBitsToDouble(readLong(8, false));
+                break;
+            case FIXED:
+                readFully(column.data, row * column.width, column.width);
+                break;
+            case STRING:
+                int start = column.offsets[row];
+                int length = readSize();
+                column.data = ensureCapacity(column.data, start + length);
+                readFully(column.data, start, length);
+                column.offsets[row + 1] = start + length;
+                break;
+            case ARRAY:
+                readArray(column, row);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void readArray(ClickHouseNativeColumn column, int row) throws IOException {
+        ClickHouseNativeColumn elements = column.elements;
+        int start = column.offsets[row];
+        int size = readSize();
+        if (start + (long) size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Array of column " + column.getName() + " is too large");
+        }
+        int end = start + size;
+        reserveElements(elements, end);
+        for (int i = start; i < end; i++) {
+            readValue(elements, i);
+        }
+        elements.rows = end;
+        column.offsets[row + 1] = end;
+    }
+
+    //unlike reserve() keeps the elements of the previous rows of the block
+    private static void reserveElements(ClickHouseNativeColumn column, int rows) {
+        if (column.nullable) {
+            column.nullMap = ensureCapacity(column.nullMap, rows);
+        }
+        switch (column.kind) {
+            case LONG:
+                if (column.longs.length < rows) {
+                    column.longs = Arrays.copyOf(column.longs, grow(column.longs.length, rows));
+                }
+                break;
+            case DOUBLE:
+                if (column.doubles.length < rows) {
+                    column.doubles = Arrays.copyOf(column.doubles, grow(column.doubles.length, rows));
+                }
+                break;
+            case FIXED:
+                column.data = ensureCapacity(column.data, rows * column.width);
+                break;
+            default:
+                if (column.offsets.length < rows + 1) {
+                    column.offsets = Arrays.copyOf(column.offsets, grow(column.offsets.length, rows + 1));
+                }
+                break;
+        }
+    }
+
+    private static void writeDefault(ClickHouseNativeColumn column, int row) {
+        switch (column.kind) {
+            case LONG:
+                column.longs[row] = 0;
+                break;
+            case DOUBLE:
+                column.doubles[row] = 0;
+                break;
+            case FIXED:
+                Arrays.fill(column.data, row * column.width, (row + 1) * column.width, (byte) 0);
+                break;
+            default:
+                column.offsets[row + 1] = column.offsets[row];
+                break;
+        }
+    }
+
+    private byte readByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException();
+        }
+        return buffer[position++];
+    }
+
+    //little endian, sign extended unless unsigned
+    private long readLong(int width, boolean unsigned) throws IOException {
+        byte[] bytes = buffer;
+        int start = position;
+        if (limit - position >= width) {
+            position += width;
+        } else {
+            scratch = ensureCapacity(scratch, width);
+            readFully(scratch, 0, width);
+            bytes = scratch;
+            start = 0;
+        }
+        long value = 0;
+        for (int i = width - 1; i >= 0; i--) {
+            value = value << 8 | bytes[start + i] & 0xFF;
+        }
+        if (!unsigned && width < 8) {
+            int shift = 64 - width * 8;
+            value = value << shift >> shift;
+        }
+        return value;
+    }
+}
@@ -1,7 +1,6 @@
 package cc.blynk.clickhouse.util;
 
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
-import cc.blynk.clickhouse.util.guava.LittleEndianDataInputStream;
 
 import java.io.Closeable;
 import java.io.EOFException;
@@ -18,13 +17,22 @@ import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * Reads RowBinary values from a little endian buffer refilled from the stream. The primitive arrays are copied
+ * from the buffer in bulk, {@link #hasNext()} tells the end of the stream without an {@link EOFException}.
+ */
 public final class ClickHouseRowBinaryInputStream implements Closeable {
 
-    private final LittleEndianDataInputStream in;
+    private static final int BUFFER_SIZE = 65536;
+
+    private final InputStream in;
+    // bytes between the position and the limit are read from the stream and not consumed yet
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
     private final TimeZone timeZone;
 
     public ClickHouseRowBinaryInputStream(InputStream is, TimeZone timeZone, ClickHouseProperties properties) {
-        this.in = new LittleEndianDataInputStream(is);
+        this.in = is;
+        buffer.limit(0);
         if (properties.isUseServerTimeZoneForDates()) {
             this.timeZone = timeZone;
         } else {
@@ -32,12 +40,43 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
         }
     }
 
+    /**
+     * @return number of the bytes, which can be read without blocking
+     */
+    public int remaining() throws IOException {
+        return buffer.remaining() + in.available();
+    }
+
+    /**
+     * Blocks until there is one more byte or the stream ends.
+     *
+     * @return false at the end of the stream
+     */
+    public boolean hasNext() throws IOException {
+        return buffer.hasRemaining() || fill(1);
+    }
+
     public int readUnsignedLeb128() throws IOException {
+        if (buffer.remaining() >= 5) {
+            // the whole value is in the buffer
+            byte[] array = buffer.array();
+            int position = buffer.position();
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int read = array[position++];
+                value |= (read & 0x7f) << shift;
+                if (read >= 0) {
+                    buffer.position(position);
+                    return value;
+                }
+            }
+            throw new IOException("invalid LEB128 sequence");
+        }
         int value = 0;
         int read;
         int count = 0;
         do {
-            read = in.readByte() & 0xff;
+            read = readInt8() & 0xff;
             value |= (read & 0x7f) << (count * 7);
             count++;
         } while (((read & 0x80) == 0x80) && count < 5);
@@ -53,18 +92,34 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     }
 
     public void readBytes(byte[] bytes, int offset, int length) throws IOException {
-        while (length > 0) {
-            int read = in.read(bytes, offset, length);
-            if (read == -1) {
-                throw new EOFException();
+        int buffered = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, buffered);
+        offset += buffered;
+        length -= buffered;
+        if (length >= buffer.capacity()) {
+            // large values skip the buffer
+            while (length > 0) {
+                int read = in.read(bytes, offset, length);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                offset += read;
+                length -= read;
             }
-            offset += read;
-            length -= read;
+        } else if (length > 0) {
+            require(length);
+            buffer.get(bytes, offset, length);
         }
     }
 
+    /**
+     * @return next byte as an unsigned value or -1 at the end of the stream
+     */
     public int readByte() throws IOException {
-        return in.read();
+        if (!hasNext()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
     }
 
     public boolean readIsNull() throws IOException {
@@ -78,11 +133,29 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     }
 
     public String readString() throws IOException {
-        int length = readUnsignedLeb128();
-        byte[] bytes = new byte[length];
-        readBytes(bytes);
+        return readString(null);
+    }
 
-        return new String(bytes, UTF_8);
+    /**
+     * Reads a string decoding it straight from the buffer, the repeated values are taken from the dictionary.
+     *
+     * @param dictionary values of the column, may be null
+     * @return next String value
+     * @throws IOException in case if an I/O error occurs
+     */
+    public String readString(ClickHouseStringDictionary dictionary) throws IOException {
+        int length = readUnsignedLeb128();
+        if (length >= buffer.capacity()) {
+            byte[] bytes = new byte[length];
+            readBytes(bytes);
+            return new String(bytes, UTF_8);
+        }
+        require(length);
+        int position = buffer.position();
+        buffer.position(position + length);
+        return dictionary != null
+                ? dictionary.get(buffer.array(), position, length)
+                : ClickHouseStringDictionary.decode(buffer.array(), position, length);
     }
 
     public String readFixedString(int length) throws IOException {
@@ -105,7 +178,8 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     }
 
     public short readUInt8() throws IOException {
-        return (short) in.readUnsignedByte();
+        require(Byte.BYTES);
+        return (short) (buffer.get() & 0xff);
     }
 
     /**
@@ -115,15 +189,16 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
      * @throws IOException in case if an I/O error occurs
      */
     public byte readUInt8AsByte() throws IOException {
-        return in.readByte();
+        return readInt8();
     }
 
     public byte readInt8() throws IOException {
-        return in.readByte();
+        require(Byte.BYTES);
+        return buffer.get();
     }
 
     public int readUInt16() throws IOException {
-        return in.readUnsignedShort();
+        return readInt16() & 0xffff;
     }
 
     /**
@@ -133,15 +208,16 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
      * @throws IOException in case if an I/O error occurs
      */
     public short readUInt16AsShort() throws IOException {
-        return in.readShort();
+        return readInt16();
     }
 
     public short readInt16() throws IOException {
-        return in.readShort();
+        require(Short.BYTES);
+        return buffer.getShort();
     }
 
     public long readUInt32() throws IOException {
-        return ((long) in.readInt()) & 0xffffffffL;
+        return ((long) readInt32()) & 0xffffffffL;
     }
 
     /**
@@ -151,11 +227,12 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
      * @throws IOException in case if an I/O error occurs
      */
     public int readUInt32AsInt() throws IOException {
-        return in.readInt();
+        return readInt32();
     }
 
     public int readInt32() throws IOException {
-        return in.readInt();
+        require(Integer.BYTES);
+        return buffer.getInt();
     }
 
     public BigInteger readUInt64() throws IOException {
@@ -168,7 +245,8 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     }
 
     public long readInt64() throws IOException {
-        return in.readLong();
+        require(Long.BYTES);
+        return buffer.getLong();
     }
 
     public Timestamp readDateTime() throws IOException {
@@ -178,17 +256,17 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
 
     public Date readDate() throws IOException {
         int daysSinceEpoch = readUInt16();
-        long utcMillis = daysSinceEpoch * ClickHouseRowBinaryStream.MILLIS_IN_DAY;
-        long localMillis = utcMillis - timeZone.getOffset(utcMillis);
-        return new Date(localMillis);
+        return new Date(ClickHouseDateTimeCodec.of(timeZone).dayStartMillis(daysSinceEpoch));
     }
 
     public float readFloat32() throws IOException {
-        return in.readFloat();
+        require(Float.BYTES);
+        return buffer.getFloat();
     }
 
     public double readFloat64() throws IOException {
-        return in.readDouble();
+        require(Double.BYTES);
+        return buffer.getDouble();
     }
 
     public Date[] readDateArray() throws IOException {
@@ -224,9 +302,7 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public byte[] readInt8Array() throws IOException {
         int length = readUnsignedLeb128();
         byte[] bytes = new byte[length];
-        for (int i = 0; i < length; i++) {
-            bytes[i] = readInt8();
-        }
+        readBytes(bytes);
 
         return bytes;
     }
@@ -234,9 +310,7 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public byte[] readUInt8ArrayAsByte() throws IOException {
         int length = readUnsignedLeb128();
         byte[] bytes = new byte[length];
-        for (int i = 0; i < length; i++) {
-            bytes[i] = readUInt8AsByte();
-        }
+        readBytes(bytes);
 
         return bytes;
     }
@@ -254,8 +328,10 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public short[] readInt16Array() throws IOException {
         int length = readUnsignedLeb128();
         short[] shorts = new short[length];
-        for (int i = 0; i < length; i++) {
-            shorts[i] = readInt16();
+        for (int offset = 0, count; offset < length; offset += count) {
+            count = bulkCount(length - offset, Short.BYTES);
+            buffer.asShortBuffer().get(shorts, offset, count);
+            advance(count * Short.BYTES);
         }
 
         return shorts;
@@ -264,8 +340,10 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public short[] readUInt16ArrayAsShort() throws IOException {
         int length = readUnsignedLeb128();
         short[] shorts = new short[length];
-        for (int i = 0; i < length; i++) {
-            shorts[i] = readUInt16AsShort();
+        for (int offset = 0, count; offset < length; offset += count) {
+            count = bulkCount(length - offset, Short.BYTES);
+            buffer.asShortBuffer().get(shorts, offset, count);
+            advance(count * Short.BYTES);
         }
 
         return shorts;
@@ -284,9 +362,7 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public int[] readInt32Array() throws IOException {
         int length = readUnsignedLeb128();
         int[] ints = new int[length];
-        for (int i = 0; i < length; i++) {
-            ints[i] = readInt32();
-        }
+        readInts(ints);
 
         return ints;
     }
@@ -294,9 +370,7 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public int[] readUInt32ArrayAsInt() throws IOException {
         int length = readUnsignedLeb128();
         int[] ints = new int[length];
-        for (int i = 0; i < length; i++) {
-            ints[i] = readUInt32AsInt();
-        }
+        readInts(ints);
 
         return ints;
     }
@@ -314,8 +388,10 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public long[] readInt64Array() throws IOException {
         int length = readUnsignedLeb128();
         long[] longs = new long[length];
-        for (int i = 0; i < length; i++) {
-            longs[i] = readInt64();
+        for (int offset = 0, count; offset < length; offset += count) {
+            count = bulkCount(length - offset, Long.BYTES);
+            buffer.asLongBuffer().get(longs, offset, count);
+            advance(count * Long.BYTES);
         }
 
         return longs;
@@ -334,8 +410,10 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public float[] readFloat32Array() throws IOException {
         int length = readUnsignedLeb128();
         float[] floats = new float[length];
-        for (int i = 0; i < length; i++) {
-            floats[i] = readFloat32();
+        for (int offset = 0, count; offset < length; offset += count) {
+            count = bulkCount(length - offset, Float.BYTES);
+            buffer.asFloatBuffer().get(floats, offset, count);
+            advance(count * Float.BYTES);
         }
 
         return floats;
@@ -344,19 +422,60 @@ public final class ClickHouseRowBinaryInputStream implements Closeable {
     public double[] readFloat64Array() throws IOException {
         int length = readUnsignedLeb128();
         double[] doubles = new double[length];
-        for (int i = 0; i < length; i++) {
-            doubles[i] = readFloat64();
+        for (int offset = 0, count; offset < length; offset += count) {
+            count = bulkCount(length - offset, Double.BYTES);
+            buffer.asDoubleBuffer().get(doubles, offset, count);
+            advance(count * Double.BYTES);
         }
 
         return doubles;
     }
 
     public UUID readUUID() throws IOException {
-        byte[] array = new byte[16];
-        readBytes(array);
+        require(2 * Long.BYTES);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private void readInts(int[] ints) throws IOException {
+        for (int offset = 0, count; offset < ints.length; offset += count) {
+            count = bulkCount(ints.length - offset, Integer.BYTES);
+            buffer.asIntBuffer().get(ints, offset, count);
+            advance(count * Integer.BYTES);
+        }
+    }
+
+    // number of the elements of the width copied from the buffer at once, refills the buffer when it is short
+    private int bulkCount(int elements, int width) throws IOException {
+        require(width);
+        return Math.min(elements, buffer.remaining() / width);
+    }
+
+    // the views used for the bulk copies don't move the position of the buffer
+    private void advance(int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
 
-        ByteBuffer bb = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
-        return new UUID(bb.getLong(), bb.getLong());
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() < bytes && !fill(bytes)) {
+            throw new EOFException();
+        }
+    }
+
+    // moves the unread bytes to the start of the buffer and reads until there are at least the required bytes
+    private boolean fill(int required) throws IOException {
+        buffer.compact();
+        try {
+            while (buffer.position() < required) {
+                int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (read == -1) {
+                    return false;
+                }
+                buffer.position(buffer.position() + read);
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
     }
 
     @Override
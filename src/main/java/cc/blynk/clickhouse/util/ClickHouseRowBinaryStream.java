@@ -1,8 +1,8 @@
 package cc.blynk.clickhouse.util;
 
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
-import cc.blynk.clickhouse.util.guava.LittleEndianDataOutputStream;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
@@ -16,20 +16,38 @@ import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * Writes RowBinary values through a little endian buffer, the primitive arrays are copied to it in bulk.
+ * By default every value goes to the stream once it is written. A buffered stream, used by the driver for
+ * the inserts, keeps the values until the buffer is full, so it must be flushed with {@link #flush()}.
+ *
  * @author Dmitry Andreev <a href="mailto:AndreevDm@yandex-team.ru"></a>
  */
-public final class ClickHouseRowBinaryStream {
+public final class ClickHouseRowBinaryStream implements Flushable {
+
+    private static final int BUFFER_SIZE = 65536;
 
     private static final int U_INT8_MAX = (1 << 8) - 1;
     private static final int U_INT16_MAX = (1 << 16) - 1;
     private static final long U_INT32_MAX = (1L << 32) - 1;
     protected static final long MILLIS_IN_DAY = TimeUnit.DAYS.toMillis(1);
 
-    private final LittleEndianDataOutputStream out;
+    private final OutputStream out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
     private final TimeZone timeZone;
+    private final boolean buffered;
 
     public ClickHouseRowBinaryStream(OutputStream outputStream, TimeZone timeZone, ClickHouseProperties properties) {
-        this.out = new LittleEndianDataOutputStream(outputStream);
+        this(outputStream, timeZone, properties, false);
+    }
+
+    /**
+     * @param buffered when <code>true</code>, the values are written to the stream only when the buffer is full
+     *                 and on {@link #flush()}, which must be called once the values are written
+     */
+    public ClickHouseRowBinaryStream(OutputStream outputStream, TimeZone timeZone, ClickHouseProperties properties,
+                                     boolean buffered) {
+        this.out = outputStream;
+        this.buffered = buffered;
         if (properties.isUseServerTimeZoneForDates()) {
             this.timeZone = timeZone;
         } else {
@@ -42,13 +60,15 @@ public final class ClickHouseRowBinaryStream {
             throw new IllegalArgumentException();
         }
 
+        ensure(5);
         int remaining = value >>> 7;
         while (remaining != 0) {
-            out.write((byte) ((value & 0x7f) | 0x80));
+            buffer.put((byte) ((value & 0x7f) | 0x80));
             value = remaining;
             remaining >>>= 7;
         }
-        out.write((byte) (value & 0x7f));
+        buffer.put((byte) (value & 0x7f));
+        drainIfUnbuffered();
     }
 
     /**
@@ -58,7 +78,15 @@ public final class ClickHouseRowBinaryStream {
      * @throws IOException in case if an I/O error occurs
      */
     public void writeBytes(byte[] bytes) throws IOException {
-        out.write(bytes);
+        if (bytes.length > buffer.remaining()) {
+            drain();
+            if (bytes.length >= buffer.capacity()) {
+                out.write(bytes);
+                return;
+            }
+        }
+        buffer.put(bytes);
+        drainIfUnbuffered();
     }
 
     /**
@@ -69,14 +97,16 @@ public final class ClickHouseRowBinaryStream {
      * @throws IOException in case if an I/O error occurs
      */
     public void writeByte(byte b) throws IOException {
-        out.write(b);
+        ensure(1);
+        buffer.put(b);
+        drainIfUnbuffered();
     }
 
     public void writeString(String string) throws IOException {
         Objects.requireNonNull(string);
         byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
         writeUnsignedLeb128(bytes.length);
-        out.write(bytes);
+        writeBytes(bytes);
     }
 
     private void validateInt(int value, int minValue, int maxValue, String dataType) {
@@ -86,41 +116,45 @@ public final class ClickHouseRowBinaryStream {
     }
 
     public void writeUInt8(boolean value) throws IOException {
-        out.writeByte(value ? 1 : 0);
+        writeByte(value ? (byte) 1 : (byte) 0);
     }
 
     public void writeUInt8(int value) throws IOException {
         validateInt(value, 0, U_INT8_MAX, "UInt8");
         byte unsigned = (byte) (value & 0xffL);
-        out.writeByte(unsigned);
+        writeByte(unsigned);
     }
 
     public void writeInt8(int value) throws IOException {
         validateInt(value, Byte.MIN_VALUE, Byte.MAX_VALUE, "Int8");
-        out.writeByte(value);
+        writeByte((byte) value);
     }
 
     public void writeInt8(byte value) throws IOException {
-        out.writeByte(value);
+        writeByte(value);
     }
 
     public void writeInt16(int value) throws IOException {
         validateInt(value, Short.MIN_VALUE, Short.MAX_VALUE, "Int6");
-        out.writeShort(value);
+        writeInt16((short) value);
     }
 
     public void writeInt16(short value) throws IOException {
-        out.writeShort(value);
+        ensure(Short.BYTES);
+        buffer.putShort(value);
+        drainIfUnbuffered();
     }
 
     public void writeUInt16(int value) throws IOException {
         validateInt(value, 0, U_INT16_MAX, "UInt16");
         short unsigned = (short) (value & 0xffffL);
-        out.writeShort(unsigned);
+        writeInt16(unsigned);
     }
 
     public void writeInt32(int value) throws IOException {
-        out.writeInt(value);
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+        drainIfUnbuffered();
     }
 
     public void writeUInt32(long value) throws IOException {
@@ -128,24 +162,26 @@ public final class ClickHouseRowBinaryStream {
             throw new IllegalStateException("Not a UInt32 value: " + value);
         }
         int unsigned = (int) (value & 0xffffffffL);
-        out.writeInt(unsigned);
+        writeInt32(unsigned);
     }
 
     public void writeInt64(long value) throws IOException {
-        out.writeLong(value);
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+        drainIfUnbuffered();
     }
 
     public void writeUInt64(long value) throws IOException {
         if (value < 0) {
             throw new IllegalStateException("Not a UInt64 value: " + value);
         }
-        out.writeLong(value);
+        writeInt64(value);
     }
 
     public void writeUInt64(BigInteger value) throws IOException {
         byte[] bytes = new byte[8];
         System.arraycopy(value.toByteArray(), 1, bytes, 0, 8);
-        out.write(bytes);
+        writeBytes(bytes);
     }
 
     public void writeDateTime(Date date) throws IOException {
@@ -161,11 +197,15 @@ public final class ClickHouseRowBinaryStream {
     }
 
     public void writeFloat32(float value) throws IOException {
-        out.writeFloat(value);
+        ensure(Float.BYTES);
+        buffer.putFloat(value);
+        drainIfUnbuffered();
     }
 
     public void writeFloat64(double value) throws IOException {
-        out.writeDouble(value);
+        ensure(Double.BYTES);
+        buffer.putDouble(value);
+        drainIfUnbuffered();
     }
 
 
@@ -196,9 +236,7 @@ public final class ClickHouseRowBinaryStream {
     public void writeInt8Array(byte[] bytes) throws IOException {
         Objects.requireNonNull(bytes);
         writeUnsignedLeb128(bytes.length);
-        for (byte b: bytes) {
-            writeInt8(b);
-        }
+        writeBytes(bytes);
     }
     public void writeInt8Array(int[] ints) throws IOException {
         Objects.requireNonNull(ints);
@@ -219,9 +257,12 @@ public final class ClickHouseRowBinaryStream {
     public void writeInt16Array(short[] shorts) throws IOException {
         Objects.requireNonNull(shorts);
         writeUnsignedLeb128(shorts.length);
-        for (short s: shorts) {
-            writeInt16(s);
+        for (int offset = 0, count; offset < shorts.length; offset += count) {
+            count = bulkCount(shorts.length - offset, Short.BYTES);
+            buffer.asShortBuffer().put(shorts, offset, count);
+            advance(count * Short.BYTES);
         }
+        drainIfUnbuffered();
     }
 
     public void writeUInt16Array(int[] ints) throws IOException {
@@ -235,9 +276,12 @@ public final class ClickHouseRowBinaryStream {
     public void writeInt32Array(int[] ints) throws IOException {
         Objects.requireNonNull(ints);
         writeUnsignedLeb128(ints.length);
-        for (int i: ints) {
-            writeInt32(i);
+        for (int offset = 0, count; offset < ints.length; offset += count) {
+            count = bulkCount(ints.length - offset, Integer.BYTES);
+            buffer.asIntBuffer().put(ints, offset, count);
+            advance(count * Integer.BYTES);
         }
+        drainIfUnbuffered();
     }
 
     public void writeUInt32Array(long[] longs) throws IOException {
@@ -251,33 +295,40 @@ public final class ClickHouseRowBinaryStream {
     public void writeInt64Array(long[] longs) throws IOException {
         Objects.requireNonNull(longs);
         writeUnsignedLeb128(longs.length);
-        for (long l: longs) {
-            writeInt64(l);
-        }
+        writeLongs(longs);
     }
 
     public void writeUInt64Array(long[] longs) throws IOException {
         Objects.requireNonNull(longs);
-        writeUnsignedLeb128(longs.length);
         for (long l: longs) {
-            writeUInt64(l);
+            if (l < 0) {
+                throw new IllegalStateException("Not a UInt64 value: " + l);
+            }
         }
+        writeUnsignedLeb128(longs.length);
+        writeLongs(longs);
     }
 
     public void writeFloat32Array(float[] floats) throws IOException {
         Objects.requireNonNull(floats);
         writeUnsignedLeb128(floats.length);
-        for (float f: floats) {
-            writeFloat32(f);
+        for (int offset = 0, count; offset < floats.length; offset += count) {
+            count = bulkCount(floats.length - offset, Float.BYTES);
+            buffer.asFloatBuffer().put(floats, offset, count);
+            advance(count * Float.BYTES);
         }
+        drainIfUnbuffered();
     }
 
     public void writeFloat64Array(double[] doubles) throws IOException {
         Objects.requireNonNull(doubles);
         writeUnsignedLeb128(doubles.length);
-        for (double d: doubles) {
-            writeFloat64(d);
+        for (int offset = 0, count; offset < doubles.length; offset += count) {
+            count = bulkCount(doubles.length - offset, Double.BYTES);
+            buffer.asDoubleBuffer().put(doubles, offset, count);
+            advance(count * Double.BYTES);
         }
+        drainIfUnbuffered();
     }
 
     /** Write a marker indicating if value is nullable or not.
@@ -304,11 +355,63 @@ public final class ClickHouseRowBinaryStream {
 
     public void writeUUID(UUID uuid) throws IOException {
         Objects.requireNonNull(uuid);
-        ByteBuffer bb = ByteBuffer.wrap(new byte[16]).order(ByteOrder.LITTLE_ENDIAN);
-        bb.putLong(uuid.getMostSignificantBits());
-        bb.putLong(uuid.getLeastSignificantBits());
-        byte[] array = bb.array();
-        this.writeBytes(array);
+        ensure(2 * Long.BYTES);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        drainIfUnbuffered();
+    }
+
+    /**
+     * Writes the buffered values to the stream and flushes it.
+     *
+     * @throws IOException in case if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    private void writeLongs(long[] longs) throws IOException {
+        for (int offset = 0, count; offset < longs.length; offset += count) {
+            count = bulkCount(longs.length - offset, Long.BYTES);
+            buffer.asLongBuffer().put(longs, offset, count);
+            advance(count * Long.BYTES);
+        }
+        drainIfUnbuffered();
+    }
+
+    // number of the elements of the width copied to the buffer at once, drains the buffer when it is full
+    private int bulkCount(int elements, int width) throws IOException {
+        if (buffer.remaining() < width) {
+            drain();
+        }
+        return Math.min(elements, buffer.remaining() / width);
+    }
+
+    // the views used for the bulk copies don't move the position of the buffer
+    private void advance(int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    // the values of the unbuffered stream are in the buffer only while a single value is written
+    private void drainIfUnbuffered() throws IOException {
+        if (!buffered) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer.position() > 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
     }
 
 }
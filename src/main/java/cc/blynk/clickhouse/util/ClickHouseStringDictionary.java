@@ -0,0 +1,98 @@
+package cc.blynk.clickhouse.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bounded cache of the decoded strings of one column keyed by their UTF-8 bytes, so the repeated values,
+ * like the ones of LowCardinality(String) columns, are returned as the same String instance without decoding
+ * and allocation. Once the dictionary holds <code>maxSize</code> values the other values are decoded every time.
+ * <p>
+ * Not thread safe, meant to be owned by a result set or a reader.
+ */
+public final class ClickHouseStringDictionary {
+
+    // longer values are unlikely to repeat and are not worth keeping
+    private static final int MAX_KEY_LENGTH = 256;
+
+    private final int maxSize;
+    private final int mask;
+    private final int[] hashes;
+    private final byte[][] keys;
+    private final String[] values;
+    private int size;
+
+    public ClickHouseStringDictionary(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize should be positive, but is " + maxSize);
+        }
+        this.maxSize = maxSize;
+        // load factor of at most 0.5 keeps the probe sequences short
+        int capacity = Integer.highestOneBit(maxSize * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.hashes = new int[capacity];
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+    }
+
+    public String get(byte[] bytes, int offset, int length) {
+        if (length > MAX_KEY_LENGTH) {
+            return decode(bytes, offset, length);
+        }
+        int hash = hash(bytes, offset, length);
+        int slot = hash & mask;
+        byte[] key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && equal(key, bytes, offset, length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = decode(bytes, offset, length);
+        if (size < maxSize) {
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, offset, copy, 0, length);
+            hashes[slot] = hash;
+            keys[slot] = copy;
+            values[slot] = value;
+            size++;
+        }
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decodes UTF-8 bytes, ASCII values, which are the most of the values, are copied without the UTF-8 decoder.
+     */
+    public static String decode(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, offset, length, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // spreads the high bits to the slot bits
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(byte[] key, byte[] bytes, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package cc.blynk.clickhouse.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link ClickHouseBlockReader} for a column type it can't decode. The statement takes it
+ * as the signal to request the result as text instead.
+ */
+public final class ClickHouseUnsupportedTypeException extends IOException {
+
+    private final String type;
+
+    ClickHouseUnsupportedTypeException(String type, IllegalArgumentException cause) {
+        super(cause.getMessage(), cause);
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+}
@@ -8,7 +8,6 @@ import java.math.BigInteger;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.TimeZone;
 import java.util.UUID;
@@ -17,12 +16,6 @@ public final class ClickHouseValueFormatter {
 
     public static final String NULL_MARKER = "\\N";
 
-    private static ThreadLocal<SimpleDateFormat> dateFormat =
-            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
-
-    private static ThreadLocal<SimpleDateFormat> dateTimeFormat =
-            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
-
     public static String formatBytes(byte[] bytes) {
         if (bytes == null) {
             return null;
@@ -86,21 +79,15 @@ public final class ClickHouseValueFormatter {
     }
 
     public static String formatDate(Date date, TimeZone timeZone) {
-        SimpleDateFormat simpleDateFormat = dateFormat.get();
-        simpleDateFormat.setTimeZone(timeZone);
-        return simpleDateFormat.format(date);
+        return ClickHouseDateTimeCodec.of(timeZone).formatDate(date.getTime());
     }
 
     public static String formatTime(Time time, TimeZone timeZone) {
-        SimpleDateFormat simpleDateFormat = dateTimeFormat.get();
-        simpleDateFormat.setTimeZone(timeZone);
-        return simpleDateFormat.format(time);
+        return ClickHouseDateTimeCodec.of(timeZone).formatDateTime(time.getTime());
     }
 
     public static String formatTimestamp(Timestamp time, TimeZone timeZone) {
-        SimpleDateFormat simpleDateFormat = dateTimeFormat.get();
-        simpleDateFormat.setTimeZone(timeZone);
-        return simpleDateFormat.format(time);
+        return ClickHouseDateTimeCodec.of(timeZone).formatDateTime(time.getTime());
     }
 
     private static String formatUUID(UUID x) {
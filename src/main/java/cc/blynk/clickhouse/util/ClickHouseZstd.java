@@ -0,0 +1,59 @@
+package cc.blynk.clickhouse.util;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.IOException;
+
+/**
+ * The only class that refers zstd-jni, so the library is needed only when ZSTD is used.
+ */
+final class ClickHouseZstd {
+
+    private ClickHouseZstd() {
+    }
+
+    static void decompress(byte[] src, int srcOff, int length, byte[] dst, int uncompressedSize) throws IOException {
+        ensureAvailable();
+        long result = Zstd.decompressByteArray(dst, 0, uncompressedSize, src, srcOff, length);
+        if (Zstd.isError(result)) {
+            throw new IOException("ZSTD decompression failed: " + Zstd.getErrorName(result));
+        }
+        if (result != uncompressedSize) {
+            throw new IOException("ZSTD block size is not correct: " + result + ", expected " + uncompressedSize);
+        }
+    }
+
+    //fails with a clear message instead of NoClassDefFoundError in the middle of the stream.
+    //the first call loads the class and its native library
+    private static void ensureAvailable() {
+        try {
+            Zstd.defaultCompressionLevel();
+        } catch (LinkageError e) {
+            throw new IllegalStateException("ZSTD compression requires com.github.luben:zstd-jni on the classpath", e);
+        }
+    }
+
+    static final class Compressor implements ClickHouseBlockCompressor {
+
+        private final int level;
+
+        Compressor(int level) {
+            ensureAvailable();
+            this.level = level;
+        }
+
+        @Override
+        public int maxCompressedLength(int length) {
+            return (int) Zstd.compressBound(length);
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int maxDstLength) {
+            long result = Zstd.compressByteArray(dst, dstOff, maxDstLength, src, srcOff, length, level);
+            if (Zstd.isError(result)) {
+                throw new IllegalStateException("ZSTD compression failed: " + Zstd.getErrorName(result));
+            }
+            return (int) result;
+        }
+    }
+}
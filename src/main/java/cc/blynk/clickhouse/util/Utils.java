@@ -4,6 +4,10 @@ import net.jpountz.lz4.LZ4Factory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class Utils {
 
@@ -58,4 +62,31 @@ public final class Utils {
         return list;
     }
 
+    /**
+     * Same as <code>CompletableFuture.failedFuture</code> of Java 9.
+     */
+    public static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Daemon pool for the lz4 compression and read-ahead decompression of the streams.
+     * Threads are bounded by the workers every stream uses at once, idle ones die after a minute.
+     */
+    static ExecutorService workerPool() {
+        return WorkerPool.INSTANCE;
+    }
+
+    //created on the first use only
+    private static final class WorkerPool {
+
+        private static final AtomicInteger counter = new AtomicInteger();
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "clickhouse-lz4-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 }
@@ -1,162 +0,0 @@
-/*
- * Copyright (C) 2007 The Guava Authors
- *
- * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
- * in compliance with the License. You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software distributed under the License
- * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
- * or implied. See the License for the specific language governing permissions and limitations under
- * the License.
- */
-
-package cc.blynk.clickhouse.util.guava;
-
-import java.io.DataInput;
-import java.io.DataInputStream;
-import java.io.EOFException;
-import java.io.FilterInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Objects;
-
-public final class LittleEndianDataInputStream extends FilterInputStream implements DataInput {
-
-    public LittleEndianDataInputStream(InputStream in) {
-        super(Objects.requireNonNull(in));
-    }
-
-    @Override
-    public String readLine() {
-        throw new UnsupportedOperationException("readLine is not supported");
-    }
-
-    private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
-        Objects.requireNonNull(in);
-        Objects.requireNonNull(b);
-
-        if (len < 0) {
-            throw new IndexOutOfBoundsException("len is negative");
-        }
-
-        int total = 0;
-        while (total < len) {
-            int result = in.read(b, off + total, len - total);
-            if (result == -1) {
-                break;
-            }
-            total += result;
-        }
-        int read = total;
-
-        if (read != len) {
-            throw new EOFException(
-                    "reached end of stream after reading " + read + " bytes; " + len + " bytes expected");
-        }
-    }
-
-    @Override
-    public void readFully(byte[] b) throws IOException {
-        readFully(this, b, 0, b.length);
-    }
-
-    @Override
-    public void readFully(byte[] b, int off, int len) throws IOException {
-        readFully(this, b, off, len);
-    }
-
-    @Override
-    public int skipBytes(int n) throws IOException {
-        return (int) in.skip(n);
-    }
-
-    @Override
-    public int readUnsignedByte() throws IOException {
-        int b1 = in.read();
-        if (0 > b1) {
-            throw new EOFException();
-        }
-
-        return b1;
-    }
-
-    @Override
-    public int readUnsignedShort() throws IOException {
-        byte b1 = readAndCheckByte();
-        byte b2 = readAndCheckByte();
-
-        return StreamUtils.intFromBytes((byte) 0, (byte) 0, b2, b1);
-    }
-
-    @Override
-    public int readInt() throws IOException {
-        byte b1 = readAndCheckByte();
-        byte b2 = readAndCheckByte();
-        byte b3 = readAndCheckByte();
-        byte b4 = readAndCheckByte();
-
-        return StreamUtils.intFromBytes(b4, b3, b2, b1);
-    }
-
-    @Override
-    public long readLong() throws IOException {
-        byte b1 = readAndCheckByte();
-        byte b2 = readAndCheckByte();
-        byte b3 = readAndCheckByte();
-        byte b4 = readAndCheckByte();
-        byte b5 = readAndCheckByte();
-        byte b6 = readAndCheckByte();
-        byte b7 = readAndCheckByte();
-        byte b8 = readAndCheckByte();
-
-        return StreamUtils.longFromBytes(b8, b7, b6, b5, b4, b3, b2, b1);
-    }
-
-    @Override
-    public float readFloat() throws IOException {
-        return Float.intBitsToFloat(readInt());
-    }
-
-    @Override
-    public double readDouble() throws IOException {
-        return Double.longBitsToDouble(readLong());
-    }
-
-    @Override
-    public String readUTF() throws IOException {
-        return new DataInputStream(in).readUTF();
-    }
-
-    @Override
-    public short readShort() throws IOException {
-        return (short) readUnsignedShort();
-    }
-
-    @Override
-    public char readChar() throws IOException {
-        return (char) readUnsignedShort();
-    }
-
-    @Override
-    public byte readByte() throws IOException {
-        return (byte) readUnsignedByte();
-    }
-
-    @Override
-    public boolean readBoolean() throws IOException {
-        return readUnsignedByte() != 0;
-    }
-
-    private byte readAndCheckByte() throws IOException {
-        int b1 = in.read();
-
-        if (-1 == b1) {
-            throw new EOFException();
-        }
-
-        return (byte) b1;
-    }
-}
-
@@ -1,103 +0,0 @@
-/*
- * Copyright (C) 2007 The Guava Authors
- *
- * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
- * in compliance with the License. You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software distributed under the License
- * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
- * or implied. See the License for the specific language governing permissions and limitations under
- * the License.
- */
-
-package cc.blynk.clickhouse.util.guava;
-
-import java.io.DataOutput;
-import java.io.DataOutputStream;
-import java.io.FilterOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.util.Objects;
-
-public final class LittleEndianDataOutputStream extends FilterOutputStream implements DataOutput {
-
-    public LittleEndianDataOutputStream(OutputStream out) {
-        super(new DataOutputStream(Objects.requireNonNull(out)));
-    }
-
-    @Override
-    public void write(byte[] b, int off, int len) throws IOException {
-        // Override slow FilterOutputStream impl
-        out.write(b, off, len);
-    }
-
-    @Override
-    public void writeBoolean(boolean v) throws IOException {
-        ((DataOutputStream) out).writeBoolean(v);
-    }
-
-    @Override
-    public void writeByte(int v) throws IOException {
-        ((DataOutputStream) out).writeByte(v);
-    }
-
-    @Deprecated
-    @Override
-    public void writeBytes(String s) throws IOException {
-        ((DataOutputStream) out).writeBytes(s);
-    }
-
-    @Override
-    public void writeChar(int v) throws IOException {
-        writeShort(v);
-    }
-
-    @Override
-    public void writeChars(String s) throws IOException {
-        for (int i = 0; i < s.length(); i++) {
-            writeChar(s.charAt(i));
-        }
-    }
-
-    @Override
-    public void writeDouble(double v) throws IOException {
-        writeLong(Double.doubleToLongBits(v));
-    }
-
-    @Override
-    public void writeFloat(float v) throws IOException {
-        writeInt(Float.floatToIntBits(v));
-    }
-
-    @Override
-    public void writeInt(int v) throws IOException {
-        out.write(0xFF & v);
-        out.write(0xFF & (v >> 8));
-        out.write(0xFF & (v >> 16));
-        out.write(0xFF & (v >> 24));
-    }
-
-    @Override
-    public void writeLong(long v) throws IOException {
-        byte[] bytes = StreamUtils.longToByteArray(Long.reverseBytes(v));
-        write(bytes, 0, bytes.length);
-    }
-
-    @Override
-    public void writeShort(int v) throws IOException {
-        out.write(0xFF & v);
-        out.write(0xFF & (v >> 8));
-    }
-
-    @Override
-    public void writeUTF(String str) throws IOException {
-        ((DataOutputStream) out).writeUTF(str);
-    }
-
-    @Override
-    public void close() throws IOException {
-        out.close();
-    }
-}
@@ -2,15 +2,41 @@ package cc.blynk.clickhouse;
 
 
 import cc.blynk.clickhouse.domain.ClickHouseFormat;
+import cc.blynk.clickhouse.http.HttpConnector;
 import cc.blynk.clickhouse.http.HttpConnectorFactory;
+import cc.blynk.clickhouse.http.RequestBodyWriter;
+import cc.blynk.clickhouse.http.StreamingRequest;
+import cc.blynk.clickhouse.response.ClickHouseNativeResultSet;
 import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseNativeBlockReader;
+import org.mockito.ArgumentCaptor;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -144,6 +170,205 @@ public class ClickHouseStatementTest {
         assertTrue(query.contains("cache_namespace=aaaa"), "cache_namespace param is missing in URL");
     }
 
+    @Test
+    public void testNativeFormatQueries() throws Exception {
+        HttpConnector connector = mock(HttpConnector.class);
+        when(connector.post(anyString(), any(URI.class)))
+                .thenAnswer(invocation -> new ByteArrayInputStream(
+                        new byte[]{1, 1, 1, 'x', 5, 'U', 'I', 'n', 't', '8', 7}));
+        ClickHouseConnection connection = mock(ClickHouseConnection.class);
+        when(connection.getTimeZone()).thenReturn(TimeZone.getTimeZone("UTC"));
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setHost("localhost");
+        ClickHouseStatementImpl statement =
+                new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_FORWARD_ONLY);
+
+        ResultSet rs = statement.executeQuery("SELECT 7 AS x FORMAT Native");
+        assertTrue(rs instanceof ClickHouseNativeResultSet);
+        assertTrue(rs.next());
+        assertEquals(rs.getInt("x"), 7);
+
+        ClickHouseNativeBlockReader reader = statement.executeQueryNativeBlocks("SELECT 7 AS x");
+        assertEquals(reader.readBlock().getColumn("x").getLongs()[0], 7);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<URI> uri = ArgumentCaptor.forClass(URI.class);
+        verify(connector, times(2)).post(sql.capture(), uri.capture());
+        assertEquals(sql.getValue(), "SELECT 7 AS x FORMAT Native");
+        for (URI value : uri.getAllValues()) {
+            assertTrue(value.getQuery().contains("low_cardinality_allow_in_native_format=0"));
+        }
+    }
+
+    @Test
+    public void testBinaryResultSet() throws Exception {
+        HttpConnector connector = mock(HttpConnector.class);
+        when(connector.post(anyString(), any(URI.class)))
+                .thenAnswer(invocation -> new ByteArrayInputStream(
+                        new byte[]{1, 1, 'x', 5, 'U', 'I', 'n', 't', '8', 7, 8}));
+        ClickHouseConnection connection = mock(ClickHouseConnection.class);
+        when(connection.getTimeZone()).thenReturn(TimeZone.getTimeZone("UTC"));
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setHost("localhost");
+        properties.setUseBinaryResultSet(true);
+
+        ClickHouseStatementImpl statement =
+                new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_FORWARD_ONLY);
+        ResultSet rs = statement.executeQuery("SELECT x FROM t");
+        assertTrue(rs instanceof ClickHouseNativeResultSet);
+        assertTrue(rs.next());
+        assertEquals(rs.getInt("x"), 7);
+        assertTrue(rs.next());
+        assertEquals(rs.getObject(1), 8);
+        assertFalse(rs.next());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connector).post(sql.capture(), any(URI.class));
+        assertEquals(sql.getValue(), "SELECT x FROM t FORMAT RowBinaryWithNamesAndTypes");
+
+        //scrollable result sets and totals stay on TabSeparatedWithNamesAndTypes
+        when(connector.post(anyString(), any(URI.class))).thenAnswer(invocation -> new ByteArrayInputStream(
+                "x\nUInt8\n7\n".getBytes(StandardCharsets.UTF_8)));
+        new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_SCROLL_INSENSITIVE)
+                .executeQuery("SELECT x FROM t");
+        new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_FORWARD_ONLY)
+                .executeQuery("SELECT x FROM t GROUP BY x WITH TOTALS");
+        verify(connector, times(3)).post(sql.capture(), any(URI.class));
+        assertEquals(sql.getAllValues().subList(2, 4), Arrays.asList(
+                "SELECT x FROM t FORMAT TabSeparatedWithNamesAndTypes",
+                "SELECT x FROM t GROUP BY x WITH TOTALS FORMAT TabSeparatedWithNamesAndTypes"));
+    }
+
+    @Test
+    public void testBinaryResultSetFallsBackToText() throws Exception {
+        HttpConnector connector = mock(HttpConnector.class);
+        byte[] binary = {1, 1, 'b', 4, 'B', 'o', 'o', 'l', 1};
+        byte[] text = "b\nBool\ntrue\n".getBytes(StandardCharsets.UTF_8);
+        when(connector.post(anyString(), any(URI.class))).thenAnswer(invocation -> new ByteArrayInputStream(
+                ((String) invocation.getArguments()[0]).endsWith("RowBinaryWithNamesAndTypes") ? binary : text));
+        when(connector.postAsync(anyString(), any(URI.class), any(Executor.class))).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(new ByteArrayInputStream(
+                ((String) invocation.getArguments()[0]).endsWith("RowBinaryWithNamesAndTypes") ? binary : text)));
+        ClickHouseConnection connection = mock(ClickHouseConnection.class);
+        when(connection.getTimeZone()).thenReturn(TimeZone.getTimeZone("UTC"));
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setHost("localhost");
+        properties.setUseBinaryResultSet(true);
+        ClickHouseStatementImpl statement =
+                new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_FORWARD_ONLY);
+
+        ResultSet rs = statement.executeQuery("SELECT b FROM t");
+        assertTrue(rs.next());
+        assertEquals(rs.getString("b"), "true");
+        assertFalse(rs.next());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connector, times(2)).post(sql.capture(), any(URI.class));
+        assertEquals(sql.getAllValues(), Arrays.asList(
+                "SELECT b FROM t FORMAT RowBinaryWithNamesAndTypes",
+                "SELECT b FROM t FORMAT TabSeparatedWithNamesAndTypes"));
+
+        rs = statement.executeQueryAsync("SELECT b FROM t").get();
+        assertTrue(rs.next());
+        assertEquals(rs.getString("b"), "true");
+        verify(connector, times(2)).postAsync(anyString(), any(URI.class), any(Executor.class));
+    }
+
+    @Test
+    public void testRowBinaryStreamIsWrittenToRequest() throws Exception {
+        HttpConnector connector = mock(HttpConnector.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        doAnswer(invocation -> {
+            ((RequestBodyWriter) invocation.getArguments()[1]).writeTo(body);
+            return null;
+        }).when(connector).post(anyString(), any(RequestBodyWriter.class), any(URI.class));
+        ClickHouseConnection connection = mock(ClickHouseConnection.class);
+        when(connection.getTimeZone()).thenReturn(TimeZone.getTimeZone("UTC"));
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setHost("localhost");
+        ClickHouseStatementImpl statement =
+                new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_FORWARD_ONLY);
+
+        statement.sendRowBinaryStream("INSERT INTO t", stream -> {
+            stream.writeInt32(1);
+            stream.writeString("a");
+        });
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connector).post(sql.capture(), any(RequestBodyWriter.class), any(URI.class));
+        assertEquals(sql.getValue(), "INSERT INTO t FORMAT RowBinary");
+        assertEquals(body.toByteArray(), new byte[]{1, 0, 0, 0, 1, 'a'});
+    }
+
+    @Test
+    public void testInsertStream() throws Exception {
+        HttpConnector connector = mock(HttpConnector.class);
+        StreamingRequest request = mock(StreamingRequest.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(request.body()).thenReturn(body);
+        when(connector.openPost(anyString(), any(URI.class))).thenReturn(request);
+        ClickHouseConnection connection = mock(ClickHouseConnection.class);
+        when(connection.getTimeZone()).thenReturn(TimeZone.getTimeZone("UTC"));
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setHost("localhost");
+        ClickHouseStatementImpl statement =
+                new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_FORWARD_ONLY);
+
+        try (ClickHouseInsertStream insert = statement.openInsertStream("INSERT INTO t", ClickHouseFormat.RowBinary)) {
+            insert.getRowBinaryStream().writeInt32(1);
+            insert.getRowBinaryStream().writeString("a");
+            verify(request, never()).finish();
+        }
+        verify(connector).openPost(eq("INSERT INTO t FORMAT RowBinary"), any(URI.class));
+        verify(request).finish();
+        verify(request, never()).abort();
+        assertEquals(body.toByteArray(), new byte[]{1, 0, 0, 0, 1, 'a'});
+
+        AtomicBoolean bodyClosed = new AtomicBoolean();
+        when(request.body()).thenReturn(new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                bodyClosed.set(true);
+            }
+        });
+        ClickHouseInsertStream insert = statement.openInsertStream("INSERT INTO t", ClickHouseFormat.TabSeparated);
+        try (OutputStream out = insert.getOutputStream()) {
+            out.write("1\ta\n".getBytes(StandardCharsets.UTF_8));
+        }
+        //closing the stream doesn't end the body, so the insert can still be aborted
+        assertFalse(bodyClosed.get());
+        insert.abort();
+        insert.close();
+        verify(request).abort();
+        verify(request).finish();
+    }
+
+    @Test
+    public void testConcurrentAsyncQueries() throws Exception {
+        HttpConnector connector = mock(HttpConnector.class);
+        CompletableFuture<InputStream> selectResponse = new CompletableFuture<>();
+        CompletableFuture<InputStream> insertResponse = new CompletableFuture<>();
+        when(connector.postAsync(anyString(), any(URI.class), any(Executor.class)))
+                .thenReturn(selectResponse, insertResponse);
+        ClickHouseConnection connection = mock(ClickHouseConnection.class);
+        when(connection.getTimeZone()).thenReturn(TimeZone.getTimeZone("UTC"));
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setHost("localhost");
+        ClickHouseStatementImpl statement =
+                new ClickHouseStatementImpl(connector, connection, properties, ResultSet.TYPE_FORWARD_ONLY);
+
+        //the second query doesn't change the type of the first one, that is still in flight
+        CompletableFuture<ResultSet> select = statement.executeQueryAsync("SELECT x FROM t");
+        CompletableFuture<ResultSet> insert = statement.executeQueryAsync("INSERT INTO t VALUES (1)");
+        insertResponse.complete(new ByteArrayInputStream(new byte[0]));
+        selectResponse.complete(new ByteArrayInputStream("x\nUInt8\n7\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertNull(insert.get());
+        ResultSet rs = select.get();
+        assertTrue(rs.next());
+        assertEquals(rs.getInt("x"), 7);
+    }
+
     @Test
     public void testIsSelect() {
         ClickHouseStatementImpl clickHouseStatement = new ClickHouseStatementImpl(null, null, null, 0);
@@ -0,0 +1,488 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.ClickHouseExternalData;
+import cc.blynk.clickhouse.except.ClickHouseException;
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseLZ4InputStream;
+import cc.blynk.clickhouse.util.ClickHouseLZ4OutputStream;
+import cc.blynk.clickhouse.util.ClickHouseReadAheadLZ4InputStream;
+import cc.blynk.clickhouse.util.guava.StreamUtils;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.DefaultAsyncHttpClient;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class AsyncHttpConnectorTest {
+
+    private static final int BIG_RESPONSE_CHUNK = 64 * 1024;
+    private static final int BIG_RESPONSE_CHUNKS = 1024;
+    private static final int PARTIAL_BODY = 1024 * 1024;
+
+    private HttpServer server;
+    private AsyncHttpClient client;
+    private URI uri;
+    private URI bigUri;
+    private volatile boolean bigResponseSent;
+    private volatile Headers lastUploadHeaders;
+    private volatile byte[] lastUpload;
+    private volatile CountDownLatch partialBodyReceived;
+    private final BlockingQueue<Boolean> completeBodies = new LinkedBlockingQueue<>();
+    private volatile CountDownLatch bodyStarted;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", exchange -> {
+            String body;
+            try (InputStream is = exchange.getRequestBody()) {
+                body = StreamUtils.toString(is);
+            }
+            byte[] response;
+            if (body.startsWith("BAD")) {
+                response = "Code: 62, e.displayText() = DB::Exception: Syntax error".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(500, response.length);
+            } else {
+                response = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, response.length);
+            }
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.createContext("/big", exchange -> {
+            bigResponseSent = false;
+            byte[] chunk = new byte[BIG_RESPONSE_CHUNK];
+            Arrays.fill(chunk, (byte) 'a');
+            //0 means chunked response, the same as ClickHouse does
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (int i = 0; i < BIG_RESPONSE_CHUNKS; i++) {
+                    os.write(chunk);
+                }
+            }
+            bigResponseSent = true;
+        });
+        server.createContext("/lz4", exchange -> {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            ClickHouseLZ4OutputStream lz4 = new ClickHouseLZ4OutputStream(response, 4);
+            try (InputStream is = exchange.getRequestBody()) {
+                lz4.write(StreamUtils.toByteArray(is));
+                lz4.flush();
+            }
+            exchange.sendResponseHeaders(200, response.size());
+            try (OutputStream os = exchange.getResponseBody()) {
+                response.writeTo(os);
+            }
+        });
+        server.createContext("/upload", exchange -> {
+            lastUploadHeaders = exchange.getRequestHeaders();
+            InputStream body = exchange.getRequestBody();
+            if (exchange.getRequestURI().getQuery() != null) {
+                body = new ClickHouseLZ4InputStream(body);
+            }
+            try (InputStream is = body) {
+                lastUpload = StreamUtils.toByteArray(is);
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/partial", exchange -> {
+            try (InputStream is = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                long total = 0;
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    total += read;
+                    if (total >= PARTIAL_BODY) {
+                        partialBodyReceived.countDown();
+                    }
+                }
+                lastUpload = new byte[0];
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/body", exchange -> {
+            bodyStarted.countDown();
+            try (InputStream body = exchange.getRequestBody()) {
+                StreamUtils.toByteArray(body);
+                completeBodies.add(true);
+            } catch (IOException e) {
+                completeBodies.add(false);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        client = new DefaultAsyncHttpClient();
+        uri = new URI("http://localhost:" + server.getAddress().getPort() + "/");
+        bigUri = new URI("http://localhost:" + server.getAddress().getPort() + "/big");
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    private AsyncHttpConnector createConnector() {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        return new AsyncHttpConnector(client, properties);
+    }
+
+    @Test
+    public void testManyRequestsInFlight() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+
+        List<CompletableFuture<InputStream>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(connector.postAsync("SELECT " + i, uri, null));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try (InputStream is = futures.get(i).get(10, TimeUnit.SECONDS)) {
+                assertEquals(StreamUtils.toString(is), "SELECT " + i + "\n");
+            }
+        }
+    }
+
+    @Test
+    public void testFutureIsCompletedOnExecutor() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "test-executor"));
+        try {
+            //the dependent action runs on the caller thread when the future is already completed,
+            //so the thread is captured by the executor, not by the dependent action
+            AtomicReference<String> threadName = new AtomicReference<>();
+            connector.postAsync("SELECT 1", uri, r -> executor.execute(() -> {
+                threadName.set(Thread.currentThread().getName());
+                r.run();
+            })).get(10, TimeUnit.SECONDS);
+            assertEquals(threadName.get(), "test-executor");
+
+            connector.postAsync("INSERT INTO test", new ByteArrayInputStream(new byte[]{1}), uri, executor)
+                    .get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testResponseIsReadWhileReceived() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+
+        try (InputStream is = connector.post("SELECT 1", bigUri)) {
+            assertEquals(is.read(), 'a');
+            //the reader is slow, so the server is blocked on the full socket buffers
+            Thread.sleep(500);
+            assertFalse(bigResponseSent);
+
+            byte[] buffer = new byte[8192];
+            long total = 1;
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                total += read;
+            }
+            assertEquals(total, (long) BIG_RESPONSE_CHUNK * BIG_RESPONSE_CHUNKS);
+        }
+    }
+
+    @Test
+    public void testNotFullyReadResponseIsCancelled() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+
+        InputStream is = connector.post("SELECT 1", bigUri);
+        assertEquals(is.read(), 'a');
+        is.close();
+
+        try (InputStream next = connector.post("SELECT 2", uri)) {
+            assertEquals(StreamUtils.toString(next), "SELECT 2\n");
+        }
+    }
+
+    @Test
+    public void testStreamIsUploadedInChunks() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        byte[] data = new byte[4 * 1024 * 1024];
+        Arrays.fill(data, (byte) 'b');
+
+        connector.post("INSERT INTO test", new ByteArrayInputStream(data), new URI(uri + "upload"));
+
+        assertEquals(lastUploadHeaders.getFirst("Transfer-encoding"), "chunked");
+        assertEquals(lastUpload.length, "INSERT INTO test\n".length() + data.length);
+    }
+
+    @Test
+    public void testStreamIsNotReadOnEventLoop() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        List<String> readers = Collections.synchronizedList(new ArrayList<>());
+        InputStream from = new ByteArrayInputStream(new byte[1024 * 1024]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                readers.add(Thread.currentThread().getName());
+                return super.read(b, off, len);
+            }
+        };
+
+        connector.post("INSERT INTO test", from, new URI(uri + "upload"));
+        assertEquals(new HashSet<>(readers), Collections.singleton(Thread.currentThread().getName()));
+
+        readers.clear();
+        from.reset();
+        connector.postAsync("INSERT INTO test", from, new URI(uri + "upload"), null).get(10, TimeUnit.SECONDS);
+        assertFalse(readers.isEmpty());
+        for (String reader : readers) {
+            assertTrue(reader.startsWith("clickhouse-http-"), reader);
+        }
+        assertEquals(lastUpload.length, "INSERT INTO test\n".length() + 1024 * 1024);
+    }
+
+    @Test
+    public void testCompressedStreamIsUploaded() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        properties.setDecompress(true);
+        AsyncHttpConnector connector = new AsyncHttpConnector(client, properties);
+        byte[] data = new byte[4 * 1024 * 1024];
+        Arrays.fill(data, (byte) 'b');
+
+        connector.post("INSERT INTO test", new ByteArrayInputStream(data), new URI(uri + "upload?decompress=1"));
+
+        byte[] expected = new byte["INSERT INTO test\n".length() + data.length];
+        System.arraycopy("INSERT INTO test\n".getBytes(StandardCharsets.UTF_8), 0, expected, 0, 17);
+        System.arraycopy(data, 0, expected, 17, data.length);
+        assertEquals(lastUpload, expected);
+    }
+
+    @Test
+    public void testWrittenBodyIsSentWhileWritten() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        partialBodyReceived = new CountDownLatch(1);
+
+        connector.post("INSERT INTO test", out -> {
+            out.write(new byte[PARTIAL_BODY]);
+            //the body isn't completed yet, but the server has received its first part
+            try {
+                assertTrue(partialBodyReceived.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            out.write(new byte[PARTIAL_BODY]);
+        }, new URI(uri + "partial"));
+    }
+
+    @Test
+    public void testCompressedWrittenBodyIsUploaded() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        properties.setDecompress(true);
+        properties.setRequestChunkSize(1000);
+        AsyncHttpConnector connector = new AsyncHttpConnector(client, properties);
+        byte[] data = new byte[4 * 1024 * 1024];
+        Arrays.fill(data, (byte) 'd');
+
+        connector.post("INSERT INTO test", out -> {
+            for (int i = 0; i < data.length; i += 1024) {
+                out.write(data, i, 1024);
+            }
+        }, new URI(uri + "upload?decompress=1"));
+
+        assertEquals(lastUploadHeaders.getFirst("Transfer-encoding"), "chunked");
+        byte[] expected = new byte["INSERT INTO test\n".length() + data.length];
+        System.arraycopy("INSERT INTO test\n".getBytes(StandardCharsets.UTF_8), 0, expected, 0, 17);
+        System.arraycopy(data, 0, expected, 17, data.length);
+        assertEquals(lastUpload, expected);
+    }
+
+    @Test
+    public void testOpenedRequestIsSentOnFinish() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        byte[] data = new byte[1024 * 1024];
+        Arrays.fill(data, (byte) 'e');
+
+        StreamingRequest request = connector.openPost("INSERT INTO test", new URI(uri + "upload"));
+        request.body().write(data, 0, 1000);
+        request.body().write(data, 1000, data.length - 1000);
+        request.finish();
+
+        assertEquals(lastUploadHeaders.getFirst("Transfer-encoding"), "chunked");
+        assertEquals(lastUpload.length, "INSERT INTO test\n".length() + data.length);
+    }
+
+    @Test
+    public void testAbortedRequestIsNotWritten() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+
+        StreamingRequest request = connector.openPost("INSERT INTO test", new URI(uri + "upload"));
+        request.abort();
+        try {
+            //the writer doesn't wait for the aborted request to send the queued chunks
+            for (int i = 0; i < 64; i++) {
+                request.body().write(new byte[64 * 1024]);
+            }
+            fail();
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "Request is completed before the body is sent");
+        }
+    }
+
+    @Test
+    public void testBodyIsBrokenOnWriterFailure() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+
+        bodyStarted = new CountDownLatch(1);
+        try {
+            connector.post("INSERT INTO test", out -> {
+                writeTillReceived(out);
+                throw new IllegalStateException("Wrong type");
+            }, new URI(uri + "body"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "Wrong type");
+        }
+        //the server doesn't get the end of the body, so nothing is inserted
+        assertEquals(completeBodies.poll(10, TimeUnit.SECONDS), Boolean.FALSE);
+
+        bodyStarted = new CountDownLatch(1);
+        try {
+            connector.post("INSERT INTO test", out -> {
+                writeTillReceived(out);
+                throw new IOException("No more rows");
+            }, new URI(uri + "body"));
+            fail();
+        } catch (ClickHouseException e) {
+            assertEquals(e.getCause().getMessage(), "No more rows");
+        }
+        assertEquals(completeBodies.poll(10, TimeUnit.SECONDS), Boolean.FALSE);
+    }
+
+    //writes till the server starts to read the body, so the request isn't cancelled before it is sent
+    private void writeTillReceived(OutputStream out) throws IOException {
+        try {
+            while (!bodyStarted.await(10, TimeUnit.MILLISECONDS)) {
+                out.write(new byte[1024]);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void testWrittenBodyErrorIsThrown() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        try {
+            connector.post("BAD INSERT", out -> out.write(new byte[]{1, 2, 3}), uri);
+            fail();
+        } catch (ClickHouseException e) {
+            assertEquals(e.getErrorCode(), 62);
+        }
+    }
+
+    @Test
+    public void testExternalDataIsUploadedInChunks() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        byte[] data = new byte[4 * 1024 * 1024];
+        Arrays.fill(data, (byte) 'c');
+
+        connector.post(Collections.singletonList(new ClickHouseExternalData("table", new ByteArrayInputStream(data))),
+                new URI(uri + "upload")).close();
+
+        assertEquals(lastUploadHeaders.getFirst("Transfer-encoding"), "chunked");
+        assertTrue(lastUploadHeaders.getFirst("Content-type").startsWith("multipart/form-data; boundary="));
+        assertTrue(lastUpload.length > data.length);
+    }
+
+    @Test
+    public void testExternalDataIsNotReadOnEventLoop() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setDecompress(true);
+        AsyncHttpConnector connector = new AsyncHttpConnector(client, properties);
+        List<String> readers = Collections.synchronizedList(new ArrayList<>());
+        InputStream content = new ByteArrayInputStream(new byte[1024 * 1024]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                readers.add(Thread.currentThread().getName());
+                return super.read(b, off, len);
+            }
+        };
+
+        connector.post(Collections.singletonList(new ClickHouseExternalData("table", content)),
+                new URI(uri + "upload")).close();
+        assertEquals(new HashSet<>(readers), Collections.singleton(Thread.currentThread().getName()));
+        assertTrue(lastUploadHeaders.getFirst("Content-type").startsWith("multipart/form-data; boundary="));
+    }
+
+    @Test
+    public void testCompressedResponseIsReadAhead() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(true);
+        properties.setReadAheadBlocks(2);
+        AsyncHttpConnector connector = new AsyncHttpConnector(client, properties);
+        URI lz4Uri = new URI("http://localhost:" + server.getAddress().getPort() + "/lz4");
+
+        try (InputStream is = connector.post("SELECT 'read ahead'", lz4Uri)) {
+            assertTrue(is instanceof ClickHouseReadAheadLZ4InputStream);
+            assertEquals(StreamUtils.toString(is), "SELECT 'read ahead'\n");
+        }
+    }
+
+    @Test
+    public void testErrorIsThrown() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        try {
+            connector.post("BAD QUERY", uri);
+            fail();
+        } catch (ClickHouseException e) {
+            assertEquals(e.getErrorCode(), 62);
+        }
+    }
+
+    @Test
+    public void testErrorFailsFuture() throws Exception {
+        AsyncHttpConnector connector = createConnector();
+        try {
+            connector.postAsync("BAD QUERY", uri, null).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ClickHouseException);
+            assertEquals(((ClickHouseException) e.getCause()).getErrorCode(), 62);
+        }
+    }
+
+}
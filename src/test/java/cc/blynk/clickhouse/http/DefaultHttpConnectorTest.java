@@ -0,0 +1,323 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.ClickHouseExternalData;
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseCompression;
+import cc.blynk.clickhouse.util.ClickHouseLZ4InputStream;
+import cc.blynk.clickhouse.util.guava.StreamUtils;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class DefaultHttpConnectorTest {
+
+    private HttpServer server;
+    private URI uri;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private volatile Headers lastHeaders;
+    private volatile int lastBodyLength;
+    private volatile byte[] lastBody;
+    private final BlockingQueue<Boolean> completeBodies = new LinkedBlockingQueue<>();
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        //a request with the stuck body must not block the others
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            lastHeaders = exchange.getRequestHeaders();
+            try (InputStream body = exchange.getRequestBody()) {
+                lastBody = StreamUtils.toByteArray(body);
+                lastBodyLength = lastBody.length;
+            }
+            byte[] response = "1\n2\n3\n".getBytes(StandardCharsets.UTF_8);
+            //0 means chunked response, the same as ClickHouse does
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.createContext("/body", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                StreamUtils.toByteArray(body);
+                completeBodies.add(true);
+            } catch (IOException e) {
+                completeBodies.add(false);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        uri = new URI("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @AfterClass
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSocketIsReusedBetweenRequests() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        HttpConnectionStats stats = new HttpConnectionStats();
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, stats);
+        clientPorts.clear();
+
+        for (int i = 0; i < 10; i++) {
+            try (InputStream is = connector.post("SELECT 1", uri)) {
+                assertEquals(StreamUtils.toString(is), "1\n2\n3\n");
+            }
+            connector.post("INSERT INTO test", new ByteArrayInputStream(new byte[]{1, 2, 3}), uri);
+        }
+        connector.close();
+
+        assertEquals(clientPorts.size(), 1);
+        assertEquals(stats.getRequests(), 20);
+        assertEquals(stats.getReleased(), 20);
+        assertEquals(stats.getClosed(), 0);
+    }
+
+    @Test
+    public void testNotFullyReadResponseIsDrained() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        HttpConnectionStats stats = new HttpConnectionStats();
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, stats);
+        clientPorts.clear();
+
+        for (int i = 0; i < 5; i++) {
+            InputStream is = connector.post("SELECT 1", uri);
+            assertEquals(is.read(), '1');
+            is.close();
+        }
+
+        assertEquals(clientPorts.size(), 1);
+        assertEquals(stats.getReleased(), 5);
+        assertEquals(stats.getClosed(), 0);
+    }
+
+    @Test
+    public void testUnclosedResponsesAreReleasedOnClose() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        HttpConnectionStats stats = new HttpConnectionStats();
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, stats);
+
+        InputStream first = connector.post("SELECT 1", uri);
+        InputStream second = connector.post("SELECT 1", uri);
+        InputStream closed = connector.post("SELECT 1", uri);
+        closed.close();
+        connector.close();
+
+        assertTrue(((ResponseInputStream) first).isClosed());
+        assertTrue(((ResponseInputStream) second).isClosed());
+        assertEquals(stats.getReleased() + stats.getClosed(), 3);
+    }
+
+    @Test
+    public void testStreamIsSentInChunks() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        byte[] data = new byte[1024 * 1024];
+        connector.post("INSERT INTO test", new ByteArrayInputStream(data), uri);
+
+        assertEquals(lastHeaders.getFirst("Transfer-encoding"), "chunked");
+        assertNull(lastHeaders.getFirst("Content-length"));
+        assertEquals(lastBodyLength, "INSERT INTO test\n".length() + data.length);
+    }
+
+    @Test
+    public void testWrittenBodyIsSentInChunks() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        connector.post("INSERT INTO test", out -> {
+            for (int i = 0; i < 1024; i++) {
+                out.write(new byte[1024]);
+            }
+        }, uri);
+
+        assertEquals(lastHeaders.getFirst("Transfer-encoding"), "chunked");
+        assertEquals(lastBodyLength, "INSERT INTO test\n".length() + 1024 * 1024);
+    }
+
+    @Test
+    public void testOpenedRequestIsSentOnFinish() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        HttpConnectionStats stats = new HttpConnectionStats();
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, stats);
+
+        StreamingRequest request = connector.openPost("INSERT INTO test", uri);
+        for (int i = 0; i < 1024; i++) {
+            request.body().write(new byte[1024]);
+        }
+        request.finish();
+
+        assertEquals(lastHeaders.getFirst("Transfer-encoding"), "chunked");
+        assertEquals(lastBodyLength, "INSERT INTO test\n".length() + 1024 * 1024);
+
+        connector.openPost("INSERT INTO test", uri).abort();
+        assertEquals(stats.getClosed(), 1);
+    }
+
+    @Test
+    public void testAsyncRequestRunsOnConnectorPool() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        String threadName = connector.postAsync("SELECT 1", uri, null)
+                .thenApply(is -> {
+                    StreamUtils.close(is);
+                    return Thread.currentThread().getName();
+                })
+                .get(10, TimeUnit.SECONDS);
+        assertTrue(threadName.startsWith("clickhouse-http-"), threadName);
+    }
+
+    @Test
+    public void testBodyIsBrokenOnWriterFailure() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        try {
+            connector.post("INSERT INTO test", out -> {
+                out.write(new byte[200 * 1024]);
+                throw new IllegalStateException("Wrong type");
+            }, new URI(uri + "body"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "Wrong type");
+        }
+        //the server doesn't get the end of the body, so nothing is inserted
+        assertEquals(completeBodies.poll(10, TimeUnit.SECONDS), Boolean.FALSE);
+    }
+
+    @Test
+    public void testKnownLengthBodyIsSentWithContentLength() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        connector.post("INSERT INTO test", Arrays.asList(new byte[]{1, 2}, new byte[]{3}), uri);
+
+        String expectedLength = String.valueOf("INSERT INTO test\n".length() + 3);
+        assertEquals(lastHeaders.getFirst("Content-length"), expectedLength);
+        assertNull(lastHeaders.getFirst("Transfer-encoding"));
+    }
+
+    @Test
+    public void testCompressedBodyIsSentInChunks() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        properties.setDecompress(true);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        connector.post("INSERT INTO test", Arrays.asList(new byte[]{1, 2}, new byte[]{3}), uri);
+
+        assertEquals(lastHeaders.getFirst("Transfer-encoding"), "chunked");
+    }
+
+    @Test
+    public void testStreamIsCompressedInParallel() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        properties.setDecompress(true);
+        properties.setMaxCompressBufferSize(4096);
+        properties.setCompressThreads(2);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 7);
+        }
+        connector.post("INSERT INTO test", new ByteArrayInputStream(data), uri);
+
+        InputStream body = new ClickHouseLZ4InputStream(new ByteArrayInputStream(lastBody));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write("INSERT INTO test\n".getBytes(UTF_8));
+        expected.write(data);
+        assertEquals(StreamUtils.toByteArray(body), expected.toByteArray());
+    }
+
+    @Test
+    public void testCompressionMethodIsUsed() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        properties.setDecompress(true);
+        properties.setCompressionMethod("zstd");
+        properties.setCompressionLevel(3);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        connector.post("INSERT INTO test", Arrays.asList(new byte[]{1, 2}, new byte[]{3}), uri);
+
+        assertEquals(lastBody[16] & 0xFF, ClickHouseCompression.ZSTD.getMethod());
+        InputStream body = new ClickHouseLZ4InputStream(new ByteArrayInputStream(lastBody));
+        assertEquals(StreamUtils.toByteArray(body), "INSERT INTO test\n\1\2\3".getBytes(UTF_8));
+    }
+
+    @Test
+    public void testExternalDataIsStreamed() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setCompress(false);
+        DefaultHttpConnector connector = new DefaultHttpConnector(properties, new HttpConnectionStats());
+
+        List<ClickHouseExternalData> externalData = Arrays.asList(
+                new ClickHouseExternalData("first", new ByteArrayInputStream("1\n2\n".getBytes(UTF_8))),
+                new ClickHouseExternalData("second", new ByteArrayInputStream("3\n".getBytes(UTF_8))));
+        try (InputStream is = connector.post(externalData, uri)) {
+            assertEquals(StreamUtils.toString(is), "1\n2\n3\n");
+        }
+
+        String contentType = lastHeaders.getFirst("Content-type");
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        assertEquals(lastHeaders.getFirst("Transfer-encoding"), "chunked");
+        assertEquals(new String(lastBody, UTF_8),
+                "--" + boundary + "\r\n"
+                        + "Content-Disposition: form-data; name=\"first\"; filename=\"first\"\r\n"
+                        + "Content-Type: application/octet-stream\r\n"
+                        + "Content-Transfer-Encoding: binary\r\n\r\n"
+                        + "1\n2\n"
+                        + "\r\n--" + boundary + "\r\n"
+                        + "Content-Disposition: form-data; name=\"second\"; filename=\"second\"\r\n"
+                        + "Content-Type: application/octet-stream\r\n"
+                        + "Content-Transfer-Encoding: binary\r\n\r\n"
+                        + "3\n"
+                        + "\r\n--" + boundary + "--\r\n");
+    }
+
+}
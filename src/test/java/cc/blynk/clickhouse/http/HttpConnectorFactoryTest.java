@@ -0,0 +1,74 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.ClickHouseDataSource;
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+public class HttpConnectorFactoryTest {
+
+    private static ClickHouseProperties properties(String connectorType, int maxConnections) {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setConnectorType(connectorType);
+        properties.setMaxConnections(maxConnections);
+        return properties;
+    }
+
+    @Test
+    public void testFactoryPerTransportConfiguration() throws Exception {
+        HttpConnectorFactory first = HttpConnectorFactory.acquire(properties("ASYNC", 11));
+        HttpConnectorFactory same = HttpConnectorFactory.acquire(properties("ASYNC", 11));
+        HttpConnectorFactory otherPool = HttpConnectorFactory.acquire(properties("ASYNC", 12));
+        HttpConnectorFactory otherType = HttpConnectorFactory.acquire(properties("DEFAULT", 11));
+
+        ClickHouseProperties otherHost = properties("ASYNC", 11);
+        otherHost.setHost("another.host.com");
+        otherHost.setUser("another");
+        HttpConnectorFactory sameTransport = HttpConnectorFactory.acquire(otherHost);
+
+        try {
+            assertSame(same, first);
+            assertSame(sameTransport, first);
+            assertNotSame(otherPool, first);
+            assertNotSame(otherType, first);
+            assertEquals(otherType.getClass(), DefaultConnectorFactory.class);
+        } finally {
+            HttpConnectorFactory.release(first);
+            HttpConnectorFactory.release(same);
+            HttpConnectorFactory.release(sameTransport);
+            HttpConnectorFactory.release(otherPool);
+            HttpConnectorFactory.release(otherType);
+        }
+    }
+
+    @Test
+    public void testFactoryIsClosedWithLastDataSource() throws Exception {
+        int sizeBefore = HttpConnectorFactory.size();
+        ClickHouseDataSource first = new ClickHouseDataSource("jdbc:clickhouse://localhost:1234/ppc",
+                properties("ASYNC", 21));
+        ClickHouseDataSource second = new ClickHouseDataSource("jdbc:clickhouse://localhost:4321/ppc",
+                properties("ASYNC", 21));
+        assertEquals(HttpConnectorFactory.size(), sizeBefore + 1);
+        HttpConnectorFactory factory = HttpConnectorFactory.acquire(properties("ASYNC", 21));
+        HttpConnectorFactory.release(factory);
+
+        first.close();
+        assertEquals(HttpConnectorFactory.size(), sizeBefore + 1);
+        //double close must not release the reference of the other datasource
+        first.close();
+        assertEquals(HttpConnectorFactory.size(), sizeBefore + 1);
+        second.close();
+        assertEquals(HttpConnectorFactory.size(), sizeBefore);
+
+        HttpConnectorFactory recreated = HttpConnectorFactory.acquire(properties("ASYNC", 21));
+        try {
+            assertNotSame(recreated, factory);
+        } finally {
+            HttpConnectorFactory.release(recreated);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package cc.blynk.clickhouse.http;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+public class SSLContextCacheTest {
+
+    private static ClickHouseProperties properties(String sslMode) {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setSsl(true);
+        properties.setSslMode(sslMode);
+        return properties;
+    }
+
+    @Test
+    public void testContextIsReused() throws Exception {
+        assertSame(SSLContextCache.getSSLContext(properties("none")),
+                SSLContextCache.getSSLContext(properties("none")));
+        assertSame(SSLContextCache.getSocketFactory(properties("none")),
+                SSLContextCache.getSocketFactory(properties("none")));
+    }
+
+    @Test
+    public void testContextPerMode() throws Exception {
+        assertNotSame(SSLContextCache.getSSLContext(properties("none")),
+                SSLContextCache.getSSLContext(properties("strict")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownMode() throws Exception {
+        SSLContextCache.getSSLContext(properties("unknown"));
+    }
+
+}
@@ -8,6 +8,7 @@ import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.TimeZone;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -15,6 +16,8 @@ import java.util.stream.Stream;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 /**
  * @author Aleksandr Kormushin <kormushin@yandex-team.ru>
@@ -244,4 +247,95 @@ public class ByteFragmentUtilsTest {
             assertEquals(parsedArray[i], array[i]);
         }
     }
+
+    @Test
+    public void testParseDoubleAsJdk() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String value = randomNumber(random);
+            assertEquals(ByteFragmentUtils.parseDouble(fragment(value)), Double.parseDouble(value), 0.0, value);
+            assertEquals(ByteFragmentUtils.parseFloat(fragment(value)), Float.parseFloat(value), 0.0F, value);
+        }
+        //shortest representations as ClickHouse prints them
+        for (int i = 0; i < 100000; i++) {
+            double expected = Double.longBitsToDouble(random.nextLong());
+            if (!Double.isNaN(expected) && !Double.isInfinite(expected)) {
+                assertEquals(ByteFragmentUtils.parseDouble(fragment(Double.toString(expected))), expected);
+            }
+            float expectedFloat = Float.intBitsToFloat(random.nextInt());
+            if (!Float.isNaN(expectedFloat) && !Float.isInfinite(expectedFloat)) {
+                assertEquals(ByteFragmentUtils.parseFloat(fragment(Float.toString(expectedFloat))), expectedFloat);
+            }
+        }
+    }
+
+    @Test
+    public void testParseDoubleSpecialValues() {
+        assertEquals(ByteFragmentUtils.parseDouble(fragment("inf")), Double.POSITIVE_INFINITY);
+        assertEquals(ByteFragmentUtils.parseDouble(fragment("+inf")), Double.POSITIVE_INFINITY);
+        assertEquals(ByteFragmentUtils.parseDouble(fragment("-inf")), Double.NEGATIVE_INFINITY);
+        assertTrue(Double.isNaN(ByteFragmentUtils.parseDouble(fragment("nan"))));
+        assertTrue(Double.isNaN(ByteFragmentUtils.parseDouble(fragment("-nan"))));
+        assertTrue(Float.isNaN(ByteFragmentUtils.parseFloat(fragment("nan"))));
+        assertEquals(ByteFragmentUtils.parseFloat(fragment("-inf")), Float.NEGATIVE_INFINITY);
+        assertEquals(ByteFragmentUtils.parseDouble(fragment("\\N")), 0.0);
+        assertEquals(Double.doubleToRawLongBits(ByteFragmentUtils.parseDouble(fragment("-0.0"))),
+                Double.doubleToRawLongBits(-0.0));
+        //the float midpoint 1 + 2^-24 needs the second rounding of the JDK
+        assertEquals(ByteFragmentUtils.parseFloat(fragment("1.000000059604644775390625")),
+                Float.parseFloat("1.000000059604644775390625"));
+        assertEquals(ByteFragmentUtils.parseFloat(fragment("1.0000000596046448")),
+                Float.parseFloat("1.0000000596046448"));
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void testParseDoubleInvalid() {
+        ByteFragmentUtils.parseDouble(fragment("1.5e"));
+    }
+
+    @Test
+    public void testParseBigDecimalAsJdk() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder value = new StringBuilder(random.nextBoolean() ? "-" : "");
+            int integerDigits = random.nextInt(25);
+            int fractionDigits = random.nextInt(integerDigits == 0 ? 20 : 25);
+            value.append(integerDigits == 0 ? "0" : "");
+            for (int j = 0; j < integerDigits; j++) {
+                value.append(random.nextInt(10));
+            }
+            if (fractionDigits > 0) {
+                value.append('.');
+                for (int j = 0; j < fractionDigits; j++) {
+                    value.append(random.nextInt(10));
+                }
+            }
+            BigDecimal parsed = ByteFragmentUtils.parseBigDecimal(fragment(value.toString()));
+            assertEquals(parsed, new BigDecimal(value.toString()), value.toString());
+            assertEquals(parsed.scale(), fractionDigits);
+        }
+        assertEquals(ByteFragmentUtils.parseBigDecimal(fragment("1e3")), new BigDecimal("1e3"));
+        assertNull(ByteFragmentUtils.parseBigDecimal(fragment("\\N")));
+    }
+
+    private static String randomNumber(Random random) {
+        StringBuilder value = new StringBuilder(random.nextInt(4) == 0 ? "-" : "");
+        int digits = 1 + random.nextInt(20);
+        int point = random.nextInt(digits + 1);
+        for (int j = 0; j < digits; j++) {
+            if (j == point) {
+                value.append('.');
+            }
+            value.append(random.nextInt(10));
+        }
+        if (random.nextInt(3) == 0) {
+            value.append(random.nextBoolean() ? 'e' : 'E').append(random.nextInt(80) - 40);
+        }
+        return value.toString();
+    }
+
+    private static ByteFragment fragment(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return new ByteFragment(bytes, 0, bytes.length);
+    }
 }
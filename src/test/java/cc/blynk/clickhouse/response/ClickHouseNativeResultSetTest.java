@@ -0,0 +1,177 @@
+package cc.blynk.clickhouse.response;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import cc.blynk.clickhouse.util.ClickHouseNativeBlockReader;
+import cc.blynk.clickhouse.util.ClickHouseNativeBlockWriter;
+import cc.blynk.clickhouse.util.ClickHouseNativeStreamCallback;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ClickHouseNativeResultSetTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final ClickHouseProperties properties = new ClickHouseProperties();
+
+    @Test
+    public void testRowsAreReadAcrossBlocks() throws Exception {
+        String[] names = {"id", "name", "n", "big"};
+        String[] types = {"Int32", "String", "Nullable(Float64)", "UInt64"};
+        ResultSet rs = resultSet(2, names, types, writer -> {
+            for (int i = 0; i < 5; i++) {
+                writer.writeInt32(i);
+                writer.writeString("name" + i);
+                if (i == 1) {
+                    writer.writeNull();
+                } else {
+                    writer.writeFloat64(i / 2.0);
+                }
+                writer.writeUInt64(Long.MAX_VALUE);
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rs.next());
+            assertEquals(rs.getRow(), i + 1);
+            assertEquals(rs.getInt(1), i);
+            assertEquals(rs.getLong("id"), i);
+            assertEquals(rs.getString("id"), String.valueOf(i));
+            assertEquals(rs.getString(2), "name" + i);
+            assertEquals(rs.getObject("name"), "name" + i);
+            assertEquals(rs.getDouble(3), i == 1 ? 0 : i / 2.0);
+            assertEquals(rs.wasNull(), i == 1);
+            assertEquals(rs.getObject(3), i == 1 ? null : i / 2.0);
+            assertEquals(rs.getObject(4), BigInteger.valueOf(Long.MAX_VALUE));
+        }
+        assertFalse(rs.next());
+        assertTrue(rs.isClosed());
+    }
+
+    @Test
+    public void testEmptyResponse() throws Exception {
+        ResultSet rs = resultSet(10, new String[]{"x"}, new String[]{"String"}, writer -> {
+        });
+
+        assertEquals(rs.getMetaData().getColumnCount(), 0);
+        assertFalse(rs.next());
+    }
+
+    @Test
+    public void testMetaDataOfEmptyBlock() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{2, 0});
+        writeString(out, "d");
+        writeString(out, "DateTime('Europe/Moscow')");
+        writeString(out, "s");
+        writeString(out, "Nullable(String)");
+        ResultSet rs = new ClickHouseNativeResultSet(
+                new ClickHouseNativeBlockReader(new ByteArrayInputStream(out.toByteArray()), 1024),
+                "db", "table", null, UTC, properties);
+
+        ResultSetMetaData metaData = rs.getMetaData();
+        assertEquals(metaData.getColumnCount(), 2);
+        assertEquals(metaData.getColumnName(1), "d");
+        assertEquals(metaData.getColumnType(1), Types.TIMESTAMP);
+        assertEquals(metaData.isNullable(2), ResultSetMetaData.columnNullable);
+        assertEquals(metaData.getTableName(1), "table");
+        assertFalse(rs.next());
+    }
+
+    @Test
+    public void testDates() throws Exception {
+        long seconds = 1_500_000_000L;
+        ResultSet rs = resultSet(10, new String[]{"d", "dt", "dtz"},
+                new String[]{"Date", "DateTime", "DateTime('Asia/Tokyo')"}, writer -> {
+                    writer.writeDate(new Date(seconds * 1000));
+                    writer.writeDateTime(new Date(seconds * 1000));
+                    writer.writeDateTime(new Date(seconds * 1000));
+                });
+
+        assertTrue(rs.next());
+        assertEquals(rs.getString("d"), "2017-07-14");
+        assertEquals(rs.getDate("d").getTime(), 1_499_990_400_000L);
+        assertEquals(rs.getString("dt"), "2017-07-14 02:40:00");
+        assertEquals(rs.getTimestamp("dt").getTime(), seconds * 1000);
+        assertEquals(rs.getString("dtz"), "2017-07-14 11:40:00");
+        assertEquals(rs.getTimestamp("dtz").getTime(), seconds * 1000);
+        assertEquals(rs.getDate("dt").getTime(), 1_499_990_400_000L);
+    }
+
+    @Test
+    public void testArraysAndDecimals() throws Exception {
+        ResultSet rs = resultSet(10, new String[]{"a", "s", "dec"},
+                new String[]{"Array(Int64)", "Array(String)", "Decimal(18, 4)"}, writer -> {
+                    writer.writeInt64Array(new long[]{1, -2, 3});
+                    writer.writeStringArray(new String[]{"x", "it's"});
+                    writer.writeInt64(12_345_678);
+                });
+
+        assertTrue(rs.next());
+        assertEquals((long[]) rs.getArray("a").getArray(), new long[]{1, -2, 3});
+        assertEquals((String[]) rs.getArray("s").getArray(), new String[]{"x", "it's"});
+        assertEquals(rs.getString("a"), "[1,-2,3]");
+        assertEquals(rs.getString("s"), "['x','it\\'s']");
+        assertEquals(rs.getBigDecimal("dec"), new BigDecimal("1234.5678"));
+        assertEquals(rs.getBigDecimal("dec", 2), new BigDecimal("1234.57"));
+        assertEquals(rs.getDouble("dec"), 1234.5678);
+    }
+
+    @Test
+    public void testMaxRows() throws Exception {
+        ClickHouseNativeResultSet rs = resultSet(2, new String[]{"x"}, new String[]{"UInt8"}, writer -> {
+            for (int i = 0; i < 5; i++) {
+                writer.writeUInt8(i);
+            }
+        });
+        rs.setMaxRows(3);
+
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        assertEquals(rs.getInt("x"), 2);
+        assertFalse(rs.next());
+    }
+
+    @Test(expectedExceptions = SQLException.class, expectedExceptionsMessageRegExp = "no column y in .*")
+    public void testUnknownColumn() throws Exception {
+        ResultSet rs = resultSet(2, new String[]{"x"}, new String[]{"UInt8"}, writer -> writer.writeUInt8(1));
+        assertTrue(rs.next());
+        rs.getInt("y");
+    }
+
+    private ClickHouseNativeResultSet resultSet(int blockRows, String[] names, String[] types,
+                                                ClickHouseNativeStreamCallback callback) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseProperties writerProperties = new ClickHouseProperties();
+        writerProperties.setNativeBlockRows(blockRows);
+        ClickHouseNativeBlockWriter writer = new ClickHouseNativeBlockWriter(out, names, types, UTC, writerProperties);
+        callback.writeTo(writer);
+        writer.flush();
+        ClickHouseNativeBlockReader reader = new ClickHouseNativeBlockReader(
+                new ByteArrayInputStream(out.toByteArray()), 16);
+        properties.setUseServerTimeZoneForDates(true);
+        return new ClickHouseNativeResultSet(reader, "db", "table", null, UTC, properties);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -14,6 +14,7 @@ import java.math.BigDecimal;
 import java.sql.Array;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.sql.Types;
 import java.util.Collection;
 import java.util.TimeZone;
@@ -415,6 +416,122 @@ public class ClickHouseResultSetTest {
         assertFalse(rs.next());
     }
 
+    @Test
+    public void testFieldsOfReusedCursor() throws Exception {
+        String response =
+                "a\tb\tc\n" +
+                        "String\tString\tUInt32\n" +
+                        "\t\\N\t1\n" +
+                        "first value\tsecond\\tvalue\t22\n" +
+                        "x\t\t333\n";
+
+        //small buffer, so the lines are moved and the buffer is grown between the rows
+        ClickHouseResultSet rs = buildResultSet(new ByteArrayInputStream(response.getBytes("UTF-8")),
+                8, "db", "table", false, null, null, props);
+
+        assertTrue(rs.next());
+        assertEquals("", rs.getString(1));
+        assertNull(rs.getString("b"));
+        assertTrue(rs.wasNull());
+        assertEquals(1, rs.getInt(3));
+
+        assertTrue(rs.next());
+        assertEquals("first value", rs.getString(1));
+        assertEquals("second\tvalue", rs.getString(2));
+        assertEquals(22L, rs.getLong(3));
+        ByteFragment[] values = rs.getValues();
+        assertEquals(3, values.length);
+        assertEquals("first value", values[0].asString());
+
+        assertTrue(rs.next());
+        assertEquals("x", rs.getString(1));
+        assertEquals("", rs.getString(2));
+        assertEquals(333, rs.getInt(3));
+
+        assertFalse(rs.next());
+    }
+
+    @Test
+    public void testWrongNumberOfFields() throws Exception {
+        String response =
+                "a\tb\n" +
+                        "String\tString\n" +
+                        "x\ty\tz\n" +
+                        "x\n";
+
+        ClickHouseResultSet rs = buildResultSet(new ByteArrayInputStream(response.getBytes("UTF-8")),
+                1024, "db", "table", false, null, null, props);
+        try {
+            rs.next();
+            fail("more fields than columns");
+        } catch (SQLException expected) {
+            assertTrue(expected.getMessage().contains("x\ty\tz"));
+        }
+        try {
+            rs.next();
+            fail("less fields than columns");
+        } catch (SQLException expected) {
+            assertTrue(expected.getMessage().contains("x"));
+        }
+    }
+
+    @Test
+    public void testColumnLabelsAndObjectTypes() throws Exception {
+        String response =
+                "id\tname\tvalue\tid\tbig\n" +
+                        "UInt32\tString\tNullable(Float64)\tInt8\tUInt64\n" +
+                        "7\tfoo\t1.5\t-1\t18446744073709551615\n" +
+                        "8\tbar\t\\N\t-2\t1\n";
+
+        ClickHouseResultSet rs = buildResultSet(new ByteArrayInputStream(response.getBytes("UTF-8")),
+                1024, "db", "table", false, null, null, props);
+        rs.next();
+        //the first of the columns with the same label
+        assertEquals(7L, rs.getObject("id"));
+        assertEquals("foo", rs.getObject("name"));
+        assertEquals(1.5, rs.getObject("value"));
+        assertEquals(-1, rs.getObject(4));
+        assertEquals(new java.math.BigInteger("18446744073709551615"), rs.getObject("big"));
+        rs.next();
+        assertEquals(8L, rs.getObject("id"));
+        assertNull(rs.getObject("value"));
+        try {
+            rs.getObject("missing");
+            fail("no such column");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage().contains("missing"));
+        }
+    }
+
+    @Test
+    public void testStringDictionary() throws Exception {
+        String response =
+                "s\tn\n" +
+                        "LowCardinality(String)\tUInt8\n" +
+                        "abc\t1\n" +
+                        "a\\tb\t1\n" +
+                        "abc\t1\n" +
+                        "\\N\t1\n" +
+                        "a\\tb\t1\n";
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setStringDictionarySize(10);
+
+        ClickHouseResultSet rs = buildResultSet(new ByteArrayInputStream(response.getBytes("UTF-8")),
+                1024, "db", "table", false, null, null, properties);
+        rs.next();
+        String first = rs.getString(1);
+        assertEquals("abc", first);
+        assertEquals("1", rs.getString(2));
+        rs.next();
+        assertEquals("a\tb", rs.getString(1));
+        rs.next();
+        assertTrue(first == rs.getString("s"));
+        rs.next();
+        assertNull(rs.getString(1));
+        rs.next();
+        assertEquals("a\tb", rs.getString(1));
+    }
+
     private static ClickHouseResultSet buildResultSet(InputStream is,
                                                       int bufferSize,
                                                       String db,
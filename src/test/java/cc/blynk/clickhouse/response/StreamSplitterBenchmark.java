@@ -0,0 +1,192 @@
+package cc.blynk.clickhouse.response;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lines and fields of a TabSeparated response split by {@link StreamSplitter} against the byte at a time
+ * splitter that allocated a new buffer on every move. Run with {@link #main(String[])} from the test classpath,
+ * the <code>bytes</code> secondary result is the throughput in bytes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamSplitterBenchmark {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    @Param({"16", "256"})
+    private int averageFieldLength;
+
+    private byte[] data;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        //16 MB of rows with 8 fields each
+        Random random = new Random(42);
+        data = new byte[16 * 1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(26));
+        }
+        int field = 0;
+        for (int i = random.nextInt(averageFieldLength * 2); i < data.length;
+             i += 1 + random.nextInt(averageFieldLength * 2)) {
+            data[i] = (byte) (++field % 8 == 0 ? '\n' : '\t');
+        }
+    }
+
+    @Benchmark
+    public long lines(Bytes bytes) throws IOException {
+        StreamSplitter splitter = new StreamSplitter(new ByteArrayInputStream(data), (byte) '\n', BUFFER_SIZE);
+        long count = 0;
+        while (splitter.next() != null) {
+            count++;
+        }
+        bytes.bytes += data.length;
+        return count;
+    }
+
+    @Benchmark
+    public long linesBefore(Bytes bytes) throws IOException {
+        ByteByByteSplitter splitter = new ByteByByteSplitter(new ByteArrayInputStream(data), BUFFER_SIZE);
+        long count = 0;
+        while (splitter.next() != null) {
+            count++;
+        }
+        bytes.bytes += data.length;
+        return count;
+    }
+
+    @Benchmark
+    public long fields(Bytes bytes) throws IOException {
+        StreamSplitter splitter = new StreamSplitter(new ByteArrayInputStream(data), (byte) '\n', BUFFER_SIZE);
+        long count = 0;
+        ByteFragment line;
+        while ((line = splitter.next()) != null) {
+            int end = line.start + line.len;
+            int tab = line.start - 1;
+            while ((tab = splitter.indexOf(line.buf, (byte) '\t', tab + 1, end)) >= 0) {
+                count++;
+            }
+        }
+        bytes.bytes += data.length;
+        return count;
+    }
+
+    @Benchmark
+    public long fieldsBefore(Bytes bytes) throws IOException {
+        ByteByByteSplitter splitter = new ByteByByteSplitter(new ByteArrayInputStream(data), BUFFER_SIZE);
+        long count = 0;
+        ByteFragment line;
+        while ((line = splitter.next()) != null) {
+            count += line.split((byte) '\t').length - 1;
+        }
+        bytes.bytes += data.length;
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(StreamSplitterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    //the line splitting of StreamSplitter before the reused buffers and the word at a time search
+    private static final class ByteByByteSplitter {
+
+        private final InputStream delegate;
+        private byte[] buf;
+        private int posRead;
+        private int posNext;
+
+        ByteByByteSplitter(InputStream delegate, int bufLength) {
+            this.delegate = delegate;
+            this.buf = new byte[bufLength];
+        }
+
+        ByteFragment next() throws IOException {
+            if (posNext >= posRead && readFromStream() <= 0) {
+                return null;
+            }
+            int positionSep;
+            while ((positionSep = indexOf(buf, posNext, posRead)) < posNext) {
+                if (readFromStream() <= 0) {
+                    positionSep = posRead;
+                    break;
+                }
+            }
+            int fragmentStart = posNext;
+            posNext = positionSep + 1;
+            return new ByteFragment(buf, fragmentStart, positionSep - fragmentStart);
+        }
+
+        private static int indexOf(byte[] array, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (array[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int readFromStream() throws IOException {
+            if (posRead >= buf.length) {
+                byte[] oldBuf = buf;
+                if (posNext > 0) {
+                    buf = new byte[buf.length];
+                    System.arraycopy(oldBuf, posNext, buf, 0, oldBuf.length - posNext);
+                    posRead -= posNext;
+                    posNext = 0;
+                } else {
+                    buf = new byte[buf.length * 2];
+                    System.arraycopy(oldBuf, 0, buf, 0, oldBuf.length);
+                }
+            }
+            int read = delegate.read(buf, posRead, buf.length - posRead);
+            if (read > 0) {
+                posRead += read;
+            }
+            return read;
+        }
+    }
+}
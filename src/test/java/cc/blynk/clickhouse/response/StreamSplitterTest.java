@@ -0,0 +1,122 @@
+package cc.blynk.clickhouse.response;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class StreamSplitterTest {
+
+    @Test
+    public void testIndexOfMatchesByteScan() {
+        Random random = new Random(42);
+        byte[] array = new byte[100];
+        ByteBuffer words = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+        for (int round = 0; round < 1000; round++) {
+            //few separators and bytes with the high bit set, which break naive zero byte checks
+            for (int i = 0; i < array.length; i++) {
+                int r = random.nextInt(20);
+                array[i] = (byte) (r == 0 ? '\t' : r == 1 ? '\n' : r < 5 ? 0x80 + r : 'a' + r);
+            }
+            int start = random.nextInt(array.length);
+            int end = start + random.nextInt(array.length - start + 1);
+            assertEquals(StreamSplitter.indexOf(words, array, (byte) '\t', start, end),
+                    naiveIndexOf(array, (byte) '\t', start, end));
+            assertEquals(StreamSplitter.indexOf(words, array, (byte) '\n', start, end),
+                    naiveIndexOf(array, (byte) '\n', start, end));
+        }
+    }
+
+    @Test
+    public void testLinesWithSmallBuffer() throws Exception {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            //lines longer than the buffer make it grow
+            StringBuilder line = new StringBuilder();
+            int length = random.nextInt(i % 50 == 0 ? 100 : 20);
+            for (int j = 0; j < length; j++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+            expected.add(line.toString());
+            text.append(line).append('\n');
+        }
+
+        StreamSplitter splitter = splitter(text.toString(), 16);
+        ByteFragment previous = null;
+        String previousValue = null;
+        for (String line : expected) {
+            ByteFragment fragment = splitter.next();
+            assertEquals(fragment.asString(), line);
+            //the previous line is kept while the next one is read
+            if (previous != null) {
+                assertEquals(previous.asString(), previousValue);
+            }
+            previous = fragment;
+            previousValue = line;
+        }
+        assertNull(splitter.next());
+    }
+
+    @Test
+    public void testLastLineWithoutSeparator() throws Exception {
+        StreamSplitter splitter = splitter("first\nsecond", 4);
+        assertEquals(splitter.next().asString(), "first");
+        assertEquals(splitter.next().asString(), "second");
+        assertNull(splitter.next());
+    }
+
+    @Test
+    public void testResetAfterBufferIsMoved() throws Exception {
+        StreamSplitter splitter = splitter("aaaaa\nbbb\ncccccc\ndd\n", 8);
+        assertEquals(splitter.next().asString(), "aaaaa");
+        splitter.mark();
+        assertEquals(splitter.next().asString(), "bbb");
+        assertEquals(splitter.next().asString(), "cccccc");
+        splitter.reset();
+        assertEquals(splitter.next().asString(), "bbb");
+        assertEquals(splitter.next().asString(), "cccccc");
+        assertEquals(splitter.next().asString(), "dd");
+        assertNull(splitter.next());
+    }
+
+    @Test
+    public void testReadsInSmallChunks() throws IOException {
+        //stream returning a few bytes per read, so the separator is searched many times in one line
+        InputStream in = new ByteArrayInputStream("0123456789abcdef\nx\n".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        StreamSplitter splitter = new StreamSplitter(in, (byte) '\n', 32);
+        assertEquals(splitter.next().asString(), "0123456789abcdef");
+        assertEquals(splitter.next().asString(), "x");
+        assertNull(splitter.next());
+    }
+
+    private static StreamSplitter splitter(String text, int bufferSize) {
+        InputStream in = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        return new StreamSplitter(in, (byte) '\n', bufferSize);
+    }
+
+    private static int naiveIndexOf(byte[] array, byte target, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (array[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
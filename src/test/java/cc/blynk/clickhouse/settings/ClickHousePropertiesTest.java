@@ -86,6 +86,23 @@ public class ClickHousePropertiesTest {
         );
     }
 
+    @Test
+    public void transportSettingsAreNotLost() throws Exception {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setConnectorType("ASYNC");
+        properties.setMaxConnections(7);
+
+        ClickHouseProperties copy = new ClickHouseProperties(properties);
+        Assert.assertEquals(copy.getConnectorType(), "ASYNC");
+        Assert.assertEquals(copy.getMaxConnections(), 7);
+
+        try (ClickHouseDataSource clickHouseDataSource = new ClickHouseDataSource(
+                "jdbc:clickhouse://localhost:8123/test", properties)) {
+            Assert.assertEquals(clickHouseDataSource.getProperties().getConnectorType(), "ASYNC");
+            Assert.assertEquals(clickHouseDataSource.getProperties().getMaxConnections(), 7);
+        }
+    }
+
     @Test
     public void additionalParametersTestClickhouseDatasource() {
         ClickHouseDataSource clickHouseDataSource = new ClickHouseDataSource(
@@ -0,0 +1,122 @@
+package cc.blynk.clickhouse.util;
+
+import cc.blynk.clickhouse.util.guava.StreamUtils;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ClickHouseBlockCodecTest {
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 13);
+        }
+        return data;
+    }
+
+    @Test
+    public void testBlocksOfDifferentSizesWithReusedBuffers() throws IOException {
+        ClickHouseBlockCodec codec = new ClickHouseBlockCodec();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] sizes = {100000, 10, 0, 70000};
+        for (int size : sizes) {
+            int compressed = codec.compress(data(size), 0, size);
+            out.write(codec.block(), 0, compressed);
+        }
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (int size : sizes) {
+            assertEquals(codec.decompress(in), size);
+            assertEquals(Arrays.copyOf(codec.decompressed(), size), data(size));
+        }
+        assertEquals(codec.decompress(in), -1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "Checksum doesn't match: corrupted data.")
+    public void testCorruptedBlock() throws IOException {
+        ClickHouseBlockCodec codec = new ClickHouseBlockCodec();
+        int compressed = codec.compress(data(1000), 0, 1000);
+        byte[] block = Arrays.copyOf(codec.block(), compressed);
+        block[compressed - 1]++;
+
+        new ClickHouseBlockCodec().decompress(new ByteArrayInputStream(block));
+    }
+
+    @DataProvider(name = "compressions")
+    public Object[][] compressions() {
+        return new Object[][]{
+                {ClickHouseCompression.NONE, 0},
+                {ClickHouseCompression.LZ4, 0},
+                {ClickHouseCompression.LZ4HC, 0},
+                {ClickHouseCompression.LZ4HC, 17},
+                {ClickHouseCompression.ZSTD, 0},
+                {ClickHouseCompression.ZSTD, 10},
+        };
+    }
+
+    @Test(dataProvider = "compressions")
+    public void testRoundTrip(ClickHouseCompression compression, int level) throws IOException {
+        ClickHouseBlockCodec codec = new ClickHouseBlockCodec(compression, level);
+        int compressed = codec.compress(data(100_000), 0, 100_000);
+        assertEquals(codec.block()[16] & 0xFF, compression.getMethod());
+
+        ClickHouseBlockCodec reader = new ClickHouseBlockCodec();
+        assertEquals(reader.decompress(new ByteArrayInputStream(codec.block(), 0, compressed)), 100_000);
+        assertEquals(Arrays.copyOf(reader.decompressed(), 100_000), data(100_000));
+    }
+
+    @Test
+    public void testMethodIsDetectedPerBlock() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (ClickHouseCompression compression : ClickHouseCompression.values()) {
+            ClickHouseLZ4OutputStream stream = new ClickHouseLZ4OutputStream(out, 4096, compression, 0);
+            stream.write(data(10_000));
+            stream.flush();
+            expected.write(data(10_000));
+        }
+
+        InputStream is = new ClickHouseLZ4InputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(StreamUtils.toByteArray(is), expected.toByteArray());
+    }
+
+    @Test
+    public void testHighCompressionIsSmaller() {
+        byte[] text = new byte[100_000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + (i * i / 7) % 11);
+        }
+        int lz4 = new ClickHouseBlockCodec(ClickHouseCompression.LZ4, 0).compress(text, 0, text.length);
+        int lz4hc = new ClickHouseBlockCodec(ClickHouseCompression.LZ4HC, 0).compress(text, 0, text.length);
+        int zstd = new ClickHouseBlockCodec(ClickHouseCompression.ZSTD, 0).compress(text, 0, text.length);
+        assertTrue(lz4hc <= lz4, lz4hc + " > " + lz4);
+        assertTrue(zstd < lz4, zstd + " >= " + lz4);
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Magic is not correct: 145")
+    public void testUnknownMethod() throws IOException {
+        ClickHouseBlockCodec codec = new ClickHouseBlockCodec();
+        int compressed = codec.compress(data(1000), 0, 1000);
+        byte[] block = Arrays.copyOf(codec.block(), compressed);
+        block[16] = (byte) 0x91;
+
+        new ClickHouseBlockCodec().decompress(new ByteArrayInputStream(block));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "unknown compression method 'gzip'")
+    public void testUnknownCompressionName() {
+        ClickHouseCompression.fromName("gzip");
+    }
+
+}
@@ -0,0 +1,37 @@
+package cc.blynk.clickhouse.util;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class ClickHouseCityHashTest {
+
+    @DataProvider(name = "hashes")
+    public Object[][] hashes() {
+        return new Object[][]{
+                {0, 4463240938071824939L, 4374473821787594281L},
+                {7, -8236135863614267642L, 220758316343543644L},
+                {15, -6392421104681388597L, 3742245006807949718L},
+                {100, 1973075251141288084L, 6209451760522593472L},
+                {127, 590069467448841837L, 431971507875445689L},
+                {128, -6440875502886890732L, -5792302764289176064L},
+                {1000, 135767024771784276L, 4034426764237042396L},
+                {4097, 6812932025341575819L, -5054016474046069910L},
+        };
+    }
+
+    @Test(dataProvider = "hashes")
+    public void testCityHash128(int length, long first, long second) {
+        //data starts at offset, as the block checksum is calculated in place
+        byte[] data = new byte[length + 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+
+        long[] hash = ClickHouseCityHash.cityHash128(data, 3, length);
+        assertEquals(hash[0], first);
+        assertEquals(hash[1], second);
+    }
+
+}
@@ -0,0 +1,91 @@
+package cc.blynk.clickhouse.util;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.testng.Assert.assertEquals;
+
+public class ClickHouseDateTimeCodecTest {
+
+    @DataProvider(name = "timeZones")
+    public Object[][] timeZones() {
+        return new Object[][] {
+                {"UTC"},
+                {"Europe/Moscow"},
+                {"America/New_York"},
+                {"America/Sao_Paulo"},
+                {"Australia/Lord_Howe"},
+                {"Asia/Kathmandu"},
+                {"Europe/Amsterdam"}
+        };
+    }
+
+    @Test(dataProvider = "timeZones")
+    public void testParseDateTimeAsSimpleDateFormat(String zone) throws Exception {
+        TimeZone timeZone = TimeZone.getTimeZone(zone);
+        ClickHouseDateTimeCodec codec = ClickHouseDateTimeCodec.of(timeZone);
+        SimpleDateFormat format = format("yyyy-MM-dd HH:mm:ss", timeZone);
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            //every hour around the transitions is hit many times
+            String value = String.format("%04d-%02d-%02d %02d:%02d:%02d", 1880 + random.nextInt(260),
+                    1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24),
+                    random.nextInt(4) * 15, random.nextInt(60));
+            byte[] bytes = ("\t" + value + "\t").getBytes(StandardCharsets.US_ASCII);
+            assertEquals(codec.parseDateTime(bytes, 1, value.length()), format.parse(value).getTime(), value);
+        }
+    }
+
+    @Test(dataProvider = "timeZones")
+    public void testParseDateAsSimpleDateFormat(String zone) throws Exception {
+        TimeZone timeZone = TimeZone.getTimeZone(zone);
+        ClickHouseDateTimeCodec codec = ClickHouseDateTimeCodec.of(timeZone);
+        SimpleDateFormat format = format("yyyy-MM-dd", timeZone);
+        for (int day = -30000; day < 70000; day += 7) {
+            String value = format.format(new java.util.Date(day * 86400000L + 43200000L));
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(codec.parseDate(bytes, 0, bytes.length), format.parse(value).getTime(), value);
+        }
+        //the time after the date is ignored
+        byte[] bytes = "2019-03-31 13:37:42".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(codec.parseDate(bytes, 0, bytes.length), format.parse("2019-03-31").getTime());
+    }
+
+    @Test(dataProvider = "timeZones")
+    public void testFormatAsSimpleDateFormat(String zone) {
+        TimeZone timeZone = TimeZone.getTimeZone(zone);
+        ClickHouseDateTimeCodec codec = ClickHouseDateTimeCodec.of(timeZone);
+        SimpleDateFormat dateTimeFormat = format("yyyy-MM-dd HH:mm:ss", timeZone);
+        SimpleDateFormat dateFormat = format("yyyy-MM-dd", timeZone);
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long millis = (random.nextLong() % (400 * 365L * 86400000L)) - 2208988800000L / 2;
+            java.util.Date date = new java.util.Date(millis);
+            assertEquals(codec.formatDateTime(millis), dateTimeFormat.format(date));
+            assertEquals(codec.formatDate(millis), dateFormat.format(date));
+        }
+    }
+
+    @Test
+    public void testLenientValues() throws Exception {
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+        ClickHouseDateTimeCodec codec = ClickHouseDateTimeCodec.of(timeZone);
+        SimpleDateFormat format = format("yyyy-MM-dd HH:mm:ss", timeZone);
+        for (String value : new String[] {"2019-02-30 00:00:00", "2019-13-01 24:00:00", "2019-03-31 02:30:00",
+                "2019-10-27 02:30:00", "0999-01-01 00:00:00", "2019-1-1 7:05:00"}) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(codec.parseDateTime(bytes, 0, bytes.length), format.parse(value).getTime(), value);
+        }
+    }
+
+    private static SimpleDateFormat format(String pattern, TimeZone timeZone) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(timeZone);
+        return format;
+    }
+}
@@ -0,0 +1,200 @@
+package cc.blynk.clickhouse.util;
+
+import net.jpountz.lz4.LZ4Compressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and allocation rate of the lz4 block compression and decompression.
+ * Run with {@link #main(String[])} from the test classpath, the gc profiler reports
+ * the allocated bytes per operation, that should not grow with the number of blocks.
+ * <code>baselineCompress</code> frames the blocks the way the stream did before the codec
+ * reused its buffers, a copy of the block and a checksum array per block, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClickHouseLZ4Benchmark {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    @Param({"1048576", "16777216"})
+    private int dataSize;
+
+    private byte[] data;
+    private byte[] compressed;
+    private byte[] readBuffer;
+
+    //the streams live as long as the trial, like the stream of a long request
+    private CountingOutputStream out;
+    private ClickHouseLZ4OutputStream compressor;
+    private BaselineLZ4OutputStream baselineCompressor;
+
+    @Setup
+    public void setup() throws IOException {
+        //half random, half repeated, so lz4 has something to compress
+        data = new byte[dataSize];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i += 64) {
+            if ((i / 64) % 2 == 0) {
+                byte[] chunk = new byte[Math.min(64, data.length - i)];
+                random.nextBytes(chunk);
+                System.arraycopy(chunk, 0, data, i, chunk.length);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ClickHouseLZ4OutputStream stream = new ClickHouseLZ4OutputStream(out, BLOCK_SIZE)) {
+            stream.write(data);
+            stream.flush();
+        }
+        compressed = out.toByteArray();
+        readBuffer = new byte[8192];
+
+        this.out = new CountingOutputStream();
+        compressor = new ClickHouseLZ4OutputStream(this.out, BLOCK_SIZE);
+        baselineCompressor = new BaselineLZ4OutputStream(this.out, BLOCK_SIZE);
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        out.count = 0;
+        compressor.write(data);
+        compressor.flush();
+        return out.count;
+    }
+
+    @Benchmark
+    public long baselineCompress() throws IOException {
+        out.count = 0;
+        baselineCompressor.write(data);
+        baselineCompressor.flush();
+        return out.count;
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        ClickHouseLZ4InputStream stream = new ClickHouseLZ4InputStream(new ByteArrayInputStream(compressed));
+        long total = 0;
+        int read;
+        while ((read = stream.read(readBuffer, 0, readBuffer.length)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ClickHouseLZ4Benchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    //previous block framing: the header and the data are copied to a new buffer for the checksum
+    private static final class BaselineLZ4OutputStream extends OutputStream {
+
+        private final OutputStream stream;
+        private final LZ4Compressor compressor = Utils.factory.fastCompressor();
+        private final byte[] currentBlock;
+        private final byte[] compressedBlock;
+        private int pointer;
+
+        BaselineLZ4OutputStream(OutputStream stream, int maxCompressBlockSize) {
+            this.stream = stream;
+            this.currentBlock = new byte[maxCompressBlockSize];
+            this.compressedBlock = new byte[compressor.maxCompressedLength(maxCompressBlockSize)];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            currentBlock[pointer++] = (byte) b;
+            if (pointer == currentBlock.length) {
+                writeBlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int toCopy = Math.min(len, currentBlock.length - pointer);
+                System.arraycopy(b, off, currentBlock, pointer, toCopy);
+                pointer += toCopy;
+                off += toCopy;
+                len -= toCopy;
+                if (pointer == currentBlock.length) {
+                    writeBlock();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (pointer != 0) {
+                writeBlock();
+            }
+            stream.flush();
+        }
+
+        private void writeBlock() throws IOException {
+            int compressedSize = compressor.compress(currentBlock, 0, pointer, compressedBlock, 0);
+            ByteBuffer block = ByteBuffer.allocate(compressedSize + 9)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .put((byte) ClickHouseLZ4InputStream.MAGIC)
+                    .putInt(compressedSize + 9)
+                    .putInt(pointer)
+                    .put(compressedBlock, 0, compressedSize);
+            long[] sum = ClickHouseCityHash.cityHash128(block.array(), 0, block.capacity());
+            byte[] checksum = ByteBuffer.allocate(16)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .putLong(sum[0])
+                    .putLong(sum[1])
+                    .array();
+            stream.write(checksum);
+            stream.write(block.array());
+            pointer = 0;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
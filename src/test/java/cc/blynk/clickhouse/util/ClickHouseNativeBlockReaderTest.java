@@ -0,0 +1,185 @@
+package cc.blynk.clickhouse.util;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ClickHouseNativeBlockReaderTest {
+
+    private static final String[] NAMES = {"i8", "u32", "i64", "f32", "f64", "s", "n", "arr", "d", "dt"};
+    private static final String[] TYPES = {"Int8", "UInt32", "Int64", "Float32", "Float64", "String",
+            "Nullable(String)", "Array(Int32)", "Date", "DateTime"};
+
+    @Test
+    public void testColumnsAreDecodedIntoVectors() throws Exception {
+        byte[] bytes = write(3, writer -> {
+            for (int i = 0; i < 5; i++) {
+                writer.writeInt8(-i);
+                writer.writeUInt32(0xFFFFFFFFL - i);
+                writer.writeInt64(Long.MIN_VALUE + i);
+                writer.writeFloat32(i + 0.5f);
+                writer.writeFloat64(i * 1.25);
+                writer.writeString("value " + i);
+                if (i % 2 == 0) {
+                    writer.writeNull();
+                } else {
+                    writer.writeString("n" + i);
+                }
+                int[] array = new int[i];
+                Arrays.fill(array, i);
+                writer.writeInt32Array(array);
+                writer.writeDate(new Date(86_400_000L * (i + 1)));
+                writer.writeDateTime(new Date(1_000_000_000_000L + i * 1000));
+            }
+        });
+
+        //small buffer, so the values are split between the reads
+        ClickHouseNativeBlockReader reader = new ClickHouseNativeBlockReader(new ByteArrayInputStream(bytes), 7);
+
+        ClickHouseNativeBlock block = reader.readBlock();
+        assertEquals(block.getRows(), 3);
+        assertEquals(block.getColumnCount(), NAMES.length);
+        checkRows(block, 0);
+
+        assertSame(reader.readBlock(), block);
+        assertEquals(block.getRows(), 2);
+        checkRows(block, 3);
+
+        assertNull(reader.readBlock());
+    }
+
+    private static void checkRows(ClickHouseNativeBlock block, int first) {
+        for (int row = 0; row < block.getRows(); row++) {
+            int i = first + row;
+            assertEquals(block.getColumn("i8").getLongs()[row], -i);
+            assertEquals(block.getColumn("u32").getLongs()[row], 0xFFFFFFFFL - i);
+            assertEquals(block.getColumn("i64").getLong(row), Long.MIN_VALUE + i);
+            assertEquals(block.getColumn("f32").getDoubles()[row], i + 0.5);
+            assertEquals(block.getColumn("f64").getDouble(row), i * 1.25);
+            assertEquals(block.getColumn("s").getString(row), "value " + i);
+
+            ClickHouseNativeColumn nullable = block.getColumn("n");
+            assertEquals(nullable.isNull(row), i % 2 == 0);
+            assertEquals(nullable.getString(row), i % 2 == 0 ? null : "n" + i);
+
+            ClickHouseNativeColumn array = block.getColumn("arr");
+            assertTrue(array.isArray());
+            int start = array.getArrayOffsets()[row];
+            assertEquals(array.getArrayOffsets()[row + 1] - start, i);
+            for (int j = 0; j < i; j++) {
+                assertEquals(array.getElements().getLong(start + j), i);
+            }
+
+            assertEquals(block.getColumn("d").getLong(row), i + 1);
+            assertEquals(block.getColumn("dt").getLong(row), 1_000_000_000L + i);
+        }
+    }
+
+    @Test
+    public void testFixedWidthTypes() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        String[] names = {"u", "dec", "big", "fs", "u64", "e"};
+        String[] types = {"UUID", "Decimal(9, 2)", "Decimal128(3)", "FixedString(3)", "UInt64",
+                "Enum8('a' = -1, 'b\\'c' = 5)"};
+        byte[] bytes = write(100, names, types, writer -> {
+            writer.writeUUID(uuid);
+            writer.writeInt32(-12345);
+            writer.writeDecimal(new BigDecimal("-0.123"));
+            writer.writeFixedString("ab".getBytes(UTF_8));
+            writer.writeInt64(-1);
+            writer.writeInt8(5);
+        });
+
+        ClickHouseNativeBlock block = new ClickHouseNativeBlockReader(new ByteArrayInputStream(bytes), 1024)
+                .readBlock();
+
+        assertEquals(block.getColumn("u").getUUID(0), uuid);
+        assertEquals(block.getColumn("u").getString(0), uuid.toString());
+        assertEquals(block.getColumn("dec").getBigDecimal(0), new BigDecimal("-123.45"));
+        assertEquals(block.getColumn("dec").getString(0), "-123.45");
+        assertEquals(block.getColumn("big").getBigDecimal(0), new BigDecimal("-0.123"));
+        assertEquals(block.getColumn("fs").getBytes(0), new byte[]{'a', 'b', 0});
+        assertEquals(block.getColumn("u64").getString(0), "18446744073709551615");
+        assertEquals(block.getColumn("e").getString(0), "b'c");
+        assertEquals(block.getColumn("e").getLong(0), 5);
+    }
+
+    @Test
+    public void testEmptyBlockHasColumns() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{1, 0, 1, 'x', 6});
+        out.write("String".getBytes(UTF_8));
+
+        ClickHouseNativeBlockReader reader =
+                new ClickHouseNativeBlockReader(new ByteArrayInputStream(out.toByteArray()), 1024);
+        ClickHouseNativeBlock block = reader.readBlock();
+        assertEquals(block.getRows(), 0);
+        assertEquals(block.getColumn(0).getName(), "x");
+        assertFalse(block.getColumn(0).isNullable());
+        assertNull(reader.readBlock());
+    }
+
+    @Test(expectedExceptions = IOException.class,
+            expectedExceptionsMessageRegExp = "Unsupported Native column type LowCardinality\\(String\\)")
+    public void testUnsupportedType() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{1, 1, 1, 'x', 22});
+        out.write("LowCardinality(String)".getBytes(UTF_8));
+        new ClickHouseNativeBlockReader(new ByteArrayInputStream(out.toByteArray()), 1024).readBlock();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testTruncatedBlock() throws Exception {
+        byte[] bytes = write(100, writer -> {
+            for (int i = 0; i < 10; i++) {
+                writeRow(writer, i);
+            }
+        });
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        new ClickHouseNativeBlockReader(new ByteArrayInputStream(truncated), 1024).readBlock();
+    }
+
+    private static void writeRow(ClickHouseNativeBlockWriter writer, int i) throws IOException {
+        writer.writeInt8(i);
+        writer.writeUInt32(i);
+        writer.writeInt64(i);
+        writer.writeFloat32(i);
+        writer.writeFloat64(i);
+        writer.writeString("");
+        writer.writeNull();
+        writer.writeInt32Array(new int[0]);
+        writer.writeDate(new Date(0));
+        writer.writeDateTime(new Date(0));
+    }
+
+    private static byte[] write(int blockRows, ClickHouseNativeStreamCallback callback) throws IOException {
+        return write(blockRows, NAMES, TYPES, callback);
+    }
+
+    static byte[] write(int blockRows, String[] names, String[] types,
+                        ClickHouseNativeStreamCallback callback) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setNativeBlockRows(blockRows);
+        ClickHouseNativeBlockWriter writer =
+                new ClickHouseNativeBlockWriter(out, names, types, TimeZone.getTimeZone("UTC"), properties);
+        callback.writeTo(writer);
+        writer.flush();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,232 @@
+package cc.blynk.clickhouse.util;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ClickHouseNativeBlockWriterTest {
+
+    private static final String[] NAMES = {"a", "s", "n", "arr"};
+    private static final String[] TYPES = {"Int32", "String", "Nullable(UInt8)", "Array(Int64)"};
+
+    @Test
+    public void testBlockIsWrittenColumnByColumn() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseNativeBlockWriter writer = writer(out, NAMES, TYPES, 100);
+
+        writer.writeInt32(1);
+        writer.writeString("ab");
+        writer.writeNull();
+        writer.writeInt64Array(new long[]{5});
+
+        writer.writeInt32(-1);
+        writer.writeString("");
+        writer.writeUInt8(7);
+        writer.writeInt64Array(new long[0]);
+        writer.flush();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(new byte[]{4, 2});
+        string(expected, "a");
+        string(expected, "Int32");
+        expected.write(new byte[]{1, 0, 0, 0, -1, -1, -1, -1});
+        string(expected, "s");
+        string(expected, "String");
+        expected.write(new byte[]{2, 'a', 'b', 0});
+        string(expected, "n");
+        string(expected, "Nullable(UInt8)");
+        expected.write(new byte[]{1, 0, 0, 7});
+        string(expected, "arr");
+        string(expected, "Array(Int64)");
+        expected.write(new byte[]{1, 0, 0, 0, 0, 0, 0, 0});
+        expected.write(new byte[]{1, 0, 0, 0, 0, 0, 0, 0});
+        expected.write(new byte[]{5, 0, 0, 0, 0, 0, 0, 0});
+
+        assertEquals(out.toByteArray(), expected.toByteArray());
+    }
+
+    @Test
+    public void testBlocksAreSplitByRows() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseNativeBlockWriter writer = writer(out, new String[]{"x"}, new String[]{"UInt16"}, 2);
+
+        writer.writeUInt16(1);
+        writer.writeUInt16(2);
+        //the full block is written right away
+        int firstBlock = out.size();
+        assertTrue(firstBlock > 0);
+        writer.writeUInt16(3);
+        writer.flush();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(new byte[]{1, 2});
+        string(expected, "x");
+        string(expected, "UInt16");
+        expected.write(new byte[]{1, 0, 2, 0});
+        expected.write(new byte[]{1, 1});
+        string(expected, "x");
+        string(expected, "UInt16");
+        expected.write(new byte[]{3, 0});
+
+        assertEquals(firstBlock, 2 + 2 + 7 + 4);
+        assertEquals(out.toByteArray(), expected.toByteArray());
+    }
+
+    @Test
+    public void testEmptyFlushWritesNothing() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer(out, NAMES, TYPES, 100).flush();
+        assertEquals(out.size(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "Column a of type Int32 can't be written as Int64")
+    public void testValueOfWrongTypeIsRejected() throws Exception {
+        writer(new ByteArrayOutputStream(), NAMES, TYPES, 100).writeInt64(1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "Column a of type Int32 can't be written as Float32")
+    public void testValueOfSameWidthButOtherTypeIsRejected() throws Exception {
+        writer(new ByteArrayOutputStream(), NAMES, TYPES, 100).writeFloat32(1);
+    }
+
+    @Test
+    public void testDecimalIsWrittenWithColumnScale() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseNativeBlockWriter writer = writer(out, new String[]{"d", "l", "w"},
+                new String[]{"Decimal(9, 2)", "Nullable(Decimal64(3))", "Decimal128(1)"}, 100);
+        writer.writeDecimal(new BigDecimal("1.5"));
+        writer.writeDecimal(new BigDecimal("-2"));
+        writer.writeDecimal(new BigDecimal("-0.1"));
+        writer.flush();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(new byte[]{3, 1});
+        string(expected, "d");
+        string(expected, "Decimal(9, 2)");
+        expected.write(new byte[]{-106, 0, 0, 0});
+        string(expected, "l");
+        string(expected, "Nullable(Decimal64(3))");
+        expected.write(new byte[]{0, 48, -8, -1, -1, -1, -1, -1, -1});
+        string(expected, "w");
+        string(expected, "Decimal128(1)");
+        byte[] minusOne = new byte[16];
+        Arrays.fill(minusOne, (byte) -1);
+        expected.write(minusOne);
+
+        assertEquals(out.toByteArray(), expected.toByteArray());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "Not a Decimal\\(9, 2\\) value: 1.005")
+    public void testDecimalIsNotRounded() throws Exception {
+        ClickHouseNativeBlockWriter writer = writer(new ByteArrayOutputStream(), new String[]{"d"},
+                new String[]{"Decimal(9, 2)"}, 100);
+        writer.writeDecimal(new BigDecimal("1.005"));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "Not a UInt16 value: -1")
+    public void testDateBeforeEpochIsRejected() throws Exception {
+        ClickHouseNativeBlockWriter writer = writer(new ByteArrayOutputStream(), new String[]{"d"},
+                new String[]{"Date"}, 100);
+        writer.writeDate(new Date(-1));
+    }
+
+    @Test
+    public void testRejectedDateArrayIsNotWritten() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseNativeBlockWriter writer = writer(out, new String[]{"d", "t"},
+                new String[]{"Array(Date)", "Array(DateTime)"}, 100);
+        try {
+            writer.writeDateArray(new Date[]{new Date(0), null});
+            fail();
+        } catch (NullPointerException expected) {
+            //the offsets are not updated
+        }
+        try {
+            writer.writeDateArray(new Date[]{new Date(0), new Date(-1)});
+            fail();
+        } catch (IllegalStateException expected) {
+            //the offsets are not updated
+        }
+        writer.writeDateArray(new Date[]{new Date(TimeUnit.DAYS.toMillis(1))});
+        try {
+            writer.writeDateTimeArray(new Date[]{new Date(-1000)});
+            fail();
+        } catch (IllegalStateException expected) {
+            //the offsets are not updated
+        }
+        writer.writeDateTimeArray(new Date[]{new Date(2000), new Date(3000)});
+        writer.flush();
+
+        ClickHouseNativeBlock block =
+                new ClickHouseNativeBlockReader(new ByteArrayInputStream(out.toByteArray()), 64).readBlock();
+        assertEquals(block.getRows(), 1);
+        assertEquals(block.getColumn("d").getArrayOffsets()[1], 1);
+        assertEquals(block.getColumn("d").getElements().getLong(0), 1);
+        assertEquals(block.getColumn("t").getArrayOffsets()[1], 2);
+        assertEquals(block.getColumn("t").getElements().getLong(1), 3);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "Column s of type String can't be written as NULL")
+    public void testNullIsRejectedForNotNullableColumn() throws Exception {
+        ClickHouseNativeBlockWriter writer = writer(new ByteArrayOutputStream(), NAMES, TYPES, 100);
+        writer.writeInt32(1);
+        writer.writeNull();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "Row is not complete, next column is s")
+    public void testIncompleteRowIsNotFlushed() throws Exception {
+        ClickHouseNativeBlockWriter writer = writer(new ByteArrayOutputStream(), NAMES, TYPES, 100);
+        writer.writeInt32(1);
+        writer.flush();
+    }
+
+    @Test
+    public void testFixedStringIsPadded() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseNativeBlockWriter writer = writer(out, new String[]{"f"}, new String[]{"FixedString(3)"}, 100);
+        writer.writeFixedString(new byte[]{'a'});
+        writer.flush();
+
+        byte[] bytes = out.toByteArray();
+        byte[] data = new byte[3];
+        System.arraycopy(bytes, bytes.length - 3, data, 0, 3);
+        assertEquals(data, new byte[]{'a', 0, 0});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "Unsupported Native column type LowCardinality\\(String\\)")
+    public void testUnsupportedTypeIsRejected() {
+        writer(new ByteArrayOutputStream(), new String[]{"x"}, new String[]{"LowCardinality(String)"}, 100);
+    }
+
+    private static ClickHouseNativeBlockWriter writer(ByteArrayOutputStream out, String[] names, String[] types,
+                                                      int blockRows) {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setNativeBlockRows(blockRows);
+        return new ClickHouseNativeBlockWriter(out, names, types, TimeZone.getTimeZone("UTC"), properties);
+    }
+
+    private static void string(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,145 @@
+package cc.blynk.clickhouse.util;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ClickHouseParallelLZ4OutputStreamTest {
+
+    @DataProvider(name = "parallelism")
+    public Object[][] parallelism() {
+        return new Object[][]{{1}, {2}, {4}};
+    }
+
+    @Test(dataProvider = "parallelism")
+    public void testSameAsSequentialStream(int parallelism) throws Exception {
+        byte[] data = randomData(1_000_000);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ClickHouseLZ4OutputStream sequential = new ClickHouseLZ4OutputStream(expected, 4096);
+        sequential.write(data);
+        sequential.write(42);
+        sequential.flush();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        ClickHouseParallelLZ4OutputStream parallel = new ClickHouseParallelLZ4OutputStream(actual, 4096, parallelism);
+        //uneven writes, so blocks are filled by several calls
+        for (int off = 0; off < data.length; off += 1000) {
+            parallel.write(data, off, Math.min(1000, data.length - off));
+        }
+        parallel.write(42);
+        parallel.flush();
+
+        assertEquals(actual.toByteArray(), expected.toByteArray());
+    }
+
+    @Test
+    public void testBlocksInFlightAreBounded() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(16);
+        try {
+            ClickHouseParallelLZ4OutputStream stream = new ClickHouseParallelLZ4OutputStream(
+                    new ByteArrayOutputStream(), 1024, 2, ClickHouseCompression.LZ4, 0,
+                    task -> workers.execute(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        //the writer may reuse the block as soon as the task completes
+                        running.decrementAndGet();
+                        task.run();
+                    }));
+            stream.write(randomData(100 * 1024));
+            stream.flush();
+        } finally {
+            workers.shutdown();
+        }
+        assertTrue(maxRunning.get() <= 4, "in flight " + maxRunning.get());
+    }
+
+    @Test
+    public void testCompressionsAreBoundedByParallelism() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(16);
+        try {
+            ClickHouseParallelLZ4OutputStream stream = new ClickHouseParallelLZ4OutputStream(
+                    new ByteArrayOutputStream(), 1024, 2, ClickHouseCompression.LZ4, 0,
+                    task -> workers.execute(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        //the next block of the lane is submitted as soon as the task completes
+                        running.decrementAndGet();
+                        task.run();
+                    }));
+            stream.write(randomData(100 * 1024));
+            stream.flush();
+        } finally {
+            workers.shutdown();
+        }
+        assertTrue(maxRunning.get() <= 2, "running " + maxRunning.get());
+    }
+
+    @Test
+    public void testCloseWaitsForCompression() throws Exception {
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            ClickHouseParallelLZ4OutputStream stream = new ClickHouseParallelLZ4OutputStream(
+                    new ByteArrayOutputStream(), 1024, 2, ClickHouseCompression.LZ4, 0,
+                    task -> {
+                        submitted.incrementAndGet();
+                        workers.execute(() -> {
+                            try {
+                                Thread.sleep(50);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            //the block is released once the task completes
+                            completed.incrementAndGet();
+                            task.run();
+                        });
+                    });
+            stream.write(randomData(3 * 1024));
+            stream.close();
+
+            assertEquals(completed.get(), submitted.get());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    public void testFlushWithoutData() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseParallelLZ4OutputStream stream = new ClickHouseParallelLZ4OutputStream(out, 4096, 2);
+        stream.flush();
+        assertEquals(out.size(), 0);
+    }
+
+    private static byte[] randomData(int size) {
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+}
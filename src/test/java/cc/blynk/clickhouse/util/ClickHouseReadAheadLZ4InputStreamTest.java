@@ -0,0 +1,150 @@
+package cc.blynk.clickhouse.util;
+
+import cc.blynk.clickhouse.util.guava.StreamUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ClickHouseReadAheadLZ4InputStreamTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSameAsSequentialStream() throws Exception {
+        byte[] data = randomData(1_000_000);
+        byte[] compressed = compress(data, 4096);
+
+        ClickHouseReadAheadStats stats = new ClickHouseReadAheadStats();
+        InputStream is = new ClickHouseReadAheadLZ4InputStream(new ByteArrayInputStream(compressed), 3,
+                executor, stats);
+        assertEquals(is.read(), data[0] & 0xFF);
+        byte[] rest = StreamUtils.toByteArray(is);
+        assertEquals(rest.length, data.length - 1);
+        for (int i = 0; i < rest.length; i++) {
+            if (rest[i] != data[i + 1]) {
+                throw new AssertionError("mismatch at " + (i + 1));
+            }
+        }
+        assertEquals(is.read(), -1);
+        assertEquals(stats.getBlocks(), (data.length + 4095) / 4096);
+    }
+
+    @Test
+    public void testStallsAreCounted() throws Exception {
+        byte[] data = randomData(100_000);
+        //source that is slower than the reader
+        InputStream slow = new ByteArrayInputStream(compress(data, 4096)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.read(b, off, len);
+            }
+        };
+
+        ClickHouseReadAheadStats stats = new ClickHouseReadAheadStats();
+        InputStream is = new ClickHouseReadAheadLZ4InputStream(slow, 2, executor, stats);
+        assertEquals(StreamUtils.toByteArray(is), data);
+        assertTrue(stats.getStalls() > 0, stats.toString());
+        assertTrue(stats.getStalls() <= stats.getBlocks() + 1, stats.toString());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "Checksum doesn't match: corrupted data.")
+    public void testCorruptedBlockIsReportedToReader() throws Exception {
+        byte[] compressed = compress(randomData(10_000), 4096);
+        compressed[compressed.length - 1]++;
+
+        InputStream is = new ClickHouseReadAheadLZ4InputStream(new ByteArrayInputStream(compressed), 2,
+                executor, new ClickHouseReadAheadStats());
+        StreamUtils.toByteArray(is);
+    }
+
+    @Test
+    public void testCloseStopsReadAhead() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream source = new ByteArrayInputStream(compress(randomData(1_000_000), 4096)) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+
+        InputStream is = new ClickHouseReadAheadLZ4InputStream(source, 2, executor, new ClickHouseReadAheadStats());
+        is.read();
+        is.close();
+        assertTrue(closed.get());
+        //second close does nothing
+        is.close();
+    }
+
+    @Test(timeOut = 10_000)
+    public void testCloseUnblocksStuckRead() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        //a socket read doesn't react to the interrupt, it fails once the socket is closed
+        InputStream source = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                while (true) {
+                    try {
+                        closed.await();
+                        throw new IOException("Socket closed");
+                    } catch (InterruptedException ignored) {
+                        //keeps blocking
+                    }
+                }
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        };
+
+        InputStream is = new ClickHouseReadAheadLZ4InputStream(source, 2, executor, new ClickHouseReadAheadStats());
+        reading.await();
+        is.close();
+        assertEquals(closed.getCount(), 0);
+    }
+
+    private static byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseLZ4OutputStream stream = new ClickHouseLZ4OutputStream(out, blockSize);
+        stream.write(data);
+        stream.flush();
+        return out.toByteArray();
+    }
+
+    private static byte[] randomData(int size) {
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+}
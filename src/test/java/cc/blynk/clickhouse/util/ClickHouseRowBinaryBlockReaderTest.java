@@ -0,0 +1,178 @@
+package cc.blynk.clickhouse.util;
+
+import cc.blynk.clickhouse.settings.ClickHouseProperties;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ClickHouseRowBinaryBlockReaderTest {
+
+    private static final String[] NAMES = {"i16", "u64", "f32", "s", "lc", "n", "arr", "narr", "uuid"};
+    private static final String[] TYPES = {"Int16", "UInt64", "Float32", "String", "LowCardinality(String)",
+            "Nullable(Int32)", "Array(Array(String))", "Array(Nullable(Float64))", "UUID"};
+
+    @Test
+    public void testRowsAreDecodedIntoBlocks() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        byte[] bytes = write(NAMES, TYPES, stream -> {
+            for (int i = 0; i < 5; i++) {
+                stream.writeInt16(-i);
+                //same bytes as UInt64 2^64 - 1 - i
+                stream.writeInt64(-1L - i);
+                stream.writeFloat32(i + 0.5f);
+                stream.writeString("value " + i);
+                stream.writeString("lc" + i);
+                if (i % 2 == 0) {
+                    stream.writeByte((byte) 1);
+                } else {
+                    stream.writeByte((byte) 0);
+                    stream.writeInt32(i * 100);
+                }
+                stream.writeUnsignedLeb128(i);
+                for (int j = 0; j < i; j++) {
+                    String[] strings = new String[j];
+                    Arrays.fill(strings, "s" + j);
+                    stream.writeStringArray(strings);
+                }
+                stream.writeUnsignedLeb128(2);
+                stream.writeByte((byte) 1);
+                stream.writeByte((byte) 0);
+                stream.writeFloat64(i * 1.25);
+                stream.writeUUID(uuid);
+            }
+        });
+
+        //small buffer, so the values are split between the reads
+        ClickHouseRowBinaryBlockReader reader =
+                new ClickHouseRowBinaryBlockReader(new ByteArrayInputStream(bytes), 7, 3);
+
+        ClickHouseNativeBlock block = reader.readBlock();
+        assertEquals(block.getRows(), 3);
+        assertEquals(block.getColumnCount(), NAMES.length);
+        checkRows(block, 0, uuid);
+
+        assertSame(reader.readBlock(), block);
+        assertEquals(block.getRows(), 2);
+        checkRows(block, 3, uuid);
+
+        assertNull(reader.readBlock());
+    }
+
+    private static void checkRows(ClickHouseNativeBlock block, int first, UUID uuid) {
+        for (int row = 0; row < block.getRows(); row++) {
+            int i = first + row;
+            assertEquals(block.getColumn("i16").getLongs()[row], -i);
+            assertEquals(block.getColumn("u64").getString(row), Long.toUnsignedString(-1L - i));
+            assertEquals(block.getColumn("f32").getDouble(row), i + 0.5);
+            assertEquals(block.getColumn("s").getString(row), "value " + i);
+            assertEquals(block.getColumn("lc").getString(row), "lc" + i);
+
+            ClickHouseNativeColumn nullable = block.getColumn("n");
+            assertEquals(nullable.isNull(row), i % 2 == 0);
+            assertEquals(nullable.getLong(row), i % 2 == 0 ? 0 : i * 100);
+
+            ClickHouseNativeColumn arrays = block.getColumn("arr");
+            int[] offsets = arrays.getArrayOffsets();
+            assertEquals(offsets[row + 1] - offsets[row], i);
+            ClickHouseNativeColumn inner = arrays.getElements();
+            for (int j = 0; j < i; j++) {
+                int element = offsets[row] + j;
+                int[] innerOffsets = inner.getArrayOffsets();
+                assertEquals(innerOffsets[element + 1] - innerOffsets[element], j);
+                for (int k = innerOffsets[element]; k < innerOffsets[element + 1]; k++) {
+                    assertEquals(inner.getElements().getString(k), "s" + j);
+                }
+            }
+
+            ClickHouseNativeColumn nullableElements = block.getColumn("narr").getElements();
+            int start = block.getColumn("narr").getArrayOffsets()[row];
+            assertTrue(nullableElements.isNull(start));
+            assertFalse(nullableElements.isNull(start + 1));
+            assertEquals(nullableElements.getDouble(start + 1), i * 1.25);
+
+            assertEquals(block.getColumn("uuid").getUUID(row), uuid);
+        }
+    }
+
+    @Test
+    public void testHeaderWithoutRows() throws Exception {
+        byte[] bytes = write(new String[]{"x"}, new String[]{"UInt8"}, stream -> { });
+        ClickHouseRowBinaryBlockReader reader =
+                new ClickHouseRowBinaryBlockReader(new ByteArrayInputStream(bytes), 16, 10);
+        ClickHouseNativeBlock block = reader.readBlock();
+        assertEquals(block.getRows(), 0);
+        assertEquals(block.getColumn(0).getType(), "UInt8");
+        assertNull(reader.readBlock());
+    }
+
+    @Test
+    public void testFloatsAreFormattedAsByServer() throws Exception {
+        byte[] bytes = write(new String[]{"f32", "f64"}, new String[]{"Float32", "Float64"}, stream -> {
+            float[] floats = {1, -0.5f, 0.1f, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN, 1e-7f};
+            double[] doubles = {1, -0.5, 0.1, 1e20, 1e21, -1.5e-7, Double.NaN};
+            for (int i = 0; i < floats.length; i++) {
+                stream.writeFloat32(floats[i]);
+                stream.writeFloat64(doubles[i]);
+            }
+        });
+        ClickHouseNativeBlock block =
+                new ClickHouseRowBinaryBlockReader(new ByteArrayInputStream(bytes), 16, 10).readBlock();
+        String[] f32 = {"1", "-0.5", "0.1", "inf", "-inf", "nan", "1e-7"};
+        String[] f64 = {"1", "-0.5", "0.1", "100000000000000000000", "1e21", "-1.5e-7", "nan"};
+        for (int row = 0; row < f32.length; row++) {
+            assertEquals(block.getColumn("f32").getString(row), f32[row]);
+            assertEquals(block.getColumn("f64").getString(row), f64[row]);
+        }
+    }
+
+    @Test
+    public void testEmptyStream() throws Exception {
+        ClickHouseRowBinaryBlockReader reader =
+                new ClickHouseRowBinaryBlockReader(new ByteArrayInputStream(new byte[0]), 16, 10);
+        assertNull(reader.readBlock());
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testTruncatedRow() throws Exception {
+        byte[] bytes = write(new String[]{"x", "y"}, new String[]{"UInt8", "String"}, stream -> {
+            stream.writeUInt8(1);
+            stream.writeString("y");
+            stream.writeUInt8(2);
+        });
+        new ClickHouseRowBinaryBlockReader(new ByteArrayInputStream(bytes), 16, 10).readBlock();
+    }
+
+    @Test(expectedExceptions = ClickHouseUnsupportedTypeException.class,
+            expectedExceptionsMessageRegExp = "Unsupported Native column type Map\\(String, String\\)")
+    public void testUnsupportedType() throws Exception {
+        byte[] bytes = write(new String[]{"m"}, new String[]{"Map(String, String)"}, stream -> { });
+        new ClickHouseRowBinaryBlockReader(new ByteArrayInputStream(bytes), 16, 10).readBlock();
+    }
+
+    static byte[] write(String[] names, String[] types, ClickHouseStreamCallback rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream stream =
+                new ClickHouseRowBinaryStream(out, TimeZone.getTimeZone("UTC"), new ClickHouseProperties());
+        stream.writeUnsignedLeb128(names.length);
+        for (String name : names) {
+            stream.writeString(name);
+        }
+        for (String type : types) {
+            stream.writeString(type);
+        }
+        rows.writeTo(stream);
+        return out.toByteArray();
+    }
+}
@@ -4,11 +4,18 @@ import cc.blynk.clickhouse.settings.ClickHouseProperties;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.Date;
+import java.util.Random;
 import java.util.TimeZone;
+import java.util.UUID;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class ClickHouseRowBinaryInputStreamTest {
 
@@ -110,6 +117,97 @@ public class ClickHouseRowBinaryInputStreamTest {
         assertEquals(input.readUnsignedLeb128(), 100000000);
     }
 
+    @Test
+    public void testArraysLargerThanBuffer() throws Exception {
+        Random random = new Random(42);
+        long[] longs = random.longs(20000).toArray();
+        double[] doubles = random.doubles(20000).toArray();
+        int[] ints = random.ints(30000).toArray();
+        float[] floats = new float[30000];
+        short[] shorts = new short[70000];
+        byte[] bytes = new byte[100000];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = random.nextFloat();
+        }
+        for (int i = 0; i < shorts.length; i++) {
+            shorts[i] = (short) random.nextInt();
+        }
+        random.nextBytes(bytes);
+        UUID uuid = UUID.randomUUID();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream stream =
+                new ClickHouseRowBinaryStream(out, TimeZone.getTimeZone("UTC"), new ClickHouseProperties());
+        stream.writeInt8((byte) 7);
+        stream.writeInt64Array(longs);
+        stream.writeFloat64Array(doubles);
+        stream.writeString("between");
+        stream.writeInt32Array(ints);
+        stream.writeFloat32Array(floats);
+        stream.writeInt16Array(shorts);
+        stream.writeInt8Array(bytes);
+        stream.writeUUID(uuid);
+        stream.writeUnsignedLeb128(100000000);
+        stream.flush();
+
+        //short reads, so the values are split between the refills
+        InputStream in = new ByteArrayInputStream(out.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7777));
+            }
+        };
+        ClickHouseRowBinaryInputStream input =
+                new ClickHouseRowBinaryInputStream(in, TimeZone.getTimeZone("UTC"), new ClickHouseProperties());
+        assertEquals(input.readInt8(), 7);
+        assertEquals(input.readInt64Array(), longs);
+        assertEquals(input.readFloat64Array(), doubles);
+        assertEquals(input.readString(), "between");
+        assertEquals(input.readInt32Array(), ints);
+        assertEquals(input.readFloat32Array(), floats);
+        assertEquals(input.readInt16Array(), shorts);
+        assertEquals(input.readInt8Array(), bytes);
+        assertEquals(input.readUUID(), uuid);
+        assertTrue(input.hasNext());
+        assertEquals(input.readUnsignedLeb128(), 100000000);
+        assertFalse(input.hasNext());
+        assertEquals(input.remaining(), 0);
+        assertEquals(input.readByte(), -1);
+    }
+
+    @Test
+    public void testStringsWithDictionary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream stream =
+                new ClickHouseRowBinaryStream(out, TimeZone.getTimeZone("UTC"), new ClickHouseProperties());
+        for (int i = 0; i < 10000; i++) {
+            stream.writeString(i % 2 == 0 ? "value" + i % 10 : "значение" + i % 10);
+        }
+        stream.flush();
+
+        ClickHouseRowBinaryInputStream input = prepareStream(out.toByteArray());
+        ClickHouseStringDictionary dictionary = new ClickHouseStringDictionary(100);
+        String[] first = new String[10];
+        for (int i = 0; i < 10000; i++) {
+            String value = input.readString(dictionary);
+            assertEquals(value, i % 2 == 0 ? "value" + i % 10 : "значение" + i % 10);
+            if (i < 10) {
+                first[i] = value;
+            } else {
+                assertTrue(value == first[i % 10]);
+            }
+        }
+        assertFalse(input.hasNext());
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testTruncatedValue() throws Exception {
+        ClickHouseRowBinaryInputStream input = prepareStream(new byte[]{1, 2, 3});
+        assertTrue(input.hasNext());
+        assertEquals(input.remaining(), 3);
+        input.readInt32();
+    }
+
     private ClickHouseRowBinaryInputStream prepareStream(byte[] input) {
         return new ClickHouseRowBinaryInputStream(new ByteArrayInputStream(input),
                                                   TimeZone.getTimeZone("ETC"),
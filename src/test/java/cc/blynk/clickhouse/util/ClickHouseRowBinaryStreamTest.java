@@ -6,7 +6,11 @@ import org.testng.annotations.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Random;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -232,6 +236,67 @@ public class ClickHouseRowBinaryStreamTest {
         // clickhouse-client -q "SELECT CAST(Null AS Nullable(Int32)) Format RowBinary"  | od -vAn -td1
     }
 
+    @Test
+    public void testPrimitiveArraysLargerThanBuffer() throws Exception {
+        Random random = new Random(42);
+        long[] longs = random.longs(20000).toArray();
+        double[] doubles = random.doubles(20000).toArray();
+        int[] ints = random.ints(30000).toArray();
+        float[] floats = new float[30000];
+        short[] shorts = new short[70000];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = random.nextFloat();
+        }
+        for (int i = 0; i < shorts.length; i++) {
+            shorts[i] = (short) random.nextInt();
+        }
+
+        ByteBuffer expected = ByteBuffer.allocate(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        //a single byte before the arrays, so they don't start at the buffer boundaries
+        expected.put((byte) 7);
+        //lengths in LEB128
+        expected.put((byte) 0xA0).put((byte) 0x9C).put((byte) 0x01).asLongBuffer().put(longs);
+        expected.position(expected.position() + longs.length * 8);
+        expected.put((byte) 0xA0).put((byte) 0x9C).put((byte) 0x01).asDoubleBuffer().put(doubles);
+        expected.position(expected.position() + doubles.length * 8);
+        expected.put((byte) 0xB0).put((byte) 0xEA).put((byte) 0x01).asIntBuffer().put(ints);
+        expected.position(expected.position() + ints.length * 4);
+        expected.put((byte) 0xB0).put((byte) 0xEA).put((byte) 0x01).asFloatBuffer().put(floats);
+        expected.position(expected.position() + floats.length * 4);
+        expected.put((byte) 0xF0).put((byte) 0xA2).put((byte) 0x04).asShortBuffer().put(shorts);
+        expected.position(expected.position() + shorts.length * 2);
+
+        check(
+                stream -> {
+                    stream.writeInt8((byte) 7);
+                    stream.writeInt64Array(longs);
+                    stream.writeFloat64Array(doubles);
+                    stream.writeInt32Array(ints);
+                    stream.writeFloat32Array(floats);
+                    stream.writeInt16Array(shorts);
+                },
+                Arrays.copyOf(expected.array(), expected.position())
+        );
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Not a UInt64 value: -1")
+    public void testUInt64ArrayWithNegativeValue() throws Exception {
+        check(stream -> stream.writeUInt64Array(new long[]{1, -1}), new byte[0]);
+    }
+
+    @Test
+    public void testBufferedStreamIsWrittenOnFlush() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(out, TimeZone.getTimeZone("ETC"),
+                new ClickHouseProperties(), true);
+        stream.writeInt32(1000);
+        stream.writeString("a");
+        Assert.assertEquals(out.size(), 0);
+
+        stream.flush();
+        Assert.assertEquals(out.toByteArray(), new byte[]{-24, 3, 0, 0, 1, 97});
+    }
+
     private void check(StreamWriter streamWriter, byte[] expected) throws Exception {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(byteArrayOutputStream,
@@ -0,0 +1,55 @@
+package cc.blynk.clickhouse.util;
+
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+public class ClickHouseStringDictionaryTest {
+
+    @Test
+    public void testRepeatedValuesAreSameInstance() {
+        ClickHouseStringDictionary dictionary = new ClickHouseStringDictionary(16);
+        byte[] bytes = "\tfirst\tsecond\tfirst\t".getBytes(StandardCharsets.UTF_8);
+        String first = dictionary.get(bytes, 1, 5);
+        assertEquals(first, "first");
+        assertEquals(dictionary.get(bytes, 7, 6), "second");
+        assertSame(dictionary.get(bytes, 14, 5), first);
+        //the key is copied, changing the source doesn't change the dictionary
+        Arrays.fill(bytes, (byte) 'x');
+        assertSame(dictionary.get("first".getBytes(StandardCharsets.UTF_8), 0, 5), first);
+        assertEquals(dictionary.size(), 2);
+    }
+
+    @Test
+    public void testBoundedSize() {
+        ClickHouseStringDictionary dictionary = new ClickHouseStringDictionary(100);
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = ("value" + i).getBytes(StandardCharsets.UTF_8);
+            assertEquals(dictionary.get(bytes, 0, bytes.length), "value" + i);
+        }
+        assertEquals(dictionary.size(), 100);
+        byte[] kept = "value99".getBytes(StandardCharsets.UTF_8);
+        assertSame(dictionary.get(kept, 0, kept.length), dictionary.get(kept, 0, kept.length));
+        byte[] notKept = "value100".getBytes(StandardCharsets.UTF_8);
+        assertNotSame(dictionary.get(notKept, 0, notKept.length), dictionary.get(notKept, 0, notKept.length));
+    }
+
+    @Test
+    public void testDecode() {
+        for (String value : new String[]{"", "ascii", "юникод", "mixed юникод", "\u0000\u007f", "😀"}) {
+            byte[] bytes = ("[" + value + "]").getBytes(StandardCharsets.UTF_8);
+            assertEquals(ClickHouseStringDictionary.decode(bytes, 1, bytes.length - 2), value);
+            assertEquals(new ClickHouseStringDictionary(1).get(bytes, 1, bytes.length - 2), value);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testWrongSize() {
+        new ClickHouseStringDictionary(0);
+    }
+}